@@ -1,21 +1,39 @@
 package com.hotel.app;
 
-import com.hotel.utilities.DbConfig;
+import com.hotel.booking.InventoryCalendar;
+import com.hotel.search.CatalogSearch;
+import com.hotel.search.CatalogStore;
+import com.hotel.search.FilterSpec;
+import com.hotel.search.GeoGrid;
+import com.hotel.search.GeoQuery;
+import com.hotel.search.Listing;
+import com.hotel.search.ResponseCache;
+import com.hotel.utilities.SingleFlight;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import java.io.*;
-import java.sql.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeoutException;
 
 public class AppFilterHandler implements HttpHandler {
 
-	private final DbConfig dbConfig;
+	private static final int MAX_RESULTS = 100;
+	private static final int DEFAULT_PAGE_SIZE = 20;
+	// Longest a request waits on an identical in-flight search before a 503
+	private static final long COALESCE_WAIT_MILLIS = 2000;
 
-    // ✅ Inject DbConfig via constructor
-    public AppFilterHandler(DbConfig dbConfig) {
-        this.dbConfig = dbConfig;
+	private final CatalogStore catalog;
+	private final ResponseCache cache;
+	private final InventoryCalendar inventory;
+	private final SingleFlight<String, byte[]> inFlight = new SingleFlight<>();
+
+    public AppFilterHandler(CatalogStore catalog, ResponseCache cache, InventoryCalendar inventory) {
+        this.catalog = catalog;
+        this.cache = cache;
+        this.inventory = inventory;
     }
 
     @Override
@@ -62,146 +80,113 @@ public class AppFilterHandler implements HttpHandler {
                 sortBy = filters.getString("sortBy");
             }
 
-            JSONArray result = fetchHotelsWithFilters(filters, sortBy);
-            sendJsonResponse(exchange, result.toString(), 200);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            sendResponse(exchange, "Error: " + e.getMessage(), 500);
-        }
-    }
-
-    private JSONArray fetchHotelsWithFilters(JSONObject filters, String sortBy) throws SQLException {
-        JSONArray hotelsArray = new JSONArray();
-        StringBuilder baseQuery = new StringBuilder("SELECT * FROM Hotels_info WHERE 1=1");
-        List<Object> params = new ArrayList<>();
-
-        // City filter (flexible: check City and State)
-        if (filters.has("city") && !filters.optString("city").trim().isEmpty()) {
-            baseQuery.append(" AND (LOWER(City) LIKE ? OR LOWER(State) LIKE ?)");
-            String cityLike = "%" + filters.getString("city").toLowerCase() + "%";
-            params.add(cityLike);
-            params.add(cityLike);
-        }
-
-        // Hotel Type filter
-        if (filters.has("hotelType") && !filters.optString("hotelType").trim().isEmpty()) {
-            baseQuery.append(" AND LOWER(Hotel_Type) = ?");
-            params.add(filters.getString("hotelType").toLowerCase());
-        }
+            boolean withFacets = requestJson.optBoolean("facets", false);
 
-        // Room Type filter
-        if (filters.has("roomType") && !filters.optString("roomType").trim().isEmpty()) {
-            baseQuery.append(" AND LOWER(Room_Type) = ?");
-            params.add(filters.getString("roomType").toLowerCase());
-        }
-
-        // Price Range filter
-        if (filters.has("minPrice") && filters.has("maxPrice")) {
-            double minPrice = filters.getDouble("minPrice");
-            double maxPrice = filters.getDouble("maxPrice");
-            baseQuery.append(
-                    " AND (CAST(REPLACE(REPLACE(Room_Price,'₹',''),',','') AS DECIMAL(10,2)) BETWEEN ? AND ?)"
-            );
-            params.add(minPrice);
-            params.add(maxPrice);
-        }
-
-        // Rating filter (numeric)
-        if (filters.has("rating")) {
-            double rating = filters.getDouble("rating");
-            baseQuery.append(" AND Rating >= ?");
-            params.add(rating);
-        }
+            // Paging is opt-in: { ..., "pageSize": 20 } then { ..., "cursor": "<nextCursor>" }
+            int pageSize = requestJson.optInt("pageSize", 0);
+            String cursor = requestJson.optString("cursor", "");
+            boolean paged = pageSize > 0 || !cursor.isEmpty();
+            if (!paged) {
+                pageSize = MAX_RESULTS;
+            } else if (pageSize <= 0 || pageSize > MAX_RESULTS) {
+                pageSize = Math.min(Math.max(pageSize, DEFAULT_PAGE_SIZE), MAX_RESULTS);
+            }
 
-        // Amenities filter: expects JSON array of strings
-        if (filters.has("amenities")) {
+            // "Hotels near me": { "filters": { "near": "12.97,77.59", "radiusKm": 10 }, "sortBy": "distance" }
+            FilterSpec spec;
+            GeoQuery geo;
             try {
-                org.json.JSONArray amenities = filters.getJSONArray("amenities");
-                for (int i = 0; i < amenities.length(); i++) {
-                    baseQuery.append(" AND LOWER(Amenities) LIKE ?");
-                    params.add("%" + amenities.getString(i).toLowerCase() + "%");
-                }
-            } catch (Exception ignored) {
+                spec = FilterSpec.from(filters);
+                geo = GeoQuery.parse(filters.optString("near", ""), filters.optString("radiusKm", ""));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, e.getMessage(), 400);
+                return;
             }
-        }
 
-        // Partner ID / Hotel ID
-        if (filters.has("partnerId") && !filters.optString("partnerId").isEmpty()) {
-            baseQuery.append(" AND Partner_ID = ?");
-            params.add(filters.getString("partnerId"));
-        }
-        if (filters.has("hotelId") && !filters.optString("hotelId").isEmpty()) {
-            baseQuery.append(" AND Hotel_ID = ?");
-            params.add(filters.getString("hotelId"));
-        }
+            // Identical concurrent searches (e.g. a trending city) share one computation,
+            // and popular ones are answered from the response cache
+            String flightKey = String.join("\u0001", "filterHotels", spec.canonical(), String.valueOf(geo), sortBy,
+                    Boolean.toString(withFacets), paged ? Integer.toString(pageSize) : "all", cursor);
+            String finalSortBy = sortBy;
+            int finalPageSize = pageSize;
 
-        // Available rooms only (optional)
-        if (filters.has("availableOnly") && filters.optBoolean("availableOnly", false)) {
-            baseQuery.append(" AND Available_Rooms > 0");
-        }
-
-        // Customization filter (optional)
-        if (filters.has("customization")) {
-            String cust = filters.optString("customization");
-            if (!cust.isEmpty()) {
-                baseQuery.append(" AND Customization = ?");
-                params.add(cust);
+            // Availability changes with every booking, so stay searches are coalesced but never cached
+            boolean cacheable = !spec.hasStay();
+            byte[] response = cacheable ? cache.get(flightKey) : null;
+            try {
+                if (response == null) {
+                    response = inFlight.run(flightKey, COALESCE_WAIT_MILLIS, () -> {
+                        long version = catalog.current().version();
+                        byte[] b = search(spec, geo, finalSortBy, finalPageSize, cursor, paged, withFacets)
+                                .getBytes(StandardCharsets.UTF_8);
+                        if (cacheable) cache.put(flightKey, version, b);
+                        return b;
+                    });
+                }
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, e.getMessage(), 400);
+                return;
+            } catch (TimeoutException e) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendResponse(exchange, "Search is busy, please retry", 503);
+                return;
             }
-        }
+            sendJsonResponse(exchange, response, 200);
 
-        // Status active only
-        baseQuery.append(" AND Status = 'Active'");
-
-        // Sorting
-        String orderClause = "";
-        if (sortBy != null) {
-            switch (sortBy) {
-                case "price_lowest":
-                    orderClause = " ORDER BY CAST(REPLACE(REPLACE(Room_Price,'₹',''),',','') AS DECIMAL(10,2)) ASC";
-                    break;
-                case "price_highest":
-                    orderClause = " ORDER BY CAST(REPLACE(REPLACE(Room_Price,'₹',''),',','') AS DECIMAL(10,2)) DESC";
-                    break;
-                case "top_rated":
-                    orderClause = " ORDER BY Rating DESC";
-                    break;
-                default:
-                    orderClause = "";
-            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendResponse(exchange, "Error: " + e.getMessage(), 500);
         }
+    }
 
-        String finalQuery = baseQuery.toString() + orderClause + " LIMIT 100"; // limit for performance
-
-        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(finalQuery)) {
-
-            for (int i = 0; i < params.size(); i++) {
-                stmt.setObject(i + 1, params.get(i));
-            }
+    private String search(FilterSpec spec, GeoQuery geo, String sortBy, int pageSize, String cursor,
+                          boolean paged, boolean withFacets) {
+
+        CatalogSearch.Page page = CatalogSearch.run(catalog, Listing.Kind.HOTEL, spec, inventory, geo,
+                sortBy, pageSize, cursor, withFacets);
+
+        JSONArray results = toJson(page);
+        if (paged) {
+            JSONObject response = new JSONObject();
+            response.put("results", results);
+            if (withFacets) response.put("facets", page.selection().facets().toJson());
+            if (page.total() >= 0) response.put("total", page.total());
+            response.put("nextCursor", page.nextCursor() == null ? JSONObject.NULL : page.nextCursor());
+            response.put("catalogVersion", Long.toString(page.snapshot().version()));
+            return response.toString();
+        } else if (withFacets) {
+            JSONObject response = new JSONObject();
+            response.put("results", results);
+            response.put("total", page.total());
+            response.put("facets", page.selection().facets().toJson());
+            return response.toString();
+        }
+        // Older clients receive a plain array
+        return results.toString();
+    }
 
-            ResultSet rs = stmt.executeQuery();
-            ResultSetMetaData meta = rs.getMetaData();
-            int columnCount = meta.getColumnCount();
-
-            while (rs.next()) {
-                JSONObject hotel = new JSONObject();
-                for (int i = 1; i <= columnCount; i++) {
-                    String column = meta.getColumnLabel(i);
-                    Object value = rs.getObject(column);
-                    if (value == null) hotel.put(column, JSONObject.NULL);
-                    else hotel.put(column, value);
-                }
-                hotelsArray.put(hotel);
+    // ================= SEARCH =================
+    // Filters run against the in-memory catalog (see CatalogSearch);
+    // only the rows of the requested page are turned into JSON.
+    private JSONArray toJson(CatalogSearch.Page page) {
+        JSONArray hotelsArray = new JSONArray();
+        for (GeoGrid.Hit h : page.hits()) {
+            JSONObject hotel = new JSONObject();
+            for (Map.Entry<String, Object> col : page.section().get(h.index()).columns().entrySet()) {
+                hotel.put(col.getKey(), col.getValue() == null ? JSONObject.NULL : col.getValue());
             }
+            if (!Double.isNaN(h.distanceKm())) hotel.put("Distance_Km", GeoQuery.roundKm(h.distanceKm()));
+            hotelsArray.put(hotel);
         }
-
         return hotelsArray;
     }
 
     private void sendJsonResponse(HttpExchange exchange, String response, int statusCode) throws IOException {
+        sendJsonResponse(exchange, response.getBytes("UTF-8"), statusCode);
+    }
+
+    private void sendJsonResponse(HttpExchange exchange, byte[] bytes, int statusCode) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        byte[] bytes = response.getBytes("UTF-8");
         exchange.sendResponseHeaders(statusCode, bytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(bytes);
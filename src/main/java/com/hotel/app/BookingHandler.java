@@ -1,7 +1,14 @@
 package com.hotel.app;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.booking.BookingStateMachine;
+import com.hotel.booking.HoldManager;
+import com.hotel.booking.InventoryCalendar;
+import com.hotel.booking.ReservationEngine;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdGenerator;
+import com.hotel.utilities.IdempotencyStore;
+import com.hotel.utilities.Outbox;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import java.io.BufferedReader;
@@ -11,17 +18,32 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.Map;
-import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
+import org.json.JSONObject;
 
 public class BookingHandler implements HttpHandler {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final DbConfig dbConfig;
-
-    public BookingHandler(DbConfig dbConfig) {
+    private final InventoryCalendar inventory;
+    private final ReservationEngine reservations;
+    private final HoldManager holds;
+    private final BookingStateMachine bookingStates;
+    private final IdempotencyStore idempotency;
+    private final IdGenerator ids;
+
+    public BookingHandler(DbConfig dbConfig, InventoryCalendar inventory, ReservationEngine reservations,
+                          HoldManager holds, BookingStateMachine bookingStates, IdempotencyStore idempotency,
+                          IdGenerator ids) {
         this.dbConfig = dbConfig;
+        this.inventory = inventory;
+        this.reservations = reservations;
+        this.holds = holds;
+        this.bookingStates = bookingStates;
+        this.idempotency = idempotency;
+        this.ids = ids;
     }
 
     @Override
@@ -47,20 +69,26 @@ public class BookingHandler implements HttpHandler {
         }
     }
 
-    private void handleBooking(HttpExchange exchange) throws IOException {
+    private void handleBooking(HttpExchange exchange) throws Exception {
         String body = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))
                 .lines().collect(Collectors.joining("\n"));
 
+        // A retried POST with the same key replays the first response instead of booking again
+        String idempotencyKey = exchange.getRequestHeaders().getFirst(IdempotencyStore.HEADER);
+        IdempotencyStore.Response response = idempotency.execute("booking", idempotencyKey, body, claim -> book(body, claim));
+        sendResponse(exchange, response.status(), response.body());
+    }
+
+    private IdempotencyStore.Response book(String body, IdempotencyStore.Claim claim) {
         Map<String, Object> data;
         try {
             data = objectMapper.readValue(body, Map.class);
         } catch (Exception e) {
-            sendResponse(exchange, 400, json("error", "Invalid JSON payload"));
-            return;
+            return new IdempotencyStore.Response(400, json("error", "Invalid JSON payload"));
         }
 
         boolean isPgMode = data.containsKey("Selected_Room_Type") || data.containsKey("Monthly_Price");
-        String bookingId = generateBookingId();
+        String bookingId = ids.next(IdGenerator.BOOKING);
         String userId = str(data.get("User_ID"));
 
         // Prices
@@ -86,7 +114,7 @@ public class BookingHandler implements HttpHandler {
             if (isOffline) {
                 transactionId = "NA";
             } else {
-                transactionId = "TXN" + System.currentTimeMillis();
+                transactionId = ids.next(IdGenerator.TRANSACTION);
             }
         }
 
@@ -100,12 +128,51 @@ public class BookingHandler implements HttpHandler {
         double couponDiscount = toDouble(data.get("Coupon_Discount_Amount"));
 
         double actualWalletDebited = 0;
+        long holdExpiresAt = 0;
         Connection conn = null;
 
+        // Checked before the lock: the room count may need a partner DB read, and a
+        // hotel stay the inventory cannot claim must not be booked at all
+        String hotelId = str(data.get("Hotel_ID"));
+        java.sql.Date checkIn = parseSqlDate(data.get("Check_In_Date"));
+        java.sql.Date checkOut = parseSqlDate(data.get("Check_Out_Date"));
+        int roomsBooked = toInt(data.get("Total_Rooms_Booked"));
+        int hotelRooms = ReservationEngine.UNTRACKED;
+        if (!isPgMode) {
+            try {
+                hotelRooms = reservations.roomCount(hotelId);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return new IdempotencyStore.Response(500, json("error", e.getMessage()));
+            }
+            if (hotelRooms == ReservationEngine.NOT_LISTED) {
+                return new IdempotencyStore.Response(400, json("error", "Unknown Hotel_ID"));
+            }
+            String invalid = ReservationEngine.invalidStay(checkIn == null ? null : checkIn.toLocalDate(),
+                    checkOut == null ? null : checkOut.toLocalDate(), roomsBooked);
+            if (invalid != null) return new IdempotencyStore.Response(400, json("error", invalid));
+        }
+
+        // Held until commit/rollback so bookings for one hotel queue here rather than on DB row locks
+        Lock hotelLock = isPgMode ? null : reservations.lockFor(hotelId);
+        if (hotelLock != null) hotelLock.lock();
+
         try {
             conn = dbConfig.getCustomerDataSource().getConnection();
             conn.setAutoCommit(false);
 
+            if (!isPgMode) {
+                if (!reservations.claim(conn, hotelId, hotelRooms, checkIn.toLocalDate(), checkOut.toLocalDate(),
+                        roomsBooked)) {
+                    conn.rollback();
+                    return new IdempotencyStore.Response(409, json("error", "Not enough rooms available for the selected dates"));
+                }
+                // Online and not yet paid: the rooms are only held until /payment/verify or expiry
+                if (!isOffline && !"Paid".equals(paymentStatus)) {
+                    holdExpiresAt = holds.place(conn, bookingId, hotelId);
+                }
+            }
+
             // STRICT RULE: Wallet and Coupon allowed ONLY for Online payments
             if (!isOffline) {
                 if ("Yes".equalsIgnoreCase(walletFlagRequest) && walletRequested > 0 && !userId.isBlank()) {
@@ -184,16 +251,22 @@ public class BookingHandler implements HttpHandler {
 
                 ps.executeUpdate();
             }
+            bookingStates.recordCreated(conn, bookingId, "guest");
 
-            conn.commit();
-            sendResponse(exchange, 200, json("message", "Success", "booking_id", bookingId));
+            IdempotencyStore.Response booked =
+                    new IdempotencyStore.Response(200, json("message", "Success", "booking_id", bookingId));
+            claim.commit(conn, booked);
+            inventory.bookingChanged(bookingId);
+            if (holdExpiresAt > 0) holds.track(bookingId, holdExpiresAt);
+            return booked;
 
         } catch (Exception e) {
             if (conn != null) try { conn.rollback(); } catch (SQLException ignored) {}
             e.printStackTrace();
-            sendResponse(exchange, 500, json("error", e.getMessage()));
+            return new IdempotencyStore.Response(500, json("error", e.getMessage()));
         } finally {
             if (conn != null) try { conn.close(); } catch (SQLException ignored) {}
+            if (hotelLock != null) hotelLock.unlock();
         }
     }
 
@@ -256,18 +329,26 @@ public class BookingHandler implements HttpHandler {
         Map<String, Object> payload = objectMapper.readValue(body, Map.class);
         String bId = str(payload.get("Booking_ID"));
         String status = normalizePaymentStatus(str(payload.get("Payment_Status")));
-        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-             PreparedStatement ps = conn.prepareStatement("UPDATE bookings_info SET Payment_Status=? WHERE Booking_ID=?")) {
-            ps.setString(1, status);
-            ps.setString(2, bId);
-            ps.executeUpdate();
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE bookings_info SET Payment_Status=? WHERE Booking_ID=?")) {
+                ps.setString(1, status);
+                ps.setString(2, bId);
+                if (ps.executeUpdate() > 0) {
+                    Outbox.append(conn, Outbox.PAYMENT, bId, "PAYMENT_STATUS_SET",
+                            new JSONObject().put("booking_id", bId).put("payment_status", status));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
             sendResponse(exchange, 200, json("message", "Updated"));
         } catch (SQLException e) {
             sendResponse(exchange, 500, json("error", e.getMessage()));
         }
     }
 
-    private String generateBookingId() { return "BKG" + (100000 + new Random().nextInt(900000)); }
     private double toDouble(Object o) { if (o == null) return 0; try { return Double.parseDouble(o.toString().replace(",", "")); } catch (Exception e) { return 0; } }
     private int toInt(Object o) { if (o == null) return 0; try { return Integer.parseInt(o.toString()); } catch (Exception e) { return 0; } }
     private String str(Object o) { return o == null ? "" : o.toString().trim(); }
@@ -302,7 +383,7 @@ public class BookingHandler implements HttpHandler {
 
     private void addCorsHeaders(HttpExchange ex) {
         ex.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        ex.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+        ex.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, " + IdempotencyStore.HEADER);
         ex.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
     }
 
@@ -1,7 +1,10 @@
 package com.hotel.app;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.booking.BookingStateMachine;
+import com.hotel.booking.ReservationEngine;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.FieldProjection;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import java.io.IOException;
@@ -13,15 +16,30 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 public class BookingHistoryHandler implements HttpHandler {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // Columns a fields= projection may select; anything else is ignored
+    private static final List<String> BOOKING_COLUMNS = List.of(
+            "Partner_ID", "Hotel_ID", "Booking_ID", "Hotel_Name", "Hotel_Type", "Guest_Name", "Email", "User_ID",
+            "Check_In_Date", "Check_Out_Date", "Guest_Count", "Adults", "Children", "Total_Rooms_Booked",
+            "Total_Days_at_Stay", "Room_Price_Per_Day", "All_Days_Price", "GST", "Original_Amount",
+            "Final_Payable_Amount", "Amount_Paid_Online", "Due_Amount_At_Hotel", "Payment_Method_Type",
+            "Paid_Via", "Payment_Status", "Transaction_ID", "Wallet_Used", "Wallet_Amount_Deducted",
+            "Coupon_Code", "Coupon_Discount_Amount", "Room_Type", "Room_Price_Per_Month", "Months",
+            "Hotel_Address", "Hotel_Contact", "Booking_Status", "Refund_Status");
+
     private final DbConfig dbConfig;
+    private final BookingStateMachine bookingStates;
+    private final ReservationEngine reservations;
 
-    public BookingHistoryHandler(DbConfig dbConfig) {
+    public BookingHistoryHandler(DbConfig dbConfig, BookingStateMachine bookingStates, ReservationEngine reservations) {
         this.dbConfig = dbConfig;
+        this.bookingStates = bookingStates;
+        this.reservations = reservations;
     }
 
     @Override
@@ -56,22 +74,41 @@ public class BookingHistoryHandler implements HttpHandler {
         boolean showUpcoming = params.getOrDefault("includeUpcoming", "false")
                 .trim().equalsIgnoreCase("true");
 
+        FieldProjection projection =
+                FieldProjection.parse(params.get("fields"), FieldProjection.BOOKING_PRESETS);
+
         if (email.isEmpty() && userId.isEmpty()) {
             sendResponse(exchange, 400, json("error", "Missing email or userId"));
             return;
         }
 
+        try {
+            List<Map<String, Object>> results = history(email, userId, showUpcoming, projection);
+            sendResponse(exchange, 200, objectMapper.writeValueAsString(results));
+        } catch (Exception e) {
+            sendResponse(exchange, 500, json("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Upcoming (pending/confirmed, check-in today or later) or past bookings
+     * for a user, newest check-in first. Also used by the composite /home call.
+     */
+    public List<Map<String, Object>> history(String email, String userId, boolean showUpcoming,
+                                             FieldProjection projection) throws SQLException {
+
+        // The date/status columns are always read: they decide which rows are returned
         String sql = """
-                SELECT * FROM Bookings_Info
+                SELECT %s FROM Bookings_Info
                 WHERE (Email=? OR User_ID=?)
                 ORDER BY Check_In_Date DESC
-                """;
+                """.formatted(projection.selectList(BOOKING_COLUMNS,
+                        "Check_In_Date", "Check_Out_Date", "Booking_Status"));
 
         List<Map<String, Object>> results = new ArrayList<>();
 
         try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-
             stmt.setString(1, email);
             stmt.setString(2, userId);
 
@@ -127,15 +164,11 @@ public class BookingHistoryHandler implements HttpHandler {
                 }
 
                 if (include) {
-                    results.add(mapRow(rs));
+                    results.add(projection.apply(mapRow(rs)));
                 }
             }
-
-            sendResponse(exchange, 200, objectMapper.writeValueAsString(results));
-
-        } catch (Exception e) {
-            sendResponse(exchange, 500, json("error", e.getMessage()));
         }
+        return results;
     }
 
     // -------------------- DATE CHANGE --------------------
@@ -151,51 +184,88 @@ public class BookingHistoryHandler implements HttpHandler {
             return;
         }
 
-        String fetchSql = "SELECT Room_Price_Per_Day, GST FROM Bookings_Info WHERE Booking_ID=?";
-        String updateSql = """
-                UPDATE Bookings_Info SET
-                Check_In_Date=?, 
-                Check_Out_Date=?, 
-                Total_Days_at_Stay=?, 
-                Final_Payable_Amount=?,
-                Booking_Status='PENDING'
-                WHERE Booking_ID=?
-                """;
-
-        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-             PreparedStatement fetch = conn.prepareStatement(fetchSql);
-             PreparedStatement update = conn.prepareStatement(updateSql)) {
+        LocalDate in;
+        LocalDate out;
+        try {
+            in = LocalDate.parse(newCheckIn);
+            out = LocalDate.parse(newCheckOut);
+        } catch (Exception e) {
+            sendResponse(exchange, 400, json("error", "Invalid date format"));
+            return;
+        }
+        long days = ChronoUnit.DAYS.between(in, out);
+        if (days <= 0 || days > ReservationEngine.MAX_NIGHTS) {
+            sendResponse(exchange, 400, json("error", "Invalid stay duration"));
+            return;
+        }
 
-            fetch.setString(1, bookingId);
-            ResultSet rs = fetch.executeQuery();
+        String fetchSql = "SELECT Room_Price_Per_Day, GST, Total_Rooms_Booked FROM Bookings_Info WHERE Booking_ID=?";
 
-            if (!rs.next()) {
+        Lock hotelLock = null;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            String hotelId = reservations.hotelOf(bookingId);
+            if (hotelId == null) {
                 sendResponse(exchange, 404, json("error", "Booking not found"));
                 return;
             }
+            // May read the partner database, so before the lock
+            int hotelRooms = reservations.roomCount(hotelId);
+            hotelLock = reservations.lockFor(hotelId);
+            hotelLock.lock();
+            conn.setAutoCommit(false);
+
+            BookingStateMachine.Transition moved;
+            try (PreparedStatement fetch = conn.prepareStatement(fetchSql)) {
+
+                // Give the old nights back, then claim the new ones in the same transaction
+                reservations.releaseBooking(conn, bookingId);
+
+                fetch.setString(1, bookingId);
+                ResultSet rs = fetch.executeQuery();
+                if (!rs.next()) {
+                    conn.rollback();
+                    sendResponse(exchange, 404, json("error", "Booking not found"));
+                    return;
+                }
 
-            LocalDate in = LocalDate.parse(newCheckIn);
-            LocalDate out = LocalDate.parse(newCheckOut);
-            long days = ChronoUnit.DAYS.between(in, out);
+                int rooms = rs.getInt("Total_Rooms_Booked");
+                if (hotelRooms > ReservationEngine.UNTRACKED && rooms <= 0) {
+                    conn.rollback();
+                    sendResponse(exchange, 400, json("error", "Booking has no rooms to move"));
+                    return;
+                }
+                if (!reservations.claim(conn, hotelId, hotelRooms, in, out, rooms)) {
+                    conn.rollback();
+                    sendResponse(exchange, 409, json("error", "Not enough rooms available for the new dates"));
+                    return;
+                }
 
-            if (days <= 0) {
-                sendResponse(exchange, 400, json("error", "Invalid stay duration"));
-                return;
+                double price = rs.getDouble("Room_Price_Per_Day") * days + rs.getDouble("GST");
+
+                Map<String, Object> stay = new LinkedHashMap<>();
+                stay.put("Check_In_Date", java.sql.Date.valueOf(in));
+                stay.put("Check_Out_Date", java.sql.Date.valueOf(out));
+                stay.put("Total_Days_at_Stay", (int) days);
+                stay.put("Final_Payable_Amount", price);
+                moved = bookingStates.apply(conn, bookingId, BookingStateMachine.Event.RESCHEDULED, "guest", stay);
+                if (!moved.applied()) {
+                    conn.rollback();
+                    sendResponse(exchange, 409, json("error", "Booking can no longer be changed"));
+                    return;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
-
-            double price = rs.getDouble("Room_Price_Per_Day") * days + rs.getDouble("GST");
-
-            update.setDate(1, java.sql.Date.valueOf(in));
-            update.setDate(2, java.sql.Date.valueOf(out));
-            update.setInt(3, (int) days);
-            update.setDouble(4, price);
-            update.setString(5, bookingId);
-            update.executeUpdate();
+            bookingStates.publish(moved);
 
             sendResponse(exchange, 200, json("success", "Dates updated successfully"));
 
         } catch (SQLException e) {
             sendResponse(exchange, 500, json("error", e.getMessage()));
+        } finally {
+            if (hotelLock != null) hotelLock.unlock();
         }
     }
 
@@ -209,18 +279,38 @@ public class BookingHistoryHandler implements HttpHandler {
             return;
         }
 
-        String sql = "UPDATE bookings_info SET Booking_Status='CANCELLED', Refund_Status='Refund Initiated' WHERE Booking_ID=?";
-
-        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, bookingId);
-            stmt.executeUpdate();
+        Lock hotelLock = null;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            String hotelId = reservations.hotelOf(bookingId);
+            if (hotelId != null) {
+                hotelLock = reservations.lockFor(hotelId);
+                hotelLock.lock();
+            }
+            conn.setAutoCommit(false);
+
+            BookingStateMachine.Transition cancelled;
+            try {
+                reservations.releaseBooking(conn, bookingId);
+                cancelled = bookingStates.apply(conn, bookingId, BookingStateMachine.Event.CANCELLED, "guest",
+                        Map.of("Refund_Status", "Refund Initiated"));
+                if (!cancelled.applied()) {
+                    conn.rollback();
+                    sendResponse(exchange, 409, json("error", "Booking cannot be cancelled"));
+                    return;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            bookingStates.publish(cancelled);
 
             sendResponse(exchange, 200, json("success", "Booking cancelled"));
 
         } catch (SQLException e) {
             sendResponse(exchange, 500, json("error", e.getMessage()));
+        } finally {
+            if (hotelLock != null) hotelLock.unlock();
         }
     }
 
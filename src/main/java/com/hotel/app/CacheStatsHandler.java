@@ -0,0 +1,42 @@
+package com.hotel.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.search.ResponseCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * GET /cache/stats: hit rate, evictions and memory of the search response cache.
+ */
+public class CacheStatsHandler implements HttpHandler {
+
+    private final ResponseCache searchCache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public CacheStatsHandler(ResponseCache searchCache) {
+        this.searchCache = searchCache;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        Object body;
+        if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            body = Map.of("search", searchCache.stats());
+        } else {
+            status = 405;
+            body = Map.of("error", "Only GET allowed");
+        }
+
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
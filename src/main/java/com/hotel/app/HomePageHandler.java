@@ -1,24 +1,76 @@
 package com.hotel.app;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.booking.InventoryCalendar;
+import com.hotel.search.CatalogSearch;
+import com.hotel.search.CatalogStore;
+import com.hotel.search.FilterSpec;
+import com.hotel.search.GeoGrid;
+import com.hotel.search.GeoQuery;
+import com.hotel.search.JsonBody;
+import com.hotel.search.Listing;
+import com.hotel.search.ListingView;
+import com.hotel.search.ResponseCache;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.FieldProjection;
+import com.hotel.utilities.SingleFlight;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import org.json.JSONObject;
 import java.io.*;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.sql.*;
 import java.util.*;
+import java.util.concurrent.TimeoutException;
 
 public class HomePageHandler implements HttpHandler {
 
+    private static final int MAX_NEAR_RESULTS = 100;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // Longest a request waits on an identical in-flight search before a 503
+    private static final long COALESCE_WAIT_MILLIS = 2000;
+
+    // Fields returned per listing
+    private static final String[] HOTEL_FIELDS = {
+            "Hotel_ID", "Partner_ID", "Hotel_Name", "Hotel_Type", "Room_Type",
+            "Address", "City", "State", "Country", "Pincode", "Hotel_Location",
+            "Total_Rooms", "Available_Rooms", "Room_Price", "Amenities",
+            "Description", "Policies", "Rating", "Hotel_Contact",
+            "About_This_Property", "Customization", "Status"
+    };
+    // The /hotels PG columns (DDL spelling), images apart
+    private static final String[] PG_FIELDS = Arrays.stream(HotelsHandler.PG_COLUMNS)
+            .filter(c -> !c.equals(Listing.Kind.PG.imagesColumn()))
+            .toArray(String[]::new);
+    // JSON keys this endpoint has always used for some PG columns
+    private static final Map<String, String> PG_KEYS = Map.of(
+            "Total_Double_Sharing_Rooms", "Total_Double_SHARING_ROOMS",
+            "Total_Three_Sharing_Rooms", "Total_Three_SHARING_ROOMS",
+            "Total_Four_Sharing_Rooms", "Total_FOUR_SHARING_ROOMS",
+            "Total_Five_Sharing_Rooms", "Total_FIVE_SHARING_ROOMS");
+    // Numeric columns passed through as loaded; everything else is a string
+    private static final Set<String> RAW_FIELDS = Set.of(
+            "Total_Rooms", "Available_Rooms", "Room_Price", "Rating",
+            "Total_Single_Sharing_Rooms", "Total_Double_Sharing_Rooms",
+            "Total_Three_Sharing_Rooms", "Total_Four_Sharing_Rooms",
+            "Total_Five_Sharing_Rooms");
+
     private final DbConfig dbConfig;
+    private final CatalogStore catalog;
+    private final ResponseCache cache;
+    private final InventoryCalendar inventory;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SingleFlight<String, byte[]> inFlight = new SingleFlight<>();
 
     // ✅ Inject DbConfig
-    public HomePageHandler(DbConfig dbConfig) {
+    public HomePageHandler(DbConfig dbConfig, CatalogStore catalog, ResponseCache cache, InventoryCalendar inventory) {
         this.dbConfig = dbConfig;
+        this.catalog = catalog;
+        this.cache = cache;
+        this.inventory = inventory;
     }
 
     @Override
@@ -36,6 +88,15 @@ public class HomePageHandler implements HttpHandler {
 
         String hotelType = null;
         String searchQuery = null;
+        String near = null;
+        String radiusKm = null;
+        String sortBy = null;
+        String pageSizeParam = null;
+        String cursor = null;
+        String fields = null;
+        String checkIn = null;
+        String checkOut = null;
+        String rooms = null;
 
         if (query != null && !query.isEmpty()) {
             for (String param : query.split("&")) {
@@ -49,6 +110,24 @@ public class HomePageHandler implements HttpHandler {
                     hotelType = value.trim();
                 } else if ("query".equalsIgnoreCase(key) || "q".equalsIgnoreCase(key)) {
                     searchQuery = value.trim();
+                } else if ("near".equalsIgnoreCase(key)) {
+                    near = value.trim();
+                } else if ("radiusKm".equalsIgnoreCase(key)) {
+                    radiusKm = value.trim();
+                } else if ("sortBy".equalsIgnoreCase(key)) {
+                    sortBy = value.trim();
+                } else if ("pageSize".equalsIgnoreCase(key)) {
+                    pageSizeParam = value.trim();
+                } else if ("checkIn".equalsIgnoreCase(key)) {
+                    checkIn = value.trim();
+                } else if ("checkOut".equalsIgnoreCase(key)) {
+                    checkOut = value.trim();
+                } else if ("rooms".equalsIgnoreCase(key)) {
+                    rooms = value.trim();
+                } else if ("fields".equalsIgnoreCase(key)) {
+                    fields = value.trim();
+                } else if ("cursor".equalsIgnoreCase(key)) {
+                    cursor = value.trim();
                 }
             }
         }
@@ -57,199 +136,152 @@ public class HomePageHandler implements HttpHandler {
                 ? ""
                 : hotelType.replaceAll("[_\\-\\s]", "").toLowerCase();
 
-        if ("payingguest".equals(normalizedType)) {
-            handlePayingGuestRequest(exchange, searchQuery);
+        boolean payingGuest = "payingguest".equals(normalizedType);
+
+        // Paging is opt-in (pageSize and/or cursor); without it the full list is returned
+        boolean paged = (pageSizeParam != null && !pageSizeParam.isEmpty())
+                || (cursor != null && !cursor.isEmpty());
+        int pageSize = DEFAULT_PAGE_SIZE;
+        if (pageSizeParam != null && !pageSizeParam.isEmpty()) {
+            try {
+                pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(pageSizeParam)));
+            } catch (NumberFormatException e) {
+                sendJsonResponse(exchange, 400, "{\"error\":\"pageSize must be a number\"}");
+                return;
+            }
+        }
+
+        // near=lat,lng[&radiusKm=][&sortBy=distance] is answered from the catalog grid
+        if ((near == null || near.isBlank()) && "distance".equalsIgnoreCase(sortBy)) {
+            sendJsonResponse(exchange, 400, "{\"error\":\"sortBy=distance requires near=lat,lng\"}");
             return;
         }
 
-        handleHotelRequest(exchange, hotelType, searchQuery);
+        // Identical concurrent searches (e.g. a trending city) share one computation,
+        // and popular ones are answered from the response cache
+        String flightKey = String.join("\u0001", "home", normalizedType, String.valueOf(searchQuery), String.valueOf(near),
+                String.valueOf(radiusKm), String.valueOf(sortBy), paged ? Integer.toString(pageSize) : "all",
+                String.valueOf(cursor), String.valueOf(fields),
+                String.valueOf(checkIn), String.valueOf(checkOut), String.valueOf(rooms));
+        final String type = hotelType;
+        final String q = searchQuery;
+        final String nearParam = near;
+        final String radiusParam = radiusKm;
+        final String sort = sortBy;
+        final String cursorParam = cursor;
+        final String fieldsParam = fields;
+        final int size = pageSize;
+        final JSONObject stay = new JSONObject();
+        if (checkIn != null && !checkIn.isEmpty()) stay.put("checkIn", checkIn);
+        if (checkOut != null && !checkOut.isEmpty()) stay.put("checkOut", checkOut);
+        if (rooms != null && !rooms.isEmpty()) stay.put("rooms", rooms);
+        // Availability changes with every booking, so stay searches are coalesced but never cached
+        final boolean cacheable = stay.keySet().isEmpty();
+
+        try {
+            byte[] body = cacheable ? cache.get(flightKey) : null;
+            if (body == null) {
+                body = inFlight.run(flightKey, COALESCE_WAIT_MILLIS, () -> {
+                    long version = catalog.current().version();
+                    byte[] b = search(payingGuest, type, q, stay, nearParam, radiusParam, sort, paged, size,
+                            cursorParam, fieldsParam);
+                    if (cacheable) cache.put(flightKey, version, b);
+                    return b;
+                });
+            }
+            new JsonBody().raw(body).send(exchange, 200);
+
+        } catch (IllegalArgumentException e) {
+            sendJsonResponse(exchange, 400, objectMapper.writeValueAsString(Map.of("error", e.getMessage())));
+        } catch (TimeoutException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendJsonResponse(exchange, 503, "{\"error\":\"Search is busy, please retry\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendJsonResponse(exchange, 500,
+                    "{\"error\":\"Internal error\"}");
+        }
     }
 
-    // =================== HOTELS ===================
-    private void handleHotelRequest(HttpExchange exchange,
-                                    String hotelType,
-                                    String searchQuery) throws IOException {
+    private byte[] search(boolean payingGuest, String hotelType, String searchQuery, JSONObject stay, String near,
+                          String radiusKm, String sortBy, boolean paged, int pageSize, String cursor, String fields)
+            throws IOException {
 
-        List<Map<String, Object>> hotels = new ArrayList<>();
+        JSONObject filters = new JSONObject();
+        for (String key : stay.keySet()) filters.put(key, stay.get(key));
+        if (!payingGuest && hotelType != null && !hotelType.isBlank()) filters.put("hotelType", hotelType);
+        if (searchQuery != null && !searchQuery.isBlank()) filters.put("q", searchQuery);
 
-        String baseSql = """
-            SELECT Hotel_ID, Partner_ID, Hotel_Name, Hotel_Type, Room_Type,
-                   Address, City, State, Country, Pincode, Hotel_Location,
-                   Total_Rooms, Available_Rooms, Room_Price, Amenities,
-                   Description, Policies, Rating, Hotel_Contact,
-                   About_This_Property, Hotel_Images, Customization, Status
-            FROM Hotels_info
-            WHERE Status = 'Active'
-            """;
+        GeoQuery geo = GeoQuery.parse(near, radiusKm);
+        if (!paged) pageSize = geo != null ? MAX_NEAR_RESULTS : Integer.MAX_VALUE;
 
-        StringBuilder sql = new StringBuilder(baseSql);
+        CatalogSearch.Page page = CatalogSearch.run(catalog,
+                payingGuest ? Listing.Kind.PG : Listing.Kind.HOTEL,
+                FilterSpec.from(filters), inventory, geo, sortBy, pageSize, cursor, false);
 
-        if (hotelType != null && !hotelType.isBlank()) {
-            sql.append(" AND LOWER(Hotel_Type) = LOWER(?)");
+        // Rows are cached JSON fragments; the response only concatenates them
+        List<Listing> listings = new ArrayList<>(page.hits().size());
+        double[] distances = new double[page.hits().size()];
+        for (GeoGrid.Hit h : page.hits()) {
+            distances[listings.size()] = h.distanceKm();
+            listings.add(page.section().get(h.index()));
         }
 
-        if (searchQuery != null && !searchQuery.isBlank()) {
-            sql.append("""
-                AND (
-                    LOWER(Hotel_Name) LIKE ?
-                    OR LOWER(City) LIKE ?
-                    OR LOWER(State) LIKE ?
-                    OR LOWER(Country) LIKE ?
-                )
-            """);
+        ListingView view = homeView(FieldProjection.parse(fields, FieldProjection.LISTING_PRESETS));
+        JsonBody body = new JsonBody();
+        if (!paged) {
+            return body.listings(listings, view, distances).toByteArray();
         }
 
-        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+        return body.raw("{\"results\":")
+                .listings(listings, view, distances)
+                .raw((page.total() >= 0 ? ",\"total\":" + page.total() : "")
+                        + ",\"nextCursor\":" + objectMapper.writeValueAsString(page.nextCursor())
+                        + ",\"catalogVersion\":\"" + page.snapshot().version() + "\"}")
+                .toByteArray();
+    }
 
-            int idx = 1;
-            if (hotelType != null && !hotelType.isBlank()) {
-                stmt.setString(idx++, hotelType);
+    // =================== ROWS ===================
+    // One view per projection; preset shapes (card/detail) are cached on each listing
+    private ListingView homeView(FieldProjection projection) {
+        return new ListingView() {
+            @Override
+            public String name() {
+                return "home:" + projection.key();
             }
-            if (searchQuery != null && !searchQuery.isBlank()) {
-                String p = "%" + searchQuery.toLowerCase() + "%";
-                stmt.setString(idx++, p);
-                stmt.setString(idx++, p);
-                stmt.setString(idx++, p);
-                stmt.setString(idx++, p);
+
+            @Override
+            public boolean cached() {
+                return projection.isAll() || projection.isPreset();
             }
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Map<String, Object> hotel = new LinkedHashMap<>();
-
-                    hotel.put("Hotel_ID", rs.getString("Hotel_ID"));
-                    hotel.put("Partner_ID", rs.getString("Partner_ID"));
-                    hotel.put("Hotel_Name", rs.getString("Hotel_Name"));
-                    hotel.put("Hotel_Type", rs.getString("Hotel_Type"));
-                    hotel.put("Room_Type", rs.getString("Room_Type"));
-                    hotel.put("Address", rs.getString("Address"));
-                    hotel.put("City", rs.getString("City"));
-                    hotel.put("State", rs.getString("State"));
-                    hotel.put("Country", rs.getString("Country"));
-                    hotel.put("Pincode", rs.getString("Pincode"));
-                    hotel.put("Hotel_Location", rs.getString("Hotel_Location"));
-                    hotel.put("Total_Rooms", rs.getObject("Total_Rooms"));
-                    hotel.put("Available_Rooms", rs.getObject("Available_Rooms"));
-                    hotel.put("Room_Price", rs.getObject("Room_Price"));
-                    hotel.put("Amenities", rs.getString("Amenities"));
-                    hotel.put("Description", rs.getString("Description"));
-                    hotel.put("Policies", rs.getString("Policies"));
-                    hotel.put("Rating", rs.getObject("Rating"));
-                    hotel.put("Hotel_Contact", rs.getString("Hotel_Contact"));
-                    hotel.put("About_This_Property", rs.getString("About_This_Property"));
-                    hotel.put("Customization", rs.getString("Customization"));
-                    hotel.put("Status", rs.getString("Status"));
-
-                    hotel.put("Hotel_Images",
-                            buildImageList(rs.getString("Hotel_Images")));
-
-                    hotels.add(hotel);
+            @Override
+            public byte[] render(Listing listing) {
+                try {
+                    byte[] json = objectMapper.writeValueAsBytes(toRow(listing, projection));
+                    return Arrays.copyOf(json, json.length - 1); // drop the closing brace
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
             }
-
-            sendJsonResponse(exchange, 200,
-                    objectMapper.writeValueAsString(hotels));
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            sendJsonResponse(exchange, 500,
-                    "{\"error\":\"Internal error\"}");
-        }
+        };
     }
 
-    // =================== PAYING GUEST ===================
-    private void handlePayingGuestRequest(HttpExchange exchange,
-                                          String searchQuery) throws IOException {
-
-        List<Map<String, Object>> pgs = new ArrayList<>();
-
-        String baseSql = """
-            SELECT PG_ID, Partner_ID, PG_Name, PG_Type, Room_Type,
-                   Address, City, State, Country, Pincode,
-                   Total_Single_Sharing_Rooms,
-                   Total_Double_SHARING_ROOMS,
-                   Total_Three_SHARING_ROOMS,
-                   Total_FOUR_SHARING_ROOMS,
-                   Total_FIVE_SHARING_ROOMS,
-                   Hotel_Location, Available_Rooms, Room_Price,
-                   Amenities, Description, Policies, Rating,
-                   PG_Contact, About_This_PG, PG_Images, Status
-            FROM paying_guest_info
-            WHERE Status = 'Active'
-        """;
-
-        StringBuilder sql = new StringBuilder(baseSql);
-
-        if (searchQuery != null && !searchQuery.isBlank()) {
-            sql.append("""
-                AND (
-                    LOWER(PG_Name) LIKE ?
-                    OR LOWER(City) LIKE ?
-                    OR LOWER(State) LIKE ?
-                    OR LOWER(Country) LIKE ?
-                )
-            """);
+    private Map<String, Object> toRow(Listing l, FieldProjection projection) {
+        String[] fields = l.kind() == Listing.Kind.PG ? PG_FIELDS : HOTEL_FIELDS;
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String f : fields) {
+            String key = PG_KEYS.getOrDefault(f, f);
+            if (!projection.includes(key)) continue;
+            Object v = l.columns().get(f);
+            row.put(key, v == null || RAW_FIELDS.contains(f) ? v : v.toString());
         }
-
-        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
-
-            if (searchQuery != null && !searchQuery.isBlank()) {
-                String p = "%" + searchQuery.toLowerCase() + "%";
-                stmt.setString(1, p);
-                stmt.setString(2, p);
-                stmt.setString(3, p);
-                stmt.setString(4, p);
-            }
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Map<String, Object> pg = new LinkedHashMap<>();
-
-                    pg.put("PG_ID", rs.getString("PG_ID"));
-                    pg.put("Partner_ID", rs.getString("Partner_ID"));
-                    pg.put("PG_Name", rs.getString("PG_Name"));
-                    pg.put("PG_Type", rs.getString("PG_Type"));
-                    pg.put("Room_Type", rs.getString("Room_Type"));
-                    pg.put("Address", rs.getString("Address"));
-                    pg.put("City", rs.getString("City"));
-                    pg.put("State", rs.getString("State"));
-                    pg.put("Country", rs.getString("Country"));
-                    pg.put("Pincode", rs.getString("Pincode"));
-
-                    pg.put("Total_Single_Sharing_Rooms", rs.getObject("Total_Single_Sharing_Rooms"));
-                    pg.put("Total_Double_SHARING_ROOMS", rs.getObject("Total_Double_SHARING_ROOMS"));
-                    pg.put("Total_Three_SHARING_ROOMS", rs.getObject("Total_Three_SHARING_ROOMS"));
-                    pg.put("Total_FOUR_SHARING_ROOMS", rs.getObject("Total_FOUR_SHARING_ROOMS"));
-                    pg.put("Total_FIVE_SHARING_ROOMS", rs.getObject("Total_FIVE_SHARING_ROOMS"));
-
-                    pg.put("Hotel_Location", rs.getString("Hotel_Location"));
-                    pg.put("Available_Rooms", rs.getObject("Available_Rooms"));
-                    pg.put("Room_Price", rs.getObject("Room_Price"));
-                    pg.put("Amenities", rs.getString("Amenities"));
-                    pg.put("Description", rs.getString("Description"));
-                    pg.put("Policies", rs.getString("Policies"));
-                    pg.put("Rating", rs.getObject("Rating"));
-                    pg.put("PG_Contact", rs.getString("PG_Contact"));
-                    pg.put("About_This_PG", rs.getString("About_This_PG"));
-                    pg.put("Status", rs.getString("Status"));
-
-                    pg.put("PG_Images",
-                            buildImageList(rs.getString("PG_Images")));
-
-                    pgs.add(pg);
-                }
-            }
-
-            sendJsonResponse(exchange, 200,
-                    objectMapper.writeValueAsString(pgs));
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            sendJsonResponse(exchange, 500,
-                    "{\"error\":\"Internal error\"}");
+        String imagesColumn = l.kind().imagesColumn();
+        if (projection.includes(imagesColumn)) {
+            Object images = l.columns().get(imagesColumn);
+            row.put(imagesColumn, buildImageList(images == null ? null : images.toString()));
         }
+        return row;
     }
 
     // =================== HELPERS ===================
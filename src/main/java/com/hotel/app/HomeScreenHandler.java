@@ -0,0 +1,163 @@
+package com.hotel.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.booking.BookingStateMachine;
+import com.hotel.booking.ReservationEngine;
+import com.hotel.search.CatalogSnapshot;
+import com.hotel.search.CatalogStore;
+import com.hotel.search.JsonBody;
+import com.hotel.search.Listing;
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.FieldProjection;
+import com.hotel.utilities.ParallelQueries;
+import com.hotel.utilities.TaskScope;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GET /home?userId=..&email=..[&fields=card]
+ *
+ * Everything the app loads at start-up in one call: hotels, PGs, wallet and
+ * upcoming bookings. The wallet and bookings queries are forked first, each
+ * with its own time limit; hotels and PGs are rendered from the catalog
+ * snapshot on the request thread meanwhile, so they never queue behind the
+ * database. Parts are written to a chunked response as they finish:
+ *
+ * {"hotels":[...],"pgs":[...],"wallet":{...},"upcomingBookings":[...],"partial":[]}
+ *
+ * A part that fails or runs out of time is written as null and named in
+ * "partial", so the app can fall back to the single endpoint for it.
+ * wallet/upcomingBookings are only included when userId/email are given.
+ */
+public class HomeScreenHandler implements HttpHandler {
+
+    // Per-part limits, measured from the start of the request
+    private static final long WALLET_TIMEOUT_MILLIS = 1500;
+    private static final long BOOKINGS_TIMEOUT_MILLIS = 1500;
+
+    private final CatalogStore catalog;
+    private final RewardsWalletHandler wallet;
+    private final BookingHistoryHandler bookings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService fanOut;
+
+    public HomeScreenHandler(DbConfig dbConfig, CatalogStore catalog, BookingStateMachine bookingStates,
+                             ReservationEngine reservations, ParallelQueries queries, int fanOutThreads) {
+        this.catalog = catalog;
+        this.wallet = new RewardsWalletHandler(dbConfig, queries);
+        this.bookings = new BookingHistoryHandler(dbConfig, bookingStates, reservations);
+
+        AtomicInteger n = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(fanOutThreads, r -> {
+            Thread t = new Thread(r, "home-fanout-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method Not Allowed");
+            return;
+        }
+
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String userId = params.getOrDefault("userId", "").trim();
+        String email = params.getOrDefault("email", "").trim();
+        FieldProjection listingFields = FieldProjection.parse(params.get("fields"), FieldProjection.LISTING_PRESETS);
+
+        try (TaskScope<byte[]> scope = new TaskScope<>(fanOut)) {
+            if (!userId.isEmpty()) {
+                scope.fork("wallet", WALLET_TIMEOUT_MILLIS,
+                        () -> objectMapper.writeValueAsBytes(wallet.walletSummary(userId)));
+            }
+            if (!userId.isEmpty() || !email.isEmpty()) {
+                scope.fork("upcomingBookings", BOOKINGS_TIMEOUT_MILLIS,
+                        () -> objectMapper.writeValueAsBytes(bookings.history(email, userId, true, FieldProjection.ALL)));
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0); // chunked: parts are written as they finish
+
+            List<String> partial = new ArrayList<>();
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write('{');
+                CatalogSnapshot snapshot = catalog.current();
+                writeListings(os, "hotels", snapshot.hotels(), Listing.Kind.HOTEL, listingFields, partial);
+                writeListings(os, "pgs", snapshot.pgs(), Listing.Kind.PG, listingFields, partial);
+
+                TaskScope.Result<byte[]> r;
+                while ((r = scope.next()) != null) {
+                    if (r.ok()) {
+                        writePart(os, r.name(), r.value());
+                    } else {
+                        writePart(os, r.name(), null);
+                        partial.add(r.name());
+                        if (r.error() != null) r.error().printStackTrace();
+                    }
+                }
+                os.write(("\"partial\":" + objectMapper.writeValueAsString(partial) + "}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A catalog part, rendered on the request thread; written as null if rendering fails. */
+    private static void writeListings(OutputStream os, String name, CatalogSnapshot.Section section,
+                                      Listing.Kind kind, FieldProjection fields, List<String> partial)
+            throws IOException {
+        byte[] value;
+        try {
+            value = new JsonBody().listings(section.listings(), HotelsHandler.view(kind, fields), null).toByteArray();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            value = null;
+            partial.add(name);
+        }
+        writePart(os, name, value);
+    }
+
+    private static void writePart(OutputStream os, String name, byte[] value) throws IOException {
+        os.write(("\"" + name + "\":").getBytes(StandardCharsets.UTF_8));
+        os.write(value != null ? value : "null".getBytes(StandardCharsets.UTF_8));
+        os.write(',');
+        os.flush();
+    }
+
+    private Map<String, String> parseQuery(String query) {
+        Map<String, String> map = new HashMap<>();
+        if (query == null) return map;
+        for (String pair : query.split("&")) {
+            String[] kv = pair.split("=", 2);
+            if (kv.length == 2) {
+                map.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                        URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+            }
+        }
+        return map;
+    }
+
+    private void sendError(HttpExchange exchange, int code, String msg) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(Map.of("error", msg));
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -1,22 +1,31 @@
 package com.hotel.app;
 
+import com.hotel.search.CatalogSnapshot;
+import com.hotel.search.CatalogStore;
+import com.hotel.search.JsonBody;
+import com.hotel.search.Listing;
+import com.hotel.search.ListingView;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.FieldProjection;
 import com.sun.net.httpserver.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import java.io.*;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.io.File;
-import java.sql.*;
 import java.util.*;
 
 public class HotelsHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final CatalogStore catalog;
 
-    public HotelsHandler(DbConfig dbConfig) {
+    public HotelsHandler(DbConfig dbConfig, CatalogStore catalog) {
         this.dbConfig = dbConfig;
+        this.catalog = catalog;
     }
 
     @Override
@@ -32,6 +41,12 @@ public class HotelsHandler implements HttpHandler {
                 return;
             }
 
+            // Many hotels/PGs by id in one response (wishlists, recently viewed)
+            if (path.equals("/hotels/batch")) {
+                handleBatch(exchange);
+                return;
+            }
+
             // Serve hotel data
             if (path.startsWith("/hotels")) {
                 if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
@@ -43,6 +58,7 @@ public class HotelsHandler implements HttpHandler {
                 String typeFilter = null;
                 boolean detailsPage = false;
                 String hotelId = null;
+                String fields = null;
 
                 if (query != null) {
                     if (query.contains("type=")) {
@@ -54,78 +70,135 @@ public class HotelsHandler implements HttpHandler {
                         hotelId = URLDecoder.decode(query.split("hotel_id=")[1].split("&")[0],
                                 StandardCharsets.UTF_8);
                     }
+                    if (query.contains("fields=")) {
+                        fields = URLDecoder.decode(query.split("fields=")[1].split("&")[0],
+                                StandardCharsets.UTF_8);
+                    }
                 }
 
-                List<Map<String, Object>> hotels = new ArrayList<>();
+                // Served from the catalog; each hotel's JSON is rendered once and reused
+                CatalogSnapshot.Section section = catalog.current().hotels();
+                List<Listing> hotels = new ArrayList<>();
 
-                String sql = "SELECT Hotel_ID, Partner_ID, Hotel_Name, Hotel_Type, Room_Type, Address, City, State, Country, " +
-                        "Pincode, Hotel_Location, Total_Rooms, Available_Rooms, Room_Price, Amenities, Description, " +
-                        "Policies, Rating, Hotel_Contact, About_This_Property, Hotel_Images, Customization, Status " +
-                        "FROM Hotels_info WHERE Status = 'Active'";
-
-                if (typeFilter != null && !typeFilter.trim().isEmpty()) {
-                    sql += " AND Hotel_Type = ?";
-                }
                 if (detailsPage && hotelId != null) {
-                    sql += " AND Hotel_ID = ?";
+                    // A hotel listed since the last rebuild is read by primary key, as in /hotels/batch
+                    Listing l = catalog.lookup(Listing.Kind.HOTEL, List.of(hotelId)).get(hotelId);
+                    if (l != null && matchesType(l, typeFilter)) hotels.add(l);
+                } else {
+                    for (Listing l : section.listings()) {
+                        if (matchesType(l, typeFilter)) hotels.add(l);
+                    }
                 }
 
-                try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
-                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                FieldProjection projection = FieldProjection.parse(fields, FieldProjection.LISTING_PRESETS);
+                new JsonBody().listings(hotels, view(Listing.Kind.HOTEL, projection), null).send(exchange, 200);
+                return;
+            }
 
-                    int paramIndex = 1;
-                    if (typeFilter != null && !typeFilter.trim().isEmpty()) {
-                        stmt.setString(paramIndex++, typeFilter);
-                    }
-                    if (detailsPage && hotelId != null) {
-                        stmt.setString(paramIndex++, hotelId);
-                    }
+            sendError(exchange, 404, "Unknown endpoint: " + path);
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal Server Error: " + e.getMessage());
+        }
+    }
 
-                    ResultSet rs = stmt.executeQuery();
-                    ResultSetMetaData meta = rs.getMetaData();
-                    int cols = meta.getColumnCount();
+    // ===== Batch lookup =====
+    private static final int MAX_BATCH_IDS = 300;
 
-                    while (rs.next()) {
-                        Map<String, Object> row = new LinkedHashMap<>();
-                        for (int i = 1; i <= cols; i++) {
-                            String key = meta.getColumnLabel(i);
-                            Object val = rs.getObject(i);
-                            row.put(key, val == null ? "" : val.toString());
-                        }
+    /**
+     * GET ?hotel_ids=a,b&pg_ids=c or POST {"hotel_ids":[...],"pg_ids":[...]}.
+     * Responds {"hotels":[...],"pgs":[...],"missing":[...]} with listings in
+     * request order; ids that are unknown or inactive are listed in missing.
+     */
+    private void handleBatch(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                String[] kv = pair.split("=", 2);
+                if (kv.length == 2) {
+                    params.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                            URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+                }
+            }
+        }
 
-                        // Handle Hotel Images properly
-                        String imgValue = (String) row.get("Hotel_Images");
-                        List<String> imageList = new ArrayList<>();
-                        if (imgValue != null && !imgValue.isEmpty()) {
-                            String[] imageNames = imgValue.split(",");
-                            for (String name : imageNames) {
-                                name = name.trim();
-                                if (!name.startsWith("http")) {
-                                    name = "http://10.0.2.2:8080/hotel_images/" + name;
-                                }
-                                imageList.add(name);
-                            }
-                        }
+        Set<String> hotelIds = new LinkedHashSet<>();
+        Set<String> pgIds = new LinkedHashSet<>();
+        if ("GET".equalsIgnoreCase(method)) {
+            addIds(hotelIds, params.get("hotel_ids"));
+            addIds(pgIds, params.get("pg_ids"));
+        } else if ("POST".equalsIgnoreCase(method)) {
+            String raw = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            JSONObject body;
+            try {
+                body = raw.isBlank() ? new JSONObject() : new JSONObject(raw);
+            } catch (Exception e) {
+                sendError(exchange, 400, "Invalid JSON body");
+                return;
+            }
+            addIds(hotelIds, body.optJSONArray("hotel_ids"));
+            addIds(pgIds, body.optJSONArray("pg_ids"));
+        } else {
+            sendError(exchange, 405, "Method Not Allowed");
+            return;
+        }
 
-                        // Always return full list
-                        row.put("Hotel_Images", imageList);
+        if (hotelIds.isEmpty() && pgIds.isEmpty()) {
+            sendError(exchange, 400, "hotel_ids or pg_ids is required");
+            return;
+        }
+        if (hotelIds.size() + pgIds.size() > MAX_BATCH_IDS) {
+            sendError(exchange, 400, "At most " + MAX_BATCH_IDS + " ids per request");
+            return;
+        }
 
-                        hotels.add(row);
-                    }
+        FieldProjection projection = FieldProjection.parse(params.get("fields"), FieldProjection.LISTING_PRESETS);
+        List<String> missing = new ArrayList<>();
+        List<Listing> hotels = inOrder(Listing.Kind.HOTEL, hotelIds, missing);
+        List<Listing> pgs = inOrder(Listing.Kind.PG, pgIds, missing);
 
-                    sendJson(exchange, hotels);
+        StringBuilder missingJson = new StringBuilder("[");
+        for (int i = 0; i < missing.size(); i++) {
+            if (i > 0) missingJson.append(",");
+            missingJson.append("\"").append(escape(missing.get(i))).append("\"");
+        }
+        missingJson.append("]");
 
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                    sendError(exchange, 500, "Database error: " + e.getMessage());
-                }
-                return;
-            }
+        new JsonBody()
+                .raw("{\"hotels\":")
+                .listings(hotels, view(Listing.Kind.HOTEL, projection), null)
+                .raw(",\"pgs\":")
+                .listings(pgs, view(Listing.Kind.PG, projection), null)
+                .raw(",\"missing\":" + missingJson + "}")
+                .send(exchange, 200);
+    }
 
-            sendError(exchange, 404, "Unknown endpoint: " + path);
-        } catch (Exception e) {
-            e.printStackTrace();
-            sendError(exchange, 500, "Internal Server Error: " + e.getMessage());
+    private List<Listing> inOrder(Listing.Kind kind, Set<String> ids, List<String> missing) throws Exception {
+        if (ids.isEmpty()) return List.of();
+        Map<String, Listing> found = catalog.lookup(kind, ids);
+        List<Listing> out = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Listing l = found.get(id);
+            if (l != null) out.add(l);
+            else missing.add(id);
+        }
+        return out;
+    }
+
+    private static void addIds(Set<String> ids, String csv) {
+        if (csv == null) return;
+        for (String id : csv.split(",")) {
+            if (!id.trim().isEmpty()) ids.add(id.trim());
+        }
+    }
+
+    private static void addIds(Set<String> ids, JSONArray arr) {
+        if (arr == null) return;
+        for (int i = 0; i < arr.length(); i++) {
+            String id = arr.optString(i);
+            if (id != null && !id.trim().isEmpty()) ids.add(id.trim());
         }
     }
 
@@ -149,14 +222,82 @@ public class HotelsHandler implements HttpHandler {
         }
     }
 
-    private void sendJson(HttpExchange exchange, List<Map<String, Object>> data) throws IOException {
-        String json = toJson(data);
-        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
+    private static boolean matchesType(Listing l, String typeFilter) {
+        return typeFilter == null || typeFilter.trim().isEmpty() || typeFilter.equalsIgnoreCase(l.type());
+    }
+
+    // ===== Hotel JSON (one fragment per listing) =====
+    private static final String[] COLUMNS = {
+            "Hotel_ID", "Partner_ID", "Hotel_Name", "Hotel_Type", "Room_Type", "Address", "City", "State", "Country",
+            "Pincode", "Hotel_Location", "Total_Rooms", "Available_Rooms", "Room_Price", "Amenities", "Description",
+            "Policies", "Rating", "Hotel_Contact", "About_This_Property", "Hotel_Images", "Customization", "Status"
+    };
+
+    static final String[] PG_COLUMNS = {
+            "PG_ID", "Partner_ID", "PG_Name", "PG_Type", "Room_Type", "Address", "City", "State", "Country",
+            "Pincode", "Total_Single_Sharing_Rooms", "Total_Double_Sharing_Rooms", "Total_Three_Sharing_Rooms",
+            "Total_Four_Sharing_Rooms", "Total_Five_Sharing_Rooms", "Hotel_Location", "Available_Rooms",
+            "Room_Price", "Amenities", "Description", "Policies", "Rating", "PG_Contact", "About_This_PG",
+            "PG_Images", "Status"
+    };
+
+    private static final ListingView HOTELS_VIEW = projectedView(Listing.Kind.HOTEL, FieldProjection.ALL);
+
+    /** The /hotels listing shape for either kind, also used by the composite /home call. */
+    static ListingView view(Listing.Kind kind, FieldProjection projection) {
+        return kind == Listing.Kind.HOTEL && projection.isAll() ? HOTELS_VIEW : projectedView(kind, projection);
+    }
+
+    // Preset projections are cached per listing like the full view; ad-hoc field lists are not
+    private static ListingView projectedView(Listing.Kind kind, FieldProjection projection) {
+        String[] columns = kind == Listing.Kind.PG ? PG_COLUMNS : COLUMNS;
+        String imagesColumn = kind.imagesColumn();
+        String base = kind == Listing.Kind.PG ? "pgs" : "hotels";
+        return new ListingView() {
+            @Override
+            public String name() {
+                return projection.isAll() ? base : base + ":" + projection.key();
+            }
+
+            @Override
+            public boolean cached() {
+                return projection.isAll() || projection.isPreset();
+            }
+
+            @Override
+            public byte[] render(Listing listing) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (String key : columns) {
+                    if (!projection.includes(key)) continue;
+                    Object val = listing.columns().get(key);
+                    row.put(key, val == null ? "" : val.toString());
+                }
+
+                // PGs get /paying_guest's image URLs
+                if (kind == Listing.Kind.PG) {
+                    row = PgsHandler.toRow(row);
+                } else if (row.containsKey(imagesColumn)) {
+                    String imgValue = (String) row.get(imagesColumn);
+                    List<String> imageList = new ArrayList<>();
+                    if (imgValue != null && !imgValue.isEmpty()) {
+                        String[] imageNames = imgValue.split(",");
+                        for (String name : imageNames) {
+                            name = name.trim();
+                            if (!name.startsWith("http")) {
+                                name = "http://10.0.2.2:8080/hotel_images/" + name;
+                            }
+                            imageList.add(name);
+                        }
+                    }
+
+                    // Always return full list
+                    row.put(imagesColumn, imageList);
+                }
+
+                String json = toJson(row);
+                return json.substring(0, json.length() - 1).getBytes(StandardCharsets.UTF_8); // open object
+            }
+        };
     }
 
     private void sendError(HttpExchange exchange, int code, String msg) throws IOException {
@@ -169,36 +310,30 @@ public class HotelsHandler implements HttpHandler {
         }
     }
 
-    private String toJson(List<Map<String, Object>> list) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < list.size(); i++) {
-            Map<String, Object> m = list.get(i);
-            sb.append("{");
-            int j = 0;
-            for (var e : m.entrySet()) {
-                sb.append("\"").append(escape(e.getKey())).append("\":");
-                Object val = e.getValue();
-                if (val instanceof List) {
-                    sb.append("[");
-                    List<?> l = (List<?>) val;
-                    for (int k = 0; k < l.size(); k++) {
-                        sb.append("\"").append(escape(String.valueOf(l.get(k)))).append("\"");
-                        if (k < l.size() - 1) sb.append(",");
-                    }
-                    sb.append("]");
-                } else {
-                    sb.append("\"").append(escape(String.valueOf(val))).append("\"");
+    private static String toJson(Map<String, Object> m) {
+        StringBuilder sb = new StringBuilder("{");
+        int j = 0;
+        for (var e : m.entrySet()) {
+            sb.append("\"").append(escape(e.getKey())).append("\":");
+            Object val = e.getValue();
+            if (val instanceof List) {
+                sb.append("[");
+                List<?> l = (List<?>) val;
+                for (int k = 0; k < l.size(); k++) {
+                    sb.append("\"").append(escape(String.valueOf(l.get(k)))).append("\"");
+                    if (k < l.size() - 1) sb.append(",");
                 }
-                if (j++ < m.size() - 1) sb.append(",");
+                sb.append("]");
+            } else {
+                sb.append("\"").append(escape(String.valueOf(val))).append("\"");
             }
-            sb.append("}");
-            if (i < list.size() - 1) sb.append(",");
+            if (j++ < m.size() - 1) sb.append(",");
         }
-        sb.append("]");
+        sb.append("}");
         return sb.toString();
     }
 
-    private String escape(String s) {
+    private static String escape(String s) {
         if (s == null) return "";
         return s.replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
     }
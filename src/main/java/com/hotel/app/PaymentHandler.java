@@ -1,7 +1,12 @@
 package com.hotel.app;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.booking.HoldManager;
+import com.hotel.booking.BookingStateMachine;
+import com.hotel.booking.ReservationEngine;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdempotencyStore;
+import com.hotel.utilities.Outbox;
 import com.razorpay.*;
 import com.sun.net.httpserver.*;
 import org.json.JSONObject;
@@ -10,10 +15,15 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 public class PaymentHandler implements HttpHandler {
 
     private final DbConfig dbConfig;
+    private final ReservationEngine reservations;
+    private final HoldManager holds;
+    private final BookingStateMachine bookingStates;
+    private final IdempotencyStore idempotency;
     private final ObjectMapper mapper = new ObjectMapper();
 
     // Razorpay credentials
@@ -21,8 +31,13 @@ public class PaymentHandler implements HttpHandler {
     private final String RZP_SECRET;
     private final String WEBHOOK_SECRET; 
 
-    public PaymentHandler(DbConfig dbConfig) {
+    public PaymentHandler(DbConfig dbConfig, ReservationEngine reservations, HoldManager holds,
+                          BookingStateMachine bookingStates, IdempotencyStore idempotency) {
         this.dbConfig = dbConfig;
+        this.reservations = reservations;
+        this.holds = holds;
+        this.bookingStates = bookingStates;
+        this.idempotency = idempotency;
         this.RZP_KEY = dbConfig.getApiKey();
         this.RZP_SECRET = dbConfig.getAPIKeySecret();
         this.WEBHOOK_SECRET = dbConfig.getAPIKeySecret();
@@ -70,8 +85,9 @@ public class PaymentHandler implements HttpHandler {
         }
     }
 
-    private void verifyFromClient(HttpExchange ex) throws IOException {
-        Map<String, Object> p = readJson(ex);
+    private void verifyFromClient(HttpExchange ex) throws Exception {
+        String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Map<String, Object> p = mapper.readValue(body, Map.class);
 
         String bookingId = str(p.get("Booking_ID"));
         String userId = str(p.get("User_ID"));
@@ -82,7 +98,11 @@ public class PaymentHandler implements HttpHandler {
         String signature = str(p.get("Gateway_Signature"));
         double amount = toDouble(p.get("Final_Payable_Amount"));
 
-        processPaymentUpdate(ex, bookingId, userId, partnerId, hotelId, orderId, paymentId, signature, amount, false);
+        // A retried verify with the same key replays the first result instead of recording another attempt
+        String idempotencyKey = ex.getRequestHeaders().getFirst(IdempotencyStore.HEADER);
+        IdempotencyStore.Response response = idempotency.execute("payment", idempotencyKey, body,
+                claim -> processPaymentUpdate(bookingId, userId, partnerId, hotelId, orderId, paymentId, signature, amount, claim));
+        respond(ex, response.status(), response.body());
     }
 
     private void handleWebhook(HttpExchange ex) throws IOException {
@@ -108,9 +128,17 @@ public class PaymentHandler implements HttpHandler {
         }
     }
 
-    private void processPaymentUpdate(HttpExchange ex, String bid, String uid, String pid, String hid, 
-                                     String oid, String payid, String sig, double amt, boolean isWebhook) throws IOException {
+    private IdempotencyStore.Response processPaymentUpdate(String bid, String uid, String pid, String hid,
+                                                           String oid, String payid, String sig, double amt,
+                                                           IdempotencyStore.Claim claim) {
+        Lock hotelLock = null;
         try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            // Same lock as booking/cancel, since the hold below may claim or release rooms
+            String bookingHotel = reservations.hotelOf(bid);
+            if (bookingHotel != null) {
+                hotelLock = reservations.lockFor(bookingHotel);
+                hotelLock.lock();
+            }
             conn.setAutoCommit(false);
             
             String status = "Failed";
@@ -128,17 +156,57 @@ public class PaymentHandler implements HttpHandler {
 
             String prid = UUID.randomUUID().toString();
             int attemptNo = nextAttempt(conn, bid);
-            
+
             insertPaymentRecord(conn, prid, bid, uid, pid, hid, oid, payid, sig, status, failureReason, amt, attemptNo);
-            updateBookingStatus(conn, bid, status, payid, prid);
+            Outbox.append(conn, Outbox.PAYMENT, bid, "PAYMENT_RECORDED", new JSONObject()
+                    .put("booking_id", bid)
+                    .put("record_id", prid)
+                    .put("partner_id", pid)
+                    .put("hotel_id", hid)
+                    .put("payment_status", status)
+                    .put("amount", amt)
+                    .put("attempt", attemptNo));
 
-            conn.commit();
-            
-            // FIXED: Using the overloaded json method with 4 arguments
-            if(!isWebhook) respond(ex, 200, json("status", status, "record_id", prid));
+            // Written with the status change, or on their own if the booking has moved on
+            Map<String, Object> payment = new LinkedHashMap<>();
+            payment.put("Payment_Status", status);
+            payment.put("Transaction_ID", payid);
+            payment.put("Last_Payment_Record_ID", prid);
+            payment.put("Payment_Confirmed_At", new Timestamp(System.currentTimeMillis()));
+
+            // Paid converts the room hold; a failure gives the rooms back
+            BookingStateMachine.Transition transition;
+            if (status.equals("Paid")) {
+                transition = bookingStates.apply(conn, bid, BookingStateMachine.Event.PAYMENT_SUCCEEDED, "payment", payment);
+                if (transition.applied() && !holds.confirm(conn, bid)) {
+                    // Paid after the hold lapsed and the rooms were resold
+                    transition = bookingStates.apply(conn, bid, BookingStateMachine.Event.ROOMS_LOST, "payment",
+                            Map.of("Refund_Status", "Refund Initiated"));
+                } else if (!transition.applied()) {
+                    // Cancelled meanwhile: keep the payment on record and refund it
+                    updatePaymentColumns(conn, bid, payment);
+                    markForRefund(conn, bid);
+                }
+            } else {
+                BookingStateMachine.Event event = holds.release(conn, bid)
+                        ? BookingStateMachine.Event.PAYMENT_FAILED
+                        : BookingStateMachine.Event.PAYMENT_DECLINED;
+                transition = bookingStates.apply(conn, bid, event, "payment", payment);
+                if (!transition.applied()) updatePaymentColumns(conn, bid, payment);
+            }
+
+            IdempotencyStore.Response recorded =
+                    new IdempotencyStore.Response(200, json("status", status, "record_id", prid));
+            claim.commit(conn, recorded);
+            holds.untrack(bid);
+            bookingStates.publish(transition);
             
+            return recorded;
+
         } catch (Exception e) {
-            if(!isWebhook) respond(ex, 500, json("error", e.getMessage()));
+            return new IdempotencyStore.Response(500, json("error", e.getMessage()));
+        } finally {
+            if (hotelLock != null) hotelLock.unlock();
         }
     }
 
@@ -172,19 +240,28 @@ public class PaymentHandler implements HttpHandler {
         }
     }
 
-    private void updateBookingStatus(Connection conn, String bid, String status, String payId, String prid) throws SQLException {
+    private void updatePaymentColumns(Connection conn, String bid, Map<String, Object> payment) throws SQLException {
         String sql = "UPDATE bookings_info SET Payment_Status = ?, Transaction_ID = ?, " +
-                     "Last_Payment_Record_ID = ?, Payment_Confirmed_At = NOW(), Booking_Status = ? WHERE Booking_ID = ?";
+                     "Last_Payment_Record_ID = ?, Payment_Confirmed_At = ? WHERE Booking_ID = ?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, status);
-            ps.setString(2, payId);
-            ps.setString(3, prid);
-            ps.setString(4, status.equals("Paid") ? "CONFIRMED" : "PENDING");
+            ps.setObject(1, payment.get("Payment_Status"));
+            ps.setObject(2, payment.get("Transaction_ID"));
+            ps.setObject(3, payment.get("Last_Payment_Record_ID"));
+            ps.setObject(4, payment.get("Payment_Confirmed_At"));
             ps.setString(5, bid);
             ps.executeUpdate();
         }
     }
 
+    private void markForRefund(Connection conn, String bid) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE bookings_info SET Refund_Status = 'Refund Initiated' WHERE Booking_ID = ?")) {
+            ps.setString(1, bid);
+            ps.executeUpdate();
+        }
+        Outbox.append(conn, Outbox.PAYMENT, bid, "REFUND_REQUESTED", new JSONObject().put("booking_id", bid));
+    }
+
     private int nextAttempt(Connection conn, String bid) throws SQLException {
         try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM Payment_Transactions WHERE Booking_ID = ?")) {
             ps.setString(1, bid);
@@ -195,7 +272,7 @@ public class PaymentHandler implements HttpHandler {
 
     private void addCors(HttpExchange ex) {
         ex.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        ex.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+        ex.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, " + IdempotencyStore.HEADER);
         ex.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
     }
 
@@ -1,9 +1,11 @@
 package com.hotel.app;
 
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.FieldProjection;
 import com.sun.net.httpserver.*;
 import java.io.*;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -14,6 +16,14 @@ public class PgsHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
 
+    // Columns a fields= projection may select; anything else is ignored
+    private static final List<String> PG_COLUMNS = List.of(
+            "PG_ID", "Partner_ID", "PG_Name", "PG_Type", "Room_Type", "Address", "City", "State", "Country",
+            "Pincode", "Total_Single_Sharing_Rooms", "Total_Double_Sharing_Rooms", "Total_Three_Sharing_Rooms",
+            "Total_Four_Sharing_Rooms", "Total_Five_Sharing_Rooms", "Hotel_Location", "Available_Rooms",
+            "Room_Price", "Amenities", "Description", "Policies", "Rating", "PG_Contact", "About_This_PG",
+            "PG_Images", "Status");
+
     public PgsHandler(DbConfig dbConfig) {
         this.dbConfig = dbConfig;
     }
@@ -38,8 +48,16 @@ public class PgsHandler implements HttpHandler {
                     return;
                 }
 
+                String query = uri.getQuery();
+                String fields = null;
+                if (query != null && query.contains("fields=")) {
+                    fields = URLDecoder.decode(query.split("fields=")[1].split("&")[0], StandardCharsets.UTF_8);
+                }
+                FieldProjection projection = FieldProjection.parse(fields, FieldProjection.LISTING_PRESETS);
+
                 List<Map<String, Object>> pgsList = new ArrayList<>();
-                String sql = "SELECT * FROM paying_guest_info WHERE Status = 'Active'";
+                String sql = "SELECT " + projection.selectList(PG_COLUMNS)
+                        + " FROM paying_guest_info WHERE Status = 'Active'";
 
                 try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
                      PreparedStatement stmt = conn.prepareStatement(sql);
@@ -49,58 +67,11 @@ public class PgsHandler implements HttpHandler {
                     int cols = meta.getColumnCount();
 
                     while (rs.next()) {
-                        Map<String, Object> row = new LinkedHashMap<>();
+                        Map<String, Object> values = new LinkedHashMap<>();
                         for (int i = 1; i <= cols; i++) {
-                            String key = meta.getColumnLabel(i);
-                            Object val = rs.getObject(i);
-                            row.put(key, val == null ? "" : val.toString());
-                        }
-
-                        // Process PG_Images
-                        String imgValue = (String) row.get("PG_Images");
-                        List<String> imageList = new ArrayList<>();
-
-                        if (imgValue != null && !imgValue.isEmpty()) {
-                            String[] urls = imgValue.split(",");
-
-                            for (String u : urls) {
-                                if (u == null) continue;
-                                String orig = u.trim();
-                                if (orig.isEmpty()) continue;
-
-                                // Strip brackets/quotes
-                                while (orig.startsWith("[") || orig.startsWith("\"")) orig = orig.substring(1);
-                                while (orig.endsWith("]") || orig.endsWith("\"")) orig = orig.substring(0, orig.length() - 1);
-                                orig = orig.trim().replace("\\", "/"); 
-
-                                // Full URL case
-                                if (orig.startsWith("http://") || orig.startsWith("https://")) {
-                                    String full = orig.replace("localhost", "10.0.2.2").trim();
-                                    imageList.add(full);
-                                    continue;
-                                }
-
-                                // Encode each path segment
-                                String clean = orig.replaceAll("\\.\\.", "").replaceAll("//+", "/");
-                                if (clean.startsWith("/")) clean = clean.substring(1);
-                                String[] segments = clean.split("/");
-                                StringBuilder encoded = new StringBuilder();
-                                for (String seg : segments) {
-                                    if (seg.isEmpty()) continue;
-                                    String enc = URLEncoder.encode(seg, StandardCharsets.UTF_8).replace("+", "%20");
-                                    if (encoded.length() > 0) encoded.append("/");
-                                    encoded.append(enc);
-                                }
-
-                                if (encoded.length() > 0) {
-                                    String finalUrl = "http://10.0.2.2:8080/hotel_images/" + encoded.toString();
-                                    imageList.add(finalUrl);
-                                }
-                            }
+                            values.put(meta.getColumnLabel(i), rs.getObject(i));
                         }
-
-                        row.put("PG_Images", imageList);
-                        pgsList.add(row);
+                        pgsList.add(projection.apply(toRow(values)));
                     }
 
                     sendJson(exchange, pgsList);
@@ -120,6 +91,59 @@ public class PgsHandler implements HttpHandler {
         }
     }
 
+    /**
+     * A PG as the app gets it, here and in /home: every value as a string and
+     * PG_Images, if selected, as a list of image URLs.
+     */
+    static Map<String, Object> toRow(Map<String, ?> values) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        values.forEach((key, val) -> row.put(key, val == null ? "" : val.toString()));
+        if (row.containsKey("PG_Images")) row.put("PG_Images", imageUrls((String) row.get("PG_Images")));
+        return row;
+    }
+
+    private static List<String> imageUrls(String imgValue) {
+        List<String> imageList = new ArrayList<>();
+        if (imgValue == null || imgValue.isEmpty()) return imageList;
+
+        String[] urls = imgValue.split(",");
+        for (String u : urls) {
+            if (u == null) continue;
+            String orig = u.trim();
+            if (orig.isEmpty()) continue;
+
+            // Strip brackets/quotes
+            while (orig.startsWith("[") || orig.startsWith("\"")) orig = orig.substring(1);
+            while (orig.endsWith("]") || orig.endsWith("\"")) orig = orig.substring(0, orig.length() - 1);
+            orig = orig.trim().replace("\\", "/");
+
+            // Full URL case
+            if (orig.startsWith("http://") || orig.startsWith("https://")) {
+                String full = orig.replace("localhost", "10.0.2.2").trim();
+                imageList.add(full);
+                continue;
+            }
+
+            // Encode each path segment
+            String clean = orig.replaceAll("\\.\\.", "").replaceAll("//+", "/");
+            if (clean.startsWith("/")) clean = clean.substring(1);
+            String[] segments = clean.split("/");
+            StringBuilder encoded = new StringBuilder();
+            for (String seg : segments) {
+                if (seg.isEmpty()) continue;
+                String enc = URLEncoder.encode(seg, StandardCharsets.UTF_8).replace("+", "%20");
+                if (encoded.length() > 0) encoded.append("/");
+                encoded.append(enc);
+            }
+
+            if (encoded.length() > 0) {
+                String finalUrl = "http://10.0.2.2:8080/hotel_images/" + encoded.toString();
+                imageList.add(finalUrl);
+            }
+        }
+        return imageList;
+    }
+
     private void serveImage(HttpExchange exchange, String fileName) throws IOException {
     	fileName = fileName.replaceAll("[/\\\\]+", "");
         File file = new File(dbConfig.getHotelImagesPath(), fileName);
@@ -2,6 +2,7 @@ package com.hotel.app;
 
 import com.hotel.security.PasswordUtil;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdGenerator;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.json.JSONObject;
@@ -14,10 +15,12 @@ import java.util.UUID;
 public class RegisterHandler implements HttpHandler {
 
     private final DbConfig dbConfig;
+    private final IdGenerator ids;
 
     // ✅ Inject DbConfig via constructor
-    public RegisterHandler(DbConfig dbConfig) {
+    public RegisterHandler(DbConfig dbConfig, IdGenerator ids) {
         this.dbConfig = dbConfig;
+        this.ids = ids;
     }
 
     @Override
@@ -70,17 +73,7 @@ public class RegisterHandler implements HttpHandler {
                 }
 
                 // ===== Generate new User_ID =====
-                String newId = "CR9087601";
-                String idSql = "SELECT User_ID FROM User_Info ORDER BY User_ID DESC LIMIT 1";
-                try (Statement stmt = conn.createStatement();
-                     ResultSet idRs = stmt.executeQuery(idSql)) {
-
-                    if (idRs.next()) {
-                        String lastId = idRs.getString("User_ID");
-                        int numericPart = Integer.parseInt(lastId.substring(2)) + 1;
-                        newId = "CR" + numericPart;
-                    }
-                }
+                String newId = ids.next(IdGenerator.USER);
 
                 // ===== Insert new user =====
                 String insertSql = """
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.ParallelQueries;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
@@ -15,14 +16,19 @@ import java.sql.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import javax.sql.DataSource;
 
 public class RewardsWalletHandler implements HttpHandler {
 
+    private static final long QUERY_TIMEOUT_MILLIS = 3000;
+
     private final DbConfig dbConfig;
+    private final ParallelQueries queries;
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public RewardsWalletHandler(DbConfig dbConfig) {
+    public RewardsWalletHandler(DbConfig dbConfig, ParallelQueries queries) {
         this.dbConfig = dbConfig;
+        this.queries = queries;
     }
 
     private Connection getConnection() throws SQLException {
@@ -213,8 +219,17 @@ public class RewardsWalletHandler implements HttpHandler {
     private ObjectNode handleWalletRequest(HttpExchange exchange) throws Exception {
         String query = exchange.getRequestURI().getQuery();
         Map<String, String> params = parseQuery(query);
-        String userId = params.get("userId");
+        return walletSummary(params.get("userId"));
+    }
 
+    /**
+     * Wallet, referral stats, transactions, refunds and usable coupons for a
+     * user, creating the wallet on first use. Also used by the composite /home call.
+     *
+     * The five reads are independent (transactions and refunds find the wallet
+     * by user), so they run concurrently on separate connections.
+     */
+    public ObjectNode walletSummary(String userId) throws Exception {
         ObjectNode json = mapper.createObjectNode();
 
         if (userId == null || userId.isBlank()) {
@@ -223,183 +238,211 @@ public class RewardsWalletHandler implements HttpHandler {
             return json;
         }
 
-        try (Connection conn = getConnection()) {
-            conn.setAutoCommit(false);
+        DataSource ds = dbConfig.getCustomerDataSource();
+        try (ParallelQueries.Scope q = queries.open(QUERY_TIMEOUT_MILLIS)) {
+            ParallelQueries.Slot<ObjectNode> wallet = q.fork("wallet", ds, conn -> walletOf(conn, userId));
+            ParallelQueries.Slot<ObjectNode> referrals = q.fork("referrals", ds, conn -> referralStats(conn, userId));
+            ParallelQueries.Slot<ArrayNode> transactions = q.fork("transactions", ds, conn -> transactions(conn, userId));
+            ParallelQueries.Slot<ArrayNode> refunds = q.fork("refunds", ds, conn -> refunds(conn, userId));
+            ParallelQueries.Slot<ArrayNode> coupons = q.fork("coupons", ds, conn -> coupons(conn, userId));
+            q.join();
 
-            String walletId = null;
-            double balance = 0.0;
+            json.setAll(wallet.get());
 
-            // 1) Check wallet
-            String walletSql = "SELECT wallet_id, balance FROM wallets WHERE user_id=? LIMIT 1";
-            try (PreparedStatement ps = conn.prepareStatement(walletSql)) {
-                ps.setString(1, userId);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    walletId = rs.getString("wallet_id");
-                    balance = rs.getDouble("balance");
-                }
-            }
+            // Referral code + stats
+            json.put("referralCode", generateReferralCode(userId));
+            json.setAll(referrals.get());
 
-            // 2) First-time user: create wallet + referral row
-            if (walletId == null) {
-                walletId = UUID.randomUUID().toString();
+            json.set("transactions", transactions.get());
+            json.set("refunds", refunds.get());
+            json.set("coupons", coupons.get());
+        }
 
-                String insertWallet = "INSERT INTO wallets(wallet_id, user_id, balance) VALUES(?,?,0.00)";
-                try (PreparedStatement ps = conn.prepareStatement(insertWallet)) {
-                    ps.setString(1, walletId);
-                    ps.setString(2, userId);
-                    ps.executeUpdate();
-                }
+        return json;
+    }
 
-                String insertReferral = "INSERT INTO referrals(referral_id, referrer_user_id, reward_status, reward_amount) VALUES(?,?,?,?)";
-                try (PreparedStatement ps = conn.prepareStatement(insertReferral)) {
-                    ps.setString(1, UUID.randomUUID().toString());
-                    ps.setString(2, userId);
-                    ps.setString(3, "not_eligible");
-                    ps.setDouble(4, 0.00);
-                    ps.executeUpdate();
-                }
+    // 1) Wallet, created with its referral row for a first-time user
+    private ObjectNode walletOf(Connection conn, String userId) throws SQLException {
+        ObjectNode json = mapper.createObjectNode();
+        conn.setAutoCommit(false);
 
-                conn.commit();
-                json.put("walletCreated", true);
-                balance = 0.0;
-            } else {
-                json.put("walletCreated", false);
+        String walletId = null;
+        double balance = 0.0;
+
+        String walletSql = "SELECT wallet_id, balance FROM wallets WHERE user_id=? LIMIT 1";
+        try (PreparedStatement ps = conn.prepareStatement(walletSql)) {
+            ps.setString(1, userId);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                walletId = rs.getString("wallet_id");
+                balance = rs.getDouble("balance");
             }
+        }
 
-            json.put("walletExists", true);
-            json.put("walletId", walletId);
-            json.put("balance", balance);
+        if (walletId == null) {
+            walletId = UUID.randomUUID().toString();
 
-            // 3) Referral code + stats
-            String referralCode = generateReferralCode(userId);
-            json.put("referralCode", referralCode);
+            String insertWallet = "INSERT INTO wallets(wallet_id, user_id, balance) VALUES(?,?,0.00)";
+            try (PreparedStatement ps = conn.prepareStatement(insertWallet)) {
+                ps.setString(1, walletId);
+                ps.setString(2, userId);
+                ps.executeUpdate();
+            }
 
-            String referralStatsSql = """
-                    SELECT COUNT(*) AS referred, COALESCE(SUM(reward_amount),0) AS totalReward
-                    FROM referrals WHERE referrer_user_id=? AND reward_status='credited'
-                    """;
-            try (PreparedStatement ps = conn.prepareStatement(referralStatsSql)) {
-                ps.setString(1, userId);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    json.put("referralCount", rs.getInt("referred"));
-                    json.put("referralEarnings", rs.getDouble("totalReward"));
-                } else {
-                    json.put("referralCount", 0);
-                    json.put("referralEarnings", 0.0);
-                }
+            String insertReferral = "INSERT INTO referrals(referral_id, referrer_user_id, reward_status, reward_amount) VALUES(?,?,?,?)";
+            try (PreparedStatement ps = conn.prepareStatement(insertReferral)) {
+                ps.setString(1, UUID.randomUUID().toString());
+                ps.setString(2, userId);
+                ps.setString(3, "not_eligible");
+                ps.setDouble(4, 0.00);
+                ps.executeUpdate();
             }
 
-            // 4) Wallet transactions
-            ArrayNode txArray = mapper.createArrayNode();
-            String txSql = """
-                    SELECT txn_id, type, amount, direction, status, description, created_at
-                    FROM wallet_transactions
-                    WHERE wallet_id=?
-                    ORDER BY created_at DESC
-                    """;
-            try (PreparedStatement ps = conn.prepareStatement(txSql)) {
-                ps.setString(1, walletId);
-                ResultSet rs = ps.executeQuery();
+            json.put("walletCreated", true);
+            balance = 0.0;
+        } else {
+            json.put("walletCreated", false);
+        }
+        conn.commit();
 
-                while (rs.next()) {
-                    ObjectNode tx = mapper.createObjectNode();
-                    tx.put("txnId", rs.getString("txn_id"));
-                    tx.put("type", rs.getString("type"));
-                    tx.put("amount", rs.getDouble("amount"));
-                    tx.put("direction", rs.getString("direction"));
-                    tx.put("status", rs.getString("status"));
-                    tx.put("description", rs.getString("description"));
-                    tx.put("createdAt", rs.getString("created_at"));
-                    txArray.add(tx);
-                }
+        json.put("walletExists", true);
+        json.put("walletId", walletId);
+        json.put("balance", balance);
+        return json;
+    }
+
+    // 2) Referral stats
+    private ObjectNode referralStats(Connection conn, String userId) throws SQLException {
+        ObjectNode json = mapper.createObjectNode();
+        String referralStatsSql = """
+                SELECT COUNT(*) AS referred, COALESCE(SUM(reward_amount),0) AS totalReward
+                FROM referrals WHERE referrer_user_id=? AND reward_status='credited'
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(referralStatsSql)) {
+            ps.setString(1, userId);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                json.put("referralCount", rs.getInt("referred"));
+                json.put("referralEarnings", rs.getDouble("totalReward"));
+            } else {
+                json.put("referralCount", 0);
+                json.put("referralEarnings", 0.0);
             }
-            json.set("transactions", txArray);
-
-            // 5) Refunds
-            ArrayNode refundArray = mapper.createArrayNode();
-            String refundSql = """
-                    SELECT refund_id, txn_id, refunded_amount, refund_method, status, created_at
-                    FROM refunds
-                    WHERE txn_id IN (SELECT txn_id FROM wallet_transactions WHERE wallet_id=?)
-                    """;
-            try (PreparedStatement ps = conn.prepareStatement(refundSql)) {
-                ps.setString(1, walletId);
-                ResultSet rs = ps.executeQuery();
+        }
+        return json;
+    }
 
-                while (rs.next()) {
-                    ObjectNode r = mapper.createObjectNode();
-                    r.put("refundId", rs.getString("refund_id"));
-                    r.put("txnId", rs.getString("txn_id"));
-                    r.put("amount", rs.getDouble("refunded_amount"));
-                    r.put("method", rs.getString("refund_method"));
-                    r.put("status", rs.getString("status"));
-                    r.put("createdAt", rs.getString("created_at"));
-                    refundArray.add(r);
-                }
+    // 3) Wallet transactions
+    private ArrayNode transactions(Connection conn, String userId) throws SQLException {
+        ArrayNode txArray = mapper.createArrayNode();
+        String txSql = """
+                SELECT t.txn_id, t.type, t.amount, t.direction, t.status, t.description, t.created_at
+                FROM wallet_transactions t
+                JOIN wallets w ON w.wallet_id = t.wallet_id
+                WHERE w.user_id=?
+                ORDER BY t.created_at DESC
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(txSql)) {
+            ps.setString(1, userId);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+                ObjectNode tx = mapper.createObjectNode();
+                tx.put("txnId", rs.getString("txn_id"));
+                tx.put("type", rs.getString("type"));
+                tx.put("amount", rs.getDouble("amount"));
+                tx.put("direction", rs.getString("direction"));
+                tx.put("status", rs.getString("status"));
+                tx.put("description", rs.getString("description"));
+                tx.put("createdAt", rs.getString("created_at"));
+                txArray.add(tx);
             }
-            json.set("refunds", refundArray);
-
-            // 6) Coupons + usage + rules
-            ArrayNode couponArray = mapper.createArrayNode();
-            String couponSql = """
-                SELECT c.*, COALESCE(u.usage_count,0) AS used
-                FROM coupons c
-                LEFT JOIN coupon_usage u ON c.coupon_id = u.coupon_id AND u.user_id=?
-                WHERE c.status='active'
-                  AND c.valid_from <= NOW()
-                  AND c.valid_to >= NOW()
+        }
+        return txArray;
+    }
+
+    // 4) Refunds
+    private ArrayNode refunds(Connection conn, String userId) throws SQLException {
+        ArrayNode refundArray = mapper.createArrayNode();
+        String refundSql = """
+                SELECT refund_id, txn_id, refunded_amount, refund_method, status, created_at
+                FROM refunds
+                WHERE txn_id IN (SELECT t.txn_id FROM wallet_transactions t
+                                 JOIN wallets w ON w.wallet_id = t.wallet_id WHERE w.user_id=?)
                 """;
+        try (PreparedStatement ps = conn.prepareStatement(refundSql)) {
+            ps.setString(1, userId);
+            ResultSet rs = ps.executeQuery();
 
-            try (PreparedStatement ps = conn.prepareStatement(couponSql)) {
-                ps.setString(1, userId);
-                ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                ObjectNode r = mapper.createObjectNode();
+                r.put("refundId", rs.getString("refund_id"));
+                r.put("txnId", rs.getString("txn_id"));
+                r.put("amount", rs.getDouble("refunded_amount"));
+                r.put("method", rs.getString("refund_method"));
+                r.put("status", rs.getString("status"));
+                r.put("createdAt", rs.getString("created_at"));
+                refundArray.add(r);
+            }
+        }
+        return refundArray;
+    }
+
+    // 5) Coupons + usage + rules
+    private ArrayNode coupons(Connection conn, String userId) throws SQLException {
+        ArrayNode couponArray = mapper.createArrayNode();
+        String couponSql = """
+            SELECT c.*, COALESCE(u.usage_count,0) AS used
+            FROM coupons c
+            LEFT JOIN coupon_usage u ON c.coupon_id = u.coupon_id AND u.user_id=?
+            WHERE c.status='active'
+              AND c.valid_from <= NOW()
+              AND c.valid_to >= NOW()
+            """;
+
+        try (PreparedStatement ps = conn.prepareStatement(couponSql)) {
+            ps.setString(1, userId);
+            ResultSet rs = ps.executeQuery();
 
-                String ruleSql = "SELECT rule_type, rule_value FROM coupon_rules WHERE coupon_id=?";
-                try (PreparedStatement rulePs = conn.prepareStatement(ruleSql)) {
-                    while (rs.next()) {
-                        ObjectNode c = mapper.createObjectNode();
-                        String couponId = rs.getString("coupon_id");
-
-                        c.put("couponId", couponId);
-                        c.put("couponCode", rs.getString("coupon_code"));
-                        c.put("title", rs.getString("title"));
-                        c.put("description", rs.getString("description"));
-                        c.put("termsConditions", rs.getString("terms_conditions"));
-                        c.put("discountType", rs.getString("discount_type"));
-                        c.put("discountValue", rs.getDouble("discount_value"));
-                        c.put("maxDiscount",
-                                rs.getObject("max_discount") == null ? null : rs.getDouble("max_discount"));
-                        c.put("validFrom", rs.getString("valid_from"));
-                        c.put("validTo", rs.getString("valid_to"));
-                        c.put("usageLimitPerUser", rs.getInt("usage_limit_per_user"));
-                        c.put("usageCountByUser", rs.getInt("used"));
-                        c.put("minOrderValue", rs.getDouble("min_order_value"));
-                        c.put("applicablePlatform", rs.getString("applicable_platform"));
-                        c.put("status", rs.getString("status"));
-
-                        ArrayNode rulesArray = mapper.createArrayNode();
-                        rulePs.setString(1, couponId);
-                        try (ResultSet ruleRs = rulePs.executeQuery()) {
-                            while (ruleRs.next()) {
-                                ObjectNode rule = mapper.createObjectNode();
-                                rule.put("ruleType", ruleRs.getString("rule_type"));
-                                rule.put("ruleValue", ruleRs.getString("rule_value"));
-                                rulesArray.add(rule);
-                            }
+            String ruleSql = "SELECT rule_type, rule_value FROM coupon_rules WHERE coupon_id=?";
+            try (PreparedStatement rulePs = conn.prepareStatement(ruleSql)) {
+                while (rs.next()) {
+                    ObjectNode c = mapper.createObjectNode();
+                    String couponId = rs.getString("coupon_id");
+
+                    c.put("couponId", couponId);
+                    c.put("couponCode", rs.getString("coupon_code"));
+                    c.put("title", rs.getString("title"));
+                    c.put("description", rs.getString("description"));
+                    c.put("termsConditions", rs.getString("terms_conditions"));
+                    c.put("discountType", rs.getString("discount_type"));
+                    c.put("discountValue", rs.getDouble("discount_value"));
+                    c.put("maxDiscount",
+                            rs.getObject("max_discount") == null ? null : rs.getDouble("max_discount"));
+                    c.put("validFrom", rs.getString("valid_from"));
+                    c.put("validTo", rs.getString("valid_to"));
+                    c.put("usageLimitPerUser", rs.getInt("usage_limit_per_user"));
+                    c.put("usageCountByUser", rs.getInt("used"));
+                    c.put("minOrderValue", rs.getDouble("min_order_value"));
+                    c.put("applicablePlatform", rs.getString("applicable_platform"));
+                    c.put("status", rs.getString("status"));
+
+                    ArrayNode rulesArray = mapper.createArrayNode();
+                    rulePs.setString(1, couponId);
+                    try (ResultSet ruleRs = rulePs.executeQuery()) {
+                        while (ruleRs.next()) {
+                            ObjectNode rule = mapper.createObjectNode();
+                            rule.put("ruleType", ruleRs.getString("rule_type"));
+                            rule.put("ruleValue", ruleRs.getString("rule_value"));
+                            rulesArray.add(rule);
                         }
-                        c.set("rules", rulesArray);
-                        couponArray.add(c);
                     }
+                    c.set("rules", rulesArray);
+                    couponArray.add(c);
                 }
             }
-            json.set("coupons", couponArray);
-
-            conn.commit();
         }
-
-        return json;
+        return couponArray;
     }
 
 }
@@ -0,0 +1,248 @@
+package com.hotel.booking;
+
+import com.hotel.utilities.Outbox;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.json.JSONObject;
+
+/**
+ * The one place Booking_Status changes after a booking is created.
+ *
+ * Each {@link Event} names its target status and the statuses it may start
+ * from, and is applied as a single conditional
+ * {@code UPDATE ... WHERE Booking_ID = ? AND Booking_Status IN (...)}: the
+ * row count is the outcome, so there is no read-then-write race between a
+ * guest cancelling and a partner confirming. A NULL status counts as PENDING.
+ *
+ * Transitions run inside the caller's transaction; once it commits the
+ * caller hands the result to {@link #publish}, which tells the listeners on
+ * this server. Every applied transition (and every new booking, via
+ * {@link #recordCreated}) is also written to the {@link Outbox} in that same
+ * transaction, with the booking as it was before the change, for the
+ * read models kept on any server.
+ */
+public final class BookingStateMachine {
+
+    public enum Status { PENDING, CONFIRMED, CANCELLED, COMPLETED, FAILED }
+
+    public enum Event {
+        PAYMENT_SUCCEEDED(Status.CONFIRMED, Status.PENDING, Status.FAILED, Status.CONFIRMED),
+        PAYMENT_DECLINED(Status.PENDING, Status.PENDING),
+        PAYMENT_FAILED(Status.FAILED, Status.PENDING),
+        HOLD_EXPIRED(Status.FAILED, Status.PENDING),
+        ROOMS_LOST(Status.FAILED, Status.CONFIRMED),
+        PARTNER_CONFIRMED(Status.CONFIRMED, Status.PENDING),
+        CANCELLED(Status.CANCELLED, Status.PENDING, Status.CONFIRMED),
+        COMPLETED(Status.COMPLETED, "Check_Out_Date <= CURRENT_DATE", Status.CONFIRMED),
+        RESCHEDULED(Status.PENDING, Status.PENDING, Status.CONFIRMED);
+
+        final Status to;
+        final Set<Status> from;
+        final String guard;
+
+        Event(Status to, Status... from) {
+            this(to, null, from);
+        }
+
+        Event(Status to, String guard, Status... from) {
+            this.to = to;
+            this.from = EnumSet.of(from[0], from);
+            this.guard = guard;
+        }
+
+        public Status to() {
+            return to;
+        }
+
+        /** SQL for "the row may take this event". */
+        String condition() {
+            String sources = from.stream().map(s -> "'" + s.name() + "'").collect(Collectors.joining(", "));
+            String sql = "UPPER(COALESCE(Booking_Status, 'PENDING')) IN (" + sources + ")";
+            return guard == null ? sql : sql + " AND " + guard;
+        }
+    }
+
+    /** The result of one attempted transition. */
+    public record Transition(String bookingId, Event event, String actor, boolean applied, long at) {
+        public Status to() {
+            return event.to;
+        }
+    }
+
+    public interface Listener {
+        void onTransition(Transition transition);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Applies a transition with no other column changes. */
+    public Transition apply(Connection conn, String bookingId, Event event, String actor) throws SQLException {
+        return apply(conn, bookingId, event, actor, Map.of());
+    }
+
+    /**
+     * Applies a transition, setting the given columns in the same statement.
+     * Column names come from callers, never from requests. Not applied if the
+     * booking does not exist or is not in one of the event's source statuses.
+     *
+     * The row is read FOR UPDATE first, so the outbox event carries exactly
+     * the values the conditional UPDATE then replaces; the UPDATE's row count
+     * still decides whether the transition applied.
+     */
+    public Transition apply(Connection conn, String bookingId, Event event, String actor,
+                            Map<String, ?> alsoSet) throws SQLException {
+        JSONObject before = snapshot(conn, List.of(bookingId), true).get(bookingId);
+        if (before == null) return new Transition(bookingId, event, actor, false, System.currentTimeMillis());
+
+        StringBuilder sql = new StringBuilder("UPDATE bookings_info SET Booking_Status = ?");
+        for (String column : alsoSet.keySet()) sql.append(", ").append(column).append(" = ?");
+        sql.append(" WHERE Booking_ID = ? AND ").append(event.condition());
+
+        boolean applied;
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            ps.setString(i++, event.to.name());
+            for (Object value : alsoSet.values()) ps.setObject(i++, value);
+            ps.setString(i, bookingId);
+            applied = ps.executeUpdate() > 0;
+        }
+        if (applied) record(conn, event.name(), before, event.to, actor, alsoSet);
+        return new Transition(bookingId, event, actor, applied, System.currentTimeMillis());
+    }
+
+    /**
+     * Applies one event to many bookings in a single statement. The caller
+     * must hold the rows' locks (SELECT ... FOR UPDATE with the event's source
+     * statuses), so every one of them transitions; if not, this throws and
+     * the caller rolls back.
+     */
+    public List<Transition> applyAll(Connection conn, List<String> bookingIds, Event event, String actor)
+            throws SQLException {
+        if (bookingIds.isEmpty()) return List.of();
+        Map<String, JSONObject> before = snapshot(conn, bookingIds, false);
+
+        String sql = "UPDATE bookings_info SET Booking_Status = ? WHERE Booking_ID IN ("
+                + String.join(", ", Collections.nCopies(bookingIds.size(), "?"))
+                + ") AND " + event.condition();
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setString(i++, event.to.name());
+            for (String id : bookingIds) ps.setString(i++, id);
+            int updated = ps.executeUpdate();
+            if (updated != bookingIds.size()) {
+                throw new SQLException(event + " applied to " + updated + " of " + bookingIds.size() + " locked bookings");
+            }
+        }
+        for (String id : bookingIds) record(conn, event.name(), before.get(id), event.to, actor, Map.of());
+        long now = System.currentTimeMillis();
+        return bookingIds.stream().map(id -> new Transition(id, event, actor, true, now)).toList();
+    }
+
+    /** Records the outbox event for a booking inserted in the caller's transaction. */
+    public void recordCreated(Connection conn, String bookingId, String actor) throws SQLException {
+        JSONObject booking = snapshot(conn, List.of(bookingId), false).get(bookingId);
+        if (booking == null) throw new SQLException("Booking " + bookingId + " not found");
+        record(conn, "CREATED", booking, status(booking.optString("status")), actor, Map.of());
+    }
+
+    /** Tells the listeners about a committed transition; ignores ones that were not applied. */
+    public void publish(Transition transition) {
+        if (transition == null || !transition.applied()) return;
+        for (Listener l : listeners) {
+            try {
+                l.onTransition(transition);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // ===== Outbox =====
+
+    private static final String SNAPSHOT_COLUMNS = """
+            Booking_ID, Partner_ID, Hotel_ID, User_ID, Hotel_Type, Booking_Status, Payment_Status,
+            Check_In_Date, Check_Out_Date, Total_Rooms_Booked, Total_Days_at_Stay, Original_Amount
+            """;
+
+    /** The bookings' current rows as outbox payload fields, by id; locked if asked. */
+    private static Map<String, JSONObject> snapshot(Connection conn, List<String> bookingIds, boolean lock)
+            throws SQLException {
+        String sql = "SELECT " + SNAPSHOT_COLUMNS + " FROM bookings_info WHERE Booking_ID IN ("
+                + String.join(", ", Collections.nCopies(bookingIds.size(), "?")) + ")"
+                + (lock ? " FOR UPDATE" : "");
+        Map<String, JSONObject> rows = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < bookingIds.size(); i++) ps.setString(i + 1, bookingIds.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    JSONObject b = row(rs);
+                    rows.put(b.getString("booking_id"), b);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static JSONObject row(ResultSet rs) throws SQLException {
+        JSONObject b = new JSONObject();
+        b.put("booking_id", rs.getString("Booking_ID"));
+        b.put("partner_id", rs.getString("Partner_ID"));
+        b.put("hotel_id", rs.getString("Hotel_ID"));
+        b.put("user_id", rs.getString("User_ID"));
+        b.put("hotel_type", rs.getString("Hotel_Type"));
+        b.put("status", status(rs.getString("Booking_Status")).name());
+        b.put("payment_status", rs.getString("Payment_Status"));
+        b.put("check_in", date(rs, "Check_In_Date"));
+        b.put("check_out", date(rs, "Check_Out_Date"));
+        b.put("rooms", rs.getInt("Total_Rooms_Booked"));
+        b.put("nights", rs.getInt("Total_Days_at_Stay"));
+        b.put("amount", rs.getDouble("Original_Amount"));
+        return b;
+    }
+
+    /**
+     * Payload: the booking before the change, plus "from"/"to" statuses, the
+     * actor and any other columns the transition set.
+     */
+    private static void record(Connection conn, String type, JSONObject before, Status to, String actor,
+                               Map<String, ?> alsoSet) throws SQLException {
+        JSONObject payload = new JSONObject();
+        payload.put("booking", before);
+        payload.put("from", before.getString("status"));
+        payload.put("to", to.name());
+        payload.put("actor", actor);
+        JSONObject changes = new JSONObject();
+        alsoSet.forEach((column, value) -> changes.put(column, value == null ? JSONObject.NULL : value.toString()));
+        payload.put("changes", changes);
+        Outbox.append(conn, Outbox.BOOKING, before.getString("booking_id"), type, payload);
+    }
+
+    private static Object date(ResultSet rs, String column) throws SQLException {
+        java.sql.Date d = rs.getDate(column);
+        return d == null ? JSONObject.NULL : d.toString();
+    }
+
+    private static Status status(String value) {
+        if (value == null || value.isBlank()) return Status.PENDING;
+        try {
+            return Status.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Status.PENDING;
+        }
+    }
+}
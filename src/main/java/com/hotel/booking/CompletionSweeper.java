@@ -0,0 +1,131 @@
+package com.hotel.booking;
+
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.JobLease;
+import com.hotel.utilities.SchemaUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves CONFIRMED bookings to COMPLETED once their check-out date has
+ * passed, so partners' revenue is recognised without clicking through each
+ * booking.
+ *
+ * Runs on one server at a time (a {@link JobLease}) every few minutes, in
+ * batches of up to BATCH_SIZE rows. Each batch is an index range scan on
+ * (Booking_Status, Check_Out_Date), locks the rows it picked, completes them
+ * with one {@link BookingStateMachine#applyAll} and commits. The partner
+ * ledger picks the completions up from their outbox events.
+ */
+public final class CompletionSweeper {
+
+    private static final String JOB_NAME = "booking-completion";
+    private static final long INTERVAL_MINUTES = 5;
+    private static final long LEASE_SECONDS = 120;
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_PER_RUN = 200;
+
+    private final DbConfig dbConfig;
+    private final BookingStateMachine bookingStates;
+    private final JobLease lease;
+    private final ScheduledExecutorService scheduler;
+
+    public CompletionSweeper(DbConfig dbConfig, BookingStateMachine bookingStates) {
+        this.dbConfig = dbConfig;
+        this.bookingStates = bookingStates;
+        this.lease = new JobLease(dbConfig.getCustomerDataSource(), JOB_NAME, LEASE_SECONDS);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "completion-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    public void start() throws SQLException {
+        JobLease.ensureSchema(dbConfig.getCustomerDataSource());
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            SchemaUtil.ensureIndex(conn, "bookings_info", "idx_bookings_status_checkout",
+                    "Booking_Status", "Check_Out_Date");
+        }
+        scheduler.scheduleWithFixedDelay(this::runQuietly, 1, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // ===== Sweep =====
+
+    private void runQuietly() {
+        try {
+            int completed = run();
+            if (completed > 0) System.out.println("CompletionSweeper: completed " + completed + " bookings");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** One sweep; returns the number of bookings completed. */
+    int run() throws SQLException {
+        int total = 0;
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+                // Renewed per batch, so a stalled sweep loses the job within LEASE_SECONDS
+                if (!lease.tryAcquire()) break;
+                int done = sweepBatch();
+                total += done;
+                if (done < BATCH_SIZE) break;
+            }
+        } finally {
+            lease.release();
+        }
+        return total;
+    }
+
+    private int sweepBatch() throws SQLException {
+        // Day after check-out: a same-day check-out may still be in progress
+        String pick = """
+                SELECT Booking_ID
+                FROM bookings_info
+                WHERE Booking_Status = 'CONFIRMED' AND Check_Out_Date < CURRENT_DATE
+                ORDER BY Check_Out_Date, Booking_ID
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+                """;
+
+        List<String> ids = new ArrayList<>();
+        List<BookingStateMachine.Transition> completed;
+
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement(pick)) {
+                    ps.setInt(1, BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getString("Booking_ID"));
+                        }
+                    }
+                }
+                completed = bookingStates.applyAll(conn, ids, BookingStateMachine.Event.COMPLETED, "system");
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        for (BookingStateMachine.Transition t : completed) bookingStates.publish(t);
+        return ids.size();
+    }
+}
@@ -0,0 +1,224 @@
+package com.hotel.booking;
+
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.TimingWheel;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Time-limited holds on the rooms of online bookings awaiting payment.
+ *
+ * A booking made for online payment claims its rooms as usual (see
+ * {@link ReservationEngine}) and gets a row in reservation_holds with an
+ * expiry. The hold then ends one of three ways:
+ * <ul>
+ *   <li>payment recorded as Paid: {@link #confirm} converts it and the rooms stay sold;</li>
+ *   <li>payment failed: {@link #release} gives the rooms back and the booking is FAILED;</li>
+ *   <li>nothing before the expiry: the timing wheel fires and does the same as a failure.</li>
+ * </ul>
+ * Every transition locks the hold row first and acts only on a HELD hold,
+ * so a hold touched by two nodes (or a payment racing its expiry) ends once.
+ * Pending expiries live in a {@link TimingWheel}, reloaded from the table at
+ * start-up so holds outlive a restart.
+ */
+public final class HoldManager {
+
+    public static final long HOLD_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SLOTS = 64;
+    private static final int WHEEL_LEVELS = 3; // 64s, ~68m, ~3d
+
+    private static final String HELD = "HELD";
+    private static final String CONVERTED = "CONVERTED";
+    private static final String RELEASED = "RELEASED";
+
+    private final DbConfig dbConfig;
+    private final ReservationEngine reservations;
+    private final BookingStateMachine bookingStates;
+    private final TimingWheel<String> wheel;
+    private final ScheduledExecutorService scheduler;
+
+    public HoldManager(DbConfig dbConfig, ReservationEngine reservations, BookingStateMachine bookingStates) {
+        this.dbConfig = dbConfig;
+        this.reservations = reservations;
+        this.bookingStates = bookingStates;
+        this.wheel = new TimingWheel<>(TICK_MILLIS, WHEEL_SLOTS, WHEEL_LEVELS, System.currentTimeMillis());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hold-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    /** Creates the table if needed, loads open holds and starts expiring them. */
+    public void start() throws SQLException {
+        ensureSchema();
+        String sql = "SELECT booking_id, expires_at FROM reservation_holds WHERE status = ?";
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, HELD);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    track(rs.getString("booking_id"), rs.getTimestamp("expires_at").getTime());
+                }
+            }
+        }
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void ensureSchema() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS reservation_holds (
+                  booking_id  VARCHAR(64) NOT NULL PRIMARY KEY,
+                  hotel_id    VARCHAR(64) NOT NULL,
+                  status      VARCHAR(16) NOT NULL,
+                  expires_at  TIMESTAMP   NOT NULL,
+                  created_at  TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                  updated_at  TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                  KEY idx_reservation_holds_status_expiry (status, expires_at)
+                )
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+        }
+    }
+
+    // ===== Transitions (inside the caller's transaction) =====
+
+    /**
+     * Records a hold for a booking whose rooms were just claimed. Returns the
+     * expiry; pass it to {@link #track} once the transaction has committed.
+     */
+    public long place(Connection conn, String bookingId, String hotelId) throws SQLException {
+        long expiresAt = System.currentTimeMillis() + HOLD_TTL_MILLIS;
+        String sql = "INSERT INTO reservation_holds (booking_id, hotel_id, status, expires_at) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, bookingId);
+            ps.setString(2, hotelId);
+            ps.setString(3, HELD);
+            ps.setTimestamp(4, new Timestamp(expiresAt));
+            ps.executeUpdate();
+        }
+        return expiresAt;
+    }
+
+    /**
+     * Payment succeeded: keeps the rooms. If the hold had already been
+     * released (payment arrived after expiry) the rooms are claimed again;
+     * returns false if they are no longer available. Bookings without a hold
+     * (offline, PG, made before holds existed) always succeed.
+     */
+    public boolean confirm(Connection conn, String bookingId) throws SQLException {
+        String status = lockHold(conn, bookingId);
+        if (status == null || status.equals(CONVERTED)) return true;
+        if (status.equals(RELEASED) && !reservations.claimBooking(conn, bookingId)) return false;
+        setStatus(conn, bookingId, CONVERTED);
+        return true;
+    }
+
+    /**
+     * Payment failed: gives an open hold's rooms back. Returns true if the
+     * booking had a hold that is now released (the caller marks it FAILED),
+     * false if it never had one or was already confirmed.
+     */
+    public boolean release(Connection conn, String bookingId) throws SQLException {
+        String status = lockHold(conn, bookingId);
+        if (status == null || status.equals(CONVERTED)) return false;
+        if (status.equals(HELD)) {
+            reservations.releaseBooking(conn, bookingId);
+            setStatus(conn, bookingId, RELEASED);
+        }
+        return true;
+    }
+
+    // ===== Expiry tracking =====
+
+    /** Starts the expiry clock for a committed hold. */
+    public void track(String bookingId, long expiresAt) {
+        if (!wheel.schedule(bookingId, expiresAt)) {
+            scheduler.execute(() -> expire(bookingId));
+        }
+    }
+
+    /** Stops the expiry clock once a hold has been confirmed or released. */
+    public void untrack(String bookingId) {
+        wheel.cancel(bookingId);
+    }
+
+    private void tick() {
+        List<String> due = wheel.advance(System.currentTimeMillis());
+        for (String bookingId : due) expire(bookingId);
+    }
+
+    private void expire(String bookingId) {
+        Lock hotelLock = null;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            String hotelId = reservations.hotelOf(bookingId);
+            if (hotelId != null) {
+                hotelLock = reservations.lockFor(hotelId);
+                hotelLock.lock();
+            }
+            conn.setAutoCommit(false);
+            try {
+                BookingStateMachine.Transition expired = null;
+                if (HELD.equals(lockHold(conn, bookingId))) {
+                    reservations.releaseBooking(conn, bookingId);
+                    setStatus(conn, bookingId, RELEASED);
+                    // Only a still-pending booking fails; one cancelled meanwhile stays cancelled
+                    expired = bookingStates.apply(conn, bookingId, BookingStateMachine.Event.HOLD_EXPIRED, "system");
+                }
+                conn.commit();
+                bookingStates.publish(expired);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            // Retry on a later tick rather than leave the rooms held forever
+            e.printStackTrace();
+            wheel.schedule(bookingId, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        } finally {
+            if (hotelLock != null) hotelLock.unlock();
+        }
+    }
+
+    // ===== Internals =====
+
+    /** The hold's status with its row locked for the transaction, or null if there is none. */
+    private static String lockHold(Connection conn, String bookingId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT status FROM reservation_holds WHERE booking_id = ? FOR UPDATE")) {
+            ps.setString(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString("status") : null;
+            }
+        }
+    }
+
+    private static void setStatus(Connection conn, String bookingId, String status) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE reservation_holds SET status = ? WHERE booking_id = ?")) {
+            ps.setString(1, status);
+            ps.setString(2, bookingId);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.hotel.booking;
+
+import com.hotel.search.Listing;
+import com.hotel.search.RoomAvailability;
+import com.hotel.utilities.DbConfig;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rooms booked per hotel per night over a rolling horizon, built from
+ * bookings_info and kept current as bookings are made, cancelled or moved.
+ *
+ * Each hotel has a max segment tree over its nightly booked counts, so
+ * "N rooms free every night of this stay" is one range-max query against
+ * the listing's Total_Rooms. The calendar is rebuilt on an interval (and
+ * whenever the date rolls over) to pick up changes made on other nodes.
+ */
+public final class InventoryCalendar implements RoomAvailability {
+
+    public static final int HORIZON_DAYS = 366;
+    private static final long REFRESH_INTERVAL_MINUTES = 10;
+
+    /** One booking's hold on a hotel's rooms: nights [checkIn, checkOut). */
+    record Stay(String hotelId, LocalDate checkIn, LocalDate checkOut, int rooms) {
+    }
+
+    /** Everything built from one load; replaced wholesale by a rebuild. */
+    private static final class State {
+        final LocalDate firstDay;
+        final Map<String, DayTree> hotels = new ConcurrentHashMap<>(); // read without the lock
+        final Map<String, Stay> bookings = new HashMap<>();
+
+        State(LocalDate firstDay) {
+            this.firstDay = firstDay;
+        }
+    }
+
+    private final DbConfig dbConfig;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean rolloverQueued = new AtomicBoolean(false);
+
+    private volatile State state = new State(LocalDate.now());
+
+    public InventoryCalendar(DbConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    /** Loads the calendar synchronously, then keeps it fresh. */
+    public void start() throws SQLException {
+        rebuild();
+        scheduler.scheduleWithFixedDelay(this::rebuildQuietly,
+                REFRESH_INTERVAL_MINUTES, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // ===== Queries =====
+
+    @Override
+    public boolean hasRooms(Listing listing, LocalDate checkIn, LocalDate checkOut, int rooms) {
+        // PGs are let by the month; only the static count applies
+        if (listing.kind() != Listing.Kind.HOTEL || listing.totalRooms() <= 0) {
+            return listing.availableRooms() >= rooms;
+        }
+        return freeRooms(listing.id(), listing.totalRooms(), checkIn, checkOut) >= rooms;
+    }
+
+    /**
+     * Fewest rooms free on any night of [checkIn, checkOut) for a hotel with
+     * totalRooms rooms.
+     *
+     * @throws IllegalArgumentException if the stay ends past the horizon
+     */
+    public int freeRooms(String hotelId, int totalRooms, LocalDate checkIn, LocalDate checkOut) {
+        State s = currentState();
+        int from = (int) Math.max(0, ChronoUnit.DAYS.between(s.firstDay, checkIn));
+        long to = ChronoUnit.DAYS.between(s.firstDay, checkOut);
+        if (to > HORIZON_DAYS) {
+            throw new IllegalArgumentException("Stays can be searched up to " + (HORIZON_DAYS - 1) + " days ahead");
+        }
+        if (to <= from) return totalRooms;
+
+        DayTree tree = s.hotels.get(hotelId);
+        return tree == null ? totalRooms : totalRooms - tree.max(from, (int) to);
+    }
+
+    // ===== Updates =====
+
+    /**
+     * Re-reads one booking after it was inserted, cancelled or had its dates
+     * changed, and moves its rooms in the calendar accordingly. Failures are
+     * logged; the next rebuild corrects the calendar.
+     */
+    public void bookingChanged(String bookingId) {
+        if (bookingId == null || bookingId.isBlank()) return;
+        String sql = """
+                SELECT Hotel_ID, Check_In_Date, Check_Out_Date, Total_Rooms_Booked, Booking_Status
+                FROM bookings_info WHERE Booking_ID = ?
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                apply(bookingId, rs.next() ? toStay(rs) : null);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Replaces a booking's previous stay (if any) with its current one (null = holds nothing). */
+    private synchronized void apply(String bookingId, Stay stay) {
+        State s = state;
+        Stay previous = stay == null ? s.bookings.remove(bookingId) : s.bookings.put(bookingId, stay);
+        if (previous != null) add(s, previous, -previous.rooms());
+        if (stay != null) add(s, stay, stay.rooms());
+    }
+
+    // ===== Loading =====
+
+    private State currentState() {
+        State s = state;
+        if (!s.firstDay.equals(LocalDate.now()) && rolloverQueued.compareAndSet(false, true)) {
+            // Day rolled over: rebuild in the background, answer from the old window meanwhile
+            scheduler.execute(this::rebuildQuietly);
+        }
+        return s;
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Runs under the same lock as apply(), so no update is lost to a concurrent rebuild
+    private synchronized void rebuild() throws SQLException {
+        LocalDate today = LocalDate.now();
+        String sql = """
+                SELECT Booking_ID, Hotel_ID, Check_In_Date, Check_Out_Date, Total_Rooms_Booked, Booking_Status
+                FROM bookings_info
+                WHERE Check_Out_Date > ?
+                  AND UPPER(COALESCE(Booking_Status, '')) NOT IN ('CANCELLED', 'COMPLETED', 'FAILED')
+                """;
+
+        State next = new State(today);
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setDate(1, Date.valueOf(today));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Stay stay = toStay(rs);
+                    if (stay == null) continue;
+                    next.bookings.put(rs.getString("Booking_ID"), stay);
+                    add(next, stay, stay.rooms());
+                }
+            }
+        }
+        state = next;
+        rolloverQueued.set(false);
+    }
+
+    /** The rooms a booking row holds, or null if it holds none (cancelled, finished, no dates). */
+    private static Stay toStay(ResultSet rs) throws SQLException {
+        String status = rs.getString("Booking_Status");
+        status = status == null ? "" : status.trim().toUpperCase();
+        if (status.equals("CANCELLED") || status.equals("COMPLETED") || status.equals("FAILED")) return null;
+
+        String hotelId = rs.getString("Hotel_ID");
+        Date in = rs.getDate("Check_In_Date");
+        Date out = rs.getDate("Check_Out_Date");
+        int rooms = rs.getInt("Total_Rooms_Booked");
+        if (hotelId == null || in == null || out == null || rooms <= 0) return null;
+
+        LocalDate checkIn = in.toLocalDate();
+        LocalDate checkOut = out.toLocalDate();
+        if (!checkOut.isAfter(checkIn)) return null;
+        return new Stay(hotelId.trim(), checkIn, checkOut, rooms);
+    }
+
+    private static void add(State s, Stay stay, int delta) {
+        int from = (int) Math.max(0, ChronoUnit.DAYS.between(s.firstDay, stay.checkIn()));
+        int to = (int) Math.min(HORIZON_DAYS, ChronoUnit.DAYS.between(s.firstDay, stay.checkOut()));
+        if (to <= from) return;
+        s.hotels.computeIfAbsent(stay.hotelId(), k -> new DayTree(HORIZON_DAYS)).add(from, to, delta);
+    }
+
+    /**
+     * Max segment tree over nightly booked counts. Updates are per night
+     * (stays are short); queries are O(log horizon).
+     */
+    static final class DayTree {
+        private final int size;
+        private final int[] tree;
+
+        DayTree(int days) {
+            int n = 1;
+            while (n < days) n <<= 1;
+            this.size = n;
+            this.tree = new int[2 * n];
+        }
+
+        synchronized void add(int from, int to, int delta) {
+            for (int day = from; day < to; day++) {
+                int i = day + size;
+                tree[i] += delta;
+                for (i >>= 1; i > 0; i >>= 1) {
+                    tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+                }
+            }
+        }
+
+        /** Max over nights [from, to). */
+        synchronized int max(int from, int to) {
+            int best = 0;
+            for (int l = from + size, r = to + size; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) best = Math.max(best, tree[l++]);
+                if ((r & 1) == 1) best = Math.max(best, tree[--r]);
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.hotel.booking;
+
+import com.hotel.search.CatalogSnapshot;
+import com.hotel.search.CatalogStore;
+import com.hotel.search.Listing;
+import com.hotel.utilities.DbConfig;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Claims and releases hotel rooms per night so a room can't be sold twice.
+ *
+ * The source of truth is room_inventory (customer DB, next to bookings_info,
+ * so a claim commits or rolls back together with the booking row): one row
+ * per hotel, room type and night holding the rooms still free. A claim is a
+ * conditional {@code UPDATE ... WHERE remaining_rooms >= ?} per night, which
+ * stays correct across nodes. Within a node, callers first take the hotel's
+ * lock stripe ({@link #lockFor}) so contention on a busy hotel queues here
+ * instead of in database row-lock waits, while other hotels proceed.
+ *
+ * Rows are created on first use from the catalog's Total_Rooms minus what
+ * {@link InventoryCalendar} already counts as booked that night. The catalog
+ * only knows a hotel-wide room count, so every claim goes to the hotel's
+ * {@link #ALL_TYPES} row; room_type is in the key so per-type counts can be
+ * added without a migration. When a partner changes Total_Rooms, the rows
+ * from today on move by the difference ({@link #resize}).
+ */
+public final class ReservationEngine {
+
+    private static final int STRIPES = 256;
+    static final String ALL_TYPES = "*";
+
+    private final DbConfig dbConfig;
+    private final CatalogStore catalog;
+    private final InventoryCalendar calendar;
+    private final Lock[] stripes = new Lock[STRIPES];
+
+    public ReservationEngine(DbConfig dbConfig, CatalogStore catalog, InventoryCalendar calendar) {
+        this.dbConfig = dbConfig;
+        this.catalog = catalog;
+        this.calendar = calendar;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+    }
+
+    /** Creates room_inventory if it does not exist yet. */
+    public void ensureSchema() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS room_inventory (
+                  hotel_id        VARCHAR(64) NOT NULL,
+                  room_type       VARCHAR(64) NOT NULL,
+                  stay_date       DATE        NOT NULL,
+                  total_rooms     INT         NOT NULL,
+                  remaining_rooms INT         NOT NULL,
+                  updated_at      TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                  PRIMARY KEY (hotel_id, room_type, stay_date)
+                )
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+        }
+    }
+
+    /**
+     * The in-process lock for a hotel. Hold it from the first claim/release
+     * until the transaction commits or rolls back.
+     */
+    public Lock lockFor(String hotelId) {
+        return stripes[(hotelId == null ? 0 : hotelId.hashCode()) & (STRIPES - 1)];
+    }
+
+    /** {@link #roomCount} of a listing that takes no claims: a PG, or a hotel without Total_Rooms. */
+    public static final int UNTRACKED = 0;
+    /** {@link #roomCount} of an id that is no active listing. */
+    public static final int NOT_LISTED = -1;
+    /** Longest stay a claim covers: the nights {@link InventoryCalendar} tracks. */
+    public static final int MAX_NIGHTS = InventoryCalendar.HORIZON_DAYS - 1;
+
+    /**
+     * The room count to pass to {@link #claim}: Total_Rooms, UNTRACKED or
+     * NOT_LISTED. A listing newer than the catalog snapshot is read from the
+     * partner database, so call this before taking the hotel's lock or
+     * opening the booking's transaction.
+     */
+    public int roomCount(String hotelId) throws SQLException {
+        if (hotelId == null || hotelId.isBlank()) return NOT_LISTED;
+        Listing hotel = catalog.lookup(Listing.Kind.HOTEL, List.of(hotelId)).get(hotelId);
+        if (hotel != null) return Math.max(hotel.totalRooms(), UNTRACKED);
+        return catalog.lookup(Listing.Kind.PG, List.of(hotelId)).containsKey(hotelId) ? UNTRACKED : NOT_LISTED;
+    }
+
+    /** Why a stay cannot be claimed, or null if it can. */
+    public static String invalidStay(LocalDate checkIn, LocalDate checkOut, int rooms) {
+        if (checkIn == null || checkOut == null) return "Check_In_Date and Check_Out_Date are required";
+        if (!checkOut.isAfter(checkIn)) return "Check_Out_Date must be after Check_In_Date";
+        if (ChronoUnit.DAYS.between(checkIn, checkOut) > MAX_NIGHTS) return "Stays are limited to " + MAX_NIGHTS + " nights";
+        if (rooms <= 0) return "Total_Rooms_Booked must be at least 1";
+        return null;
+    }
+
+    /**
+     * Takes rooms for every night of [checkIn, checkOut) inside the caller's
+     * transaction. Returns false, having claimed nothing that will survive a
+     * rollback, if any night is short; the caller must then roll back.
+     * totalRooms comes from {@link #roomCount}: an UNTRACKED listing always
+     * succeeds, a NOT_LISTED one always fails. Callers validate the stay
+     * with {@link #invalidStay} first; an invalid one throws.
+     */
+    public boolean claim(Connection conn, String hotelId, int totalRooms, LocalDate checkIn, LocalDate checkOut,
+                         int rooms) throws SQLException {
+        if (totalRooms == NOT_LISTED) return false;
+        if (totalRooms == UNTRACKED) return true;
+        String invalid = invalidStay(checkIn, checkOut, rooms);
+        if (invalid != null) throw new IllegalArgumentException(invalid);
+        if (rooms > totalRooms) return false;
+
+        String seed = """
+                INSERT IGNORE INTO room_inventory (hotel_id, room_type, stay_date, total_rooms, remaining_rooms)
+                VALUES (?, ?, ?, ?, ?)
+                """;
+        String take = """
+                UPDATE room_inventory SET remaining_rooms = remaining_rooms - ?
+                WHERE hotel_id = ? AND room_type = ? AND stay_date = ? AND remaining_rooms >= ?
+                """;
+
+        // Nights in ascending order, so concurrent claims lock rows in the same order
+        try (PreparedStatement seedPs = conn.prepareStatement(seed);
+             PreparedStatement takePs = conn.prepareStatement(take)) {
+            for (LocalDate night = checkIn; night.isBefore(checkOut); night = night.plusDays(1)) {
+                seedPs.setString(1, hotelId);
+                seedPs.setString(2, ALL_TYPES);
+                seedPs.setDate(3, Date.valueOf(night));
+                seedPs.setInt(4, totalRooms);
+                seedPs.setInt(5, seedRemaining(hotelId, totalRooms, night));
+                seedPs.executeUpdate();
+
+                takePs.setInt(1, rooms);
+                takePs.setString(2, hotelId);
+                takePs.setString(3, ALL_TYPES);
+                takePs.setDate(4, Date.valueOf(night));
+                takePs.setInt(5, rooms);
+                if (takePs.executeUpdate() == 0) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves a hotel's inventory from today on to a new Total_Rooms: both
+     * counts change by the difference, so rooms already sold stay sold. If
+     * more are sold than the new total, remaining_rooms goes below zero and
+     * claims fail until enough are released. Takes the hotel's lock.
+     */
+    public void resize(String hotelId, int totalRooms) throws SQLException {
+        if (hotelId == null || totalRooms <= 0) return;
+
+        // remaining_rooms is set first, from the old total_rooms
+        String sql = """
+                UPDATE room_inventory
+                SET remaining_rooms = remaining_rooms + (? - total_rooms), total_rooms = ?
+                WHERE hotel_id = ? AND room_type = ? AND stay_date >= CURRENT_DATE AND total_rooms <> ?
+                """;
+        Lock lock = lockFor(hotelId);
+        lock.lock();
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, totalRooms);
+            ps.setInt(2, totalRooms);
+            ps.setString(3, hotelId);
+            ps.setString(4, ALL_TYPES);
+            ps.setInt(5, totalRooms);
+            ps.executeUpdate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Gives back rooms taken by {@link #claim} for the same stay, inside the caller's transaction. */
+    public void release(Connection conn, String hotelId, LocalDate checkIn, LocalDate checkOut, int rooms) throws SQLException {
+        if (rooms <= 0 || checkIn == null || checkOut == null || !checkOut.isAfter(checkIn)) return;
+
+        String give = """
+                UPDATE room_inventory SET remaining_rooms = LEAST(total_rooms, remaining_rooms + ?)
+                WHERE hotel_id = ? AND room_type = ? AND stay_date = ?
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(give)) {
+            for (LocalDate night = checkIn; night.isBefore(checkOut); night = night.plusDays(1)) {
+                ps.setInt(1, rooms);
+                ps.setString(2, hotelId);
+                ps.setString(3, ALL_TYPES);
+                ps.setDate(4, Date.valueOf(night));
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Releases whatever an existing booking holds, unless it is already
+     * cancelled/completed. Locks the booking row for the rest of the
+     * transaction. Returns the booking's hotel id, or null if there is no such booking.
+     */
+    public String releaseBooking(Connection conn, String bookingId) throws SQLException {
+        String sql = """
+                SELECT Hotel_ID, Check_In_Date, Check_Out_Date, Total_Rooms_Booked, Booking_Status
+                FROM bookings_info WHERE Booking_ID = ? FOR UPDATE
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+
+                String hotelId = rs.getString("Hotel_ID");
+                String status = rs.getString("Booking_Status");
+                status = status == null ? "" : status.trim().toUpperCase();
+                if (!holdsRooms(status)) return hotelId;
+
+                Date in = rs.getDate("Check_In_Date");
+                Date out = rs.getDate("Check_Out_Date");
+                release(conn, hotelId, in == null ? null : in.toLocalDate(), out == null ? null : out.toLocalDate(),
+                        rs.getInt("Total_Rooms_Booked"));
+                return hotelId;
+            }
+        }
+    }
+
+    /**
+     * Claims the nights an existing booking row asks for, whatever its status;
+     * used to take rooms back for a booking whose earlier claim was released.
+     * Returns false if the booking does not exist or a night is short.
+     */
+    public boolean claimBooking(Connection conn, String bookingId) throws SQLException {
+        String sql = """
+                SELECT Hotel_ID, Check_In_Date, Check_Out_Date, Total_Rooms_Booked
+                FROM bookings_info WHERE Booking_ID = ? FOR UPDATE
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return false;
+                String hotelId = rs.getString("Hotel_ID");
+                Date in = rs.getDate("Check_In_Date");
+                Date out = rs.getDate("Check_Out_Date");
+                LocalDate checkIn = in == null ? null : in.toLocalDate();
+                LocalDate checkOut = out == null ? null : out.toLocalDate();
+                int rooms = rs.getInt("Total_Rooms_Booked");
+                // A row that never could claim rooms has none to take back
+                if (invalidStay(checkIn, checkOut, rooms) != null) return true;
+                return claim(conn, hotelId, snapshotRoomCount(hotelId), checkIn, checkOut, rooms);
+            }
+        }
+    }
+
+    /**
+     * {@link #roomCount} from the catalog snapshot alone, for callers already
+     * holding the hotel's lock; a hotel the snapshot does not have is NOT_LISTED.
+     */
+    private int snapshotRoomCount(String hotelId) {
+        CatalogSnapshot snapshot = catalog.current();
+        Listing hotel = snapshot.hotels().byId(hotelId);
+        if (hotel != null) return Math.max(hotel.totalRooms(), UNTRACKED);
+        return snapshot.pgs().byId(hotelId) != null ? UNTRACKED : NOT_LISTED;
+    }
+
+    /** Hotel id of a booking (no locking), for picking the lock stripe before a transaction. */
+    public String hotelOf(String bookingId) throws SQLException {
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT Hotel_ID FROM bookings_info WHERE Booking_ID = ?")) {
+            ps.setString(1, bookingId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString("Hotel_ID") : null;
+            }
+        }
+    }
+
+    static boolean holdsRooms(String status) {
+        return !(status.equals("CANCELLED") || status.equals("COMPLETED") || status.equals("FAILED"));
+    }
+
+    private int seedRemaining(String hotelId, int total, LocalDate night) {
+        try {
+            return Math.max(0, calendar.freeRooms(hotelId, total, night, night.plusDays(1)));
+        } catch (IllegalArgumentException e) {
+            return total; // past the calendar horizon: nothing can be booked there yet
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.hotel.search;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Fixed-size bitmaps over listing indexes, one bit per row packed into longs.
+ */
+final class Bits {
+
+    private Bits() {
+    }
+
+    static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /** Bitmap with the first size bits set. */
+    static long[] all(int size) {
+        long[] bits = new long[words(size)];
+        Arrays.fill(bits, -1L);
+        int tail = size & 63;
+        if (tail != 0) bits[bits.length - 1] = (1L << tail) - 1;
+        return bits;
+    }
+
+    static long[] of(int size, int index) {
+        long[] bits = new long[words(size)];
+        if (index >= 0 && index < size) set(bits, index);
+        return bits;
+    }
+
+    static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+
+    static boolean test(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /** target &= other (null other means "no constraint"). */
+    static void and(long[] target, long[] other) {
+        if (other == null) return;
+        for (int w = 0; w < target.length; w++) target[w] &= other[w];
+    }
+
+    static int cardinality(long[] bits) {
+        int n = 0;
+        for (long w : bits) n += Long.bitCount(w);
+        return n;
+    }
+
+    static int andCardinality(long[] a, long[] b) {
+        int n = 0;
+        for (int w = 0; w < a.length; w++) n += Long.bitCount(a[w] & b[w]);
+        return n;
+    }
+
+    /** Visits set bits in ascending order. */
+    static void forEach(long[] bits, IntConsumer action) {
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.hotel.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Struct-of-arrays copy of one catalog section, laid out for filter scans.
+ *
+ * Numeric fields live in primitive arrays and low-cardinality strings are
+ * dictionary encoded, so a predicate is evaluated once per distinct value
+ * and then applied per row by a table lookup.
+ */
+final class CatalogColumns {
+
+    final int size;
+
+    final double[] price;
+    final float[] rating;
+    final int[] availableRooms;
+    final int[] popularity;             // non-cancelled bookings, from bookings_info
+    final byte[] priceBucket;           // SearchFacets bucket, -1 when out of range
+
+    final short[] typeId;
+    final short[] cityId;
+    final short[] stateId;
+    final short[] countryId;
+    final short[] roomTypeId;
+    final short[] customizationId;
+    final int[] partnerId;
+    final int[] amenitySetId;           // whole Amenities string, for exact LIKE semantics
+    final String[] nameKey;             // lower-cased name, for free-text search
+
+    final Dictionary types = new Dictionary(true);
+    final Dictionary cities = new Dictionary(true);
+    final Dictionary states = new Dictionary(true);
+    final Dictionary countries = new Dictionary(true);
+    final Dictionary roomTypes = new Dictionary(true);
+    final Dictionary customizations = new Dictionary(false);
+    final Dictionary partners = new Dictionary(false);
+    final Dictionary amenitySets = new Dictionary(true);
+
+    // One bitmap per distinct amenity token (for facet counts)
+    final List<String> amenityLabels;
+    final List<long[]> amenityBits;
+
+    CatalogColumns(List<Listing> listings, Map<String, Integer> bookingCounts) {
+        int n = listings.size();
+        this.size = n;
+        this.price = new double[n];
+        this.rating = new float[n];
+        this.availableRooms = new int[n];
+        this.popularity = new int[n];
+        this.priceBucket = new byte[n];
+        this.typeId = new short[n];
+        this.cityId = new short[n];
+        this.stateId = new short[n];
+        this.countryId = new short[n];
+        this.roomTypeId = new short[n];
+        this.customizationId = new short[n];
+        this.partnerId = new int[n];
+        this.amenitySetId = new int[n];
+        this.nameKey = new String[n];
+
+        Map<String, Integer> tokenIds = new LinkedHashMap<>();
+        List<String> labels = new ArrayList<>();
+        List<long[]> tokenBits = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            Listing l = listings.get(i);
+            price[i] = l.price();
+            rating[i] = (float) l.rating();
+            availableRooms[i] = l.availableRooms();
+            popularity[i] = bookingCounts.getOrDefault(l.id(), 0);
+            priceBucket[i] = (byte) SearchFacets.priceBucket(l.price());
+
+            typeId[i] = types.shortId(l.type());
+            cityId[i] = cities.shortId(l.city());
+            stateId[i] = states.shortId(l.state());
+            countryId[i] = countries.shortId(l.country());
+            roomTypeId[i] = roomTypes.shortId(l.roomType());
+            customizationId[i] = customizations.shortId(l.customization());
+            partnerId[i] = partners.id(l.partnerId());
+            amenitySetId[i] = amenitySets.id(l.amenities());
+            nameKey[i] = l.name().toLowerCase();
+
+            for (String a : l.amenities().split(",")) {
+                String label = a.trim();
+                if (label.isEmpty()) continue;
+                Integer t = tokenIds.get(label.toLowerCase());
+                if (t == null) {
+                    t = labels.size();
+                    tokenIds.put(label.toLowerCase(), t);
+                    labels.add(label);
+                    tokenBits.add(new long[Bits.words(n)]);
+                }
+                Bits.set(tokenBits.get(t), i);
+            }
+        }
+
+        this.amenityLabels = labels;
+        this.amenityBits = tokenBits;
+    }
+
+    /**
+     * Value dictionary. Ids are assigned in first-seen order; the label of an
+     * id is the first spelling seen (case-folded dictionaries group "Goa" and "goa").
+     */
+    static final class Dictionary {
+
+        private final boolean foldCase;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+
+        Dictionary(boolean foldCase) {
+            this.foldCase = foldCase;
+        }
+
+        int id(String value) {
+            String label = value == null ? "" : value.trim();
+            String key = foldCase ? label.toLowerCase() : label;
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = keys.size();
+                ids.put(key, id);
+                keys.add(key);
+                labels.add(label);
+            }
+            return id;
+        }
+
+        short shortId(String value) {
+            int id = id(value);
+            if (id > 0xFFFF) {
+                throw new IllegalStateException("Too many distinct values for a short dictionary");
+            }
+            return (short) id;
+        }
+
+        /** Id of an exact (or case-folded) value, -1 if absent. */
+        int lookup(String value) {
+            String label = value == null ? "" : value.trim();
+            Integer id = ids.get(foldCase ? label.toLowerCase() : label);
+            return id == null ? -1 : id;
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        /** Normalized key (lower case when folding). */
+        String key(int id) {
+            return keys.get(id);
+        }
+
+        String label(int id) {
+            return labels.get(id);
+        }
+    }
+}
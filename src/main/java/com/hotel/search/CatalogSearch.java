@@ -0,0 +1,195 @@
+package com.hotel.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One page of a catalog search, shared by /filterHotels and /hotels/filter.
+ *
+ * Pages are cut from a fixed order: a presorted permutation, catalog order
+ * (by id), or (for near searches) the in-radius matches by distance. A cursor
+ * pins the snapshot the first page came from, so later pages see the same
+ * listings in the same order even if the catalog has been reloaded since. If
+ * that snapshot has been dropped, the current one is used and the page
+ * resumes just after the last row returned (by id, or when the row is gone
+ * by its sort key, or in catalog order by the next id).
+ */
+public final class CatalogSearch {
+
+    private static final String SORT_CATALOG = "catalog";
+    private static final String SORT_DISTANCE = "distance";
+
+    /**
+     * Rows of one page. Hit distances are NaN unless the search was a near
+     * search. total is the number of matches, or -1 if the page was cut
+     * without counting them (the first page of a near search by distance).
+     */
+    public record Page(CatalogSnapshot snapshot, CatalogSnapshot.Section section,
+                       List<GeoGrid.Hit> hits, Selection selection, int total, String nextCursor) {
+    }
+
+    private CatalogSearch() {
+    }
+
+    /**
+     * @param availability used when the spec has stay dates (may be null)
+     * @param cursorToken  null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed or belongs to another search
+     */
+    public static Page run(CatalogStore store, Listing.Kind kind, FilterSpec spec, RoomAvailability availability,
+                           GeoQuery geo, String sortBy, int pageSize, String cursorToken, boolean withFacets) {
+
+        SortOrder order = SortOrder.fromSortBy(sortBy);
+        String sort = order != null ? order.name() : geo != null ? SORT_DISTANCE : SORT_CATALOG;
+        long searchHash = SearchCursor.hash(String.join("\u0002",
+                kind.name(), spec.canonical(), geo == null ? "" : geo.toString(), sort));
+
+        SearchCursor cursor = null;
+        if (cursorToken != null && !cursorToken.isBlank()) {
+            cursor = SearchCursor.decode(cursorToken);
+            if (cursor.searchHash() != searchHash || !cursor.sort().equals(sort)) {
+                throw new IllegalArgumentException("Cursor does not belong to this search");
+            }
+        }
+
+        CatalogSnapshot snapshot = cursor == null ? null : store.snapshot(cursor.version());
+        boolean seek = cursor != null && snapshot == null;
+        if (snapshot == null) snapshot = store.current();
+
+        CatalogSnapshot.Section section = snapshot.section(kind);
+        CompiledFilter filter = CompiledFilter.compile(spec, section, availability);
+
+        return geo == null
+                ? orderedPage(snapshot, section, filter, order, sort, searchHash, pageSize, cursor, seek, withFacets)
+                : nearPage(snapshot, section, filter, geo, order, sort, searchHash, pageSize, cursor, seek, withFacets);
+    }
+
+    // ===== Catalog / presorted order =====
+
+    private static Page orderedPage(CatalogSnapshot snapshot, CatalogSnapshot.Section section,
+                                    CompiledFilter filter, SortOrder order, String sort, long searchHash,
+                                    int pageSize, SearchCursor cursor, boolean seek, boolean withFacets) {
+
+        Selection selection = filter.select(withFacets);
+        int[] permutation = order == null ? null : section.permutation(order);
+
+        int start = 0;
+        if (cursor != null) {
+            start = seek ? seekOrdered(section, order, cursor) : cursor.position();
+        }
+
+        List<GeoGrid.Hit> hits = new ArrayList<>(Math.min(pageSize, selection.count()));
+        int next = selection.page(permutation, start, pageSize, i -> hits.add(new GeoGrid.Hit(i, Double.NaN)));
+
+        String nextCursor = null;
+        if (next >= 0 && !hits.isEmpty()) {
+            int last = hits.get(hits.size() - 1).index();
+            double key = order == null ? 0 : section.sortKey(order, last); // catalog order seeks by id
+            nextCursor = new SearchCursor(snapshot.version(), sort, next, key, searchHash,
+                    section.get(last).id()).encode();
+        }
+        return new Page(snapshot, section, hits, selection, selection.count(), nextCursor);
+    }
+
+    /** Resume position in a newer snapshot: just after the last row, or after its sort key. */
+    private static int seekOrdered(CatalogSnapshot.Section section, SortOrder order, SearchCursor cursor) {
+        int last = section.indexOf(cursor.lastId());
+        if (order == null) {
+            return last >= 0 ? last + 1 : firstIdAfter(section, cursor.lastId());
+        }
+        if (last >= 0) return section.rank(order)[last] + 1;
+
+        // First position whose key is past the last key returned
+        int[] permutation = section.permutation(order);
+        int lo = 0, hi = permutation.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (section.sortKey(order, permutation[mid]) <= cursor.lastKey()) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** First position in catalog order whose id sorts after the given one. */
+    private static int firstIdAfter(CatalogSnapshot.Section section, String lastId) {
+        int lo = 0, hi = section.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            String id = section.get(mid).id();
+            if (id == null || id.compareTo(lastId) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // ===== Near searches =====
+
+    private static Page nearPage(CatalogSnapshot snapshot, CatalogSnapshot.Section section,
+                                 CompiledFilter filter, GeoQuery geo, SortOrder order, String sort,
+                                 long searchHash, int pageSize, SearchCursor cursor, boolean seek,
+                                 boolean withFacets) {
+
+        Selection selection;
+        List<GeoGrid.Hit> matched;
+        int start = 0;
+        int total;
+
+        if (cursor == null && order == null && !withFacets) {
+            // First page by distance: k-nearest stops expanding once the page is settled
+            selection = filter.select(false);
+            int k = pageSize == Integer.MAX_VALUE ? pageSize : pageSize + 1;
+            matched = geo.nearest(section, k, selection::contains);
+            total = -1; // counting would mean ranking the whole radius, which this path avoids
+        } else {
+            // Facets, later pages and non-distance orders rank every match inside the radius
+            List<GeoGrid.Hit> inRadius = geo.within(section, i -> true);
+            int[] candidates = new int[inRadius.size()];
+            for (int i = 0; i < candidates.length; i++) candidates[i] = inRadius.get(i).index();
+
+            selection = filter.select(candidates, withFacets);
+            matched = new ArrayList<>(selection.count());
+            for (GeoGrid.Hit h : inRadius) {
+                if (selection.contains(h.index())) matched.add(h);
+            }
+            matched.sort(nearOrder(section, order));
+            total = matched.size();
+
+            if (cursor != null) {
+                start = seek ? seekNear(section, order, matched, cursor) : cursor.position();
+            }
+        }
+
+        int end = (int) Math.min((long) start + pageSize, matched.size());
+        List<GeoGrid.Hit> hits = start >= end ? List.of() : new ArrayList<>(matched.subList(start, end));
+
+        String nextCursor = null;
+        if (end < matched.size() && !hits.isEmpty()) {
+            GeoGrid.Hit last = hits.get(hits.size() - 1);
+            nextCursor = new SearchCursor(snapshot.version(), sort, end, nearKey(section, order, last),
+                    searchHash, section.get(last.index()).id()).encode();
+        }
+        return new Page(snapshot, section, hits, selection, total, nextCursor);
+    }
+
+    private static Comparator<GeoGrid.Hit> nearOrder(CatalogSnapshot.Section section, SortOrder order) {
+        if (order == null) return GeoGrid.BY_DISTANCE;
+        int[] rank = section.rank(order);
+        return Comparator.comparingInt(h -> rank[h.index()]);
+    }
+
+    private static double nearKey(CatalogSnapshot.Section section, SortOrder order, GeoGrid.Hit hit) {
+        return order == null ? hit.distanceKm() : section.sortKey(order, hit.index());
+    }
+
+    private static int seekNear(CatalogSnapshot.Section section, SortOrder order,
+                                List<GeoGrid.Hit> matched, SearchCursor cursor) {
+        for (int p = 0; p < matched.size(); p++) {
+            if (section.get(matched.get(p).index()).id().equals(cursor.lastId())) return p + 1;
+        }
+        for (int p = 0; p < matched.size(); p++) {
+            if (nearKey(section, order, matched.get(p)) > cursor.lastKey()) return p;
+        }
+        return matched.size();
+    }
+}
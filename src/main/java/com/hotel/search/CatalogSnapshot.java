@@ -0,0 +1,147 @@
+package com.hotel.search;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable view of the active catalog (hotels and PGs) at one version.
+ * Built off the request path by {@link CatalogStore}; handlers only read it.
+ */
+public final class CatalogSnapshot {
+
+    private final long version;
+    private final Section hotels;
+    private final Section pgs;
+
+    CatalogSnapshot(long version, List<Listing> hotels, List<Listing> pgs, Map<String, Integer> bookingCounts) {
+        this.version = version;
+        this.hotels = new Section(hotels, bookingCounts);
+        this.pgs = new Section(pgs, bookingCounts);
+    }
+
+    static CatalogSnapshot empty() {
+        return new CatalogSnapshot(0L, List.of(), List.of(), Map.of());
+    }
+
+    /** Content fingerprint: equal versions mean identical listings. */
+    public long version() {
+        return version;
+    }
+
+    public Section hotels() {
+        return hotels;
+    }
+
+    public Section pgs() {
+        return pgs;
+    }
+
+    public Section section(Listing.Kind kind) {
+        return kind == Listing.Kind.PG ? pgs : hotels;
+    }
+
+    /** Listings of one kind plus the indexes built over them. */
+    public static final class Section {
+
+        private final List<Listing> listings;
+        private final Map<String, Integer> indexById;
+        private final GeoGrid geo;
+        private final CatalogColumns columns;
+        private final Map<SortOrder, int[]> permutations = new EnumMap<>(SortOrder.class);
+        private final Map<SortOrder, int[]> ranks = new EnumMap<>(SortOrder.class);
+
+        Section(List<Listing> listings, Map<String, Integer> bookingCounts) {
+            this.listings = Collections.unmodifiableList(listings);
+
+            int n = listings.size();
+            this.indexById = new HashMap<>(n * 2);
+            double[] lat = new double[n];
+            double[] lng = new double[n];
+            for (int i = 0; i < n; i++) {
+                Listing l = listings.get(i);
+                indexById.putIfAbsent(l.id(), i);
+                lat[i] = l.lat();
+                lng[i] = l.lng();
+            }
+            this.geo = new GeoGrid(lat, lng);
+            this.columns = new CatalogColumns(listings, bookingCounts);
+
+            for (SortOrder order : SortOrder.values()) {
+                int[] perm = IntStream.range(0, n).boxed()
+                        .sorted(comparator(order).thenComparingInt(i -> i))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+                int[] rank = new int[n];
+                for (int pos = 0; pos < n; pos++) rank[perm[pos]] = pos;
+                permutations.put(order, perm);
+                ranks.put(order, rank);
+            }
+        }
+
+        private Comparator<Integer> comparator(SortOrder order) {
+            return Comparator.comparingDouble(i -> sortKey(order, i));
+        }
+
+        /** Key the permutation for this order ascends by (descending orders are negated). */
+        public double sortKey(SortOrder order, int index) {
+            switch (order) {
+                case PRICE_ASC:
+                    return columns.price[index];
+                case PRICE_DESC:
+                    return -columns.price[index];
+                case RATING_DESC:
+                    return -columns.rating[index];
+                case POPULARITY_DESC:
+                    return -columns.popularity[index];
+                default:
+                    throw new IllegalArgumentException(order.name());
+            }
+        }
+
+        public List<Listing> listings() {
+            return listings;
+        }
+
+        public int size() {
+            return listings.size();
+        }
+
+        public Listing get(int index) {
+            return listings.get(index);
+        }
+
+        public Listing byId(String id) {
+            int i = indexOf(id);
+            return i < 0 ? null : listings.get(i);
+        }
+
+        /** Index of the listing with this id, -1 if absent. */
+        public int indexOf(String id) {
+            Integer i = id == null ? null : indexById.get(id);
+            return i == null ? -1 : i;
+        }
+
+        public GeoGrid geo() {
+            return geo;
+        }
+
+        /** Listing indexes in the given order. Shared; do not modify. */
+        public int[] permutation(SortOrder order) {
+            return permutations.get(order);
+        }
+
+        /** Position of each listing index within {@link #permutation}. Shared; do not modify. */
+        public int[] rank(SortOrder order) {
+            return ranks.get(order);
+        }
+
+        CatalogColumns columns() {
+            return columns;
+        }
+    }
+}
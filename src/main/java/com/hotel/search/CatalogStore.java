@@ -0,0 +1,247 @@
+package com.hotel.search;
+
+import com.hotel.utilities.DbConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the current {@link CatalogSnapshot} of active hotels and PGs.
+ *
+ * The snapshot is rebuilt in the background: shortly after a partner
+ * add/update/delete on this node ({@link #invalidate()}), and on a fixed
+ * interval to pick up changes made through other nodes.
+ */
+public final class CatalogStore {
+
+    private static final long REFRESH_INTERVAL_SECONDS = 60;
+    private static final long INVALIDATE_DELAY_MILLIS = 200;
+    // Older snapshots kept so cursors issued against them stay consistent
+    private static final int RETAINED_SNAPSHOTS = 4;
+
+    private final DbConfig dbConfig;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean(false);
+
+    private volatile CatalogSnapshot current = CatalogSnapshot.empty();
+    private volatile List<CatalogSnapshot> retained = List.of();
+
+    public CatalogStore(DbConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    /** Loads the first snapshot synchronously, then keeps it fresh. */
+    public void start() throws SQLException {
+        rebuild();
+        scheduler.scheduleWithFixedDelay(this::rebuildQuietly,
+                REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // ===== Access =====
+
+    public CatalogSnapshot current() {
+        return current;
+    }
+
+    /** A recent snapshot by version, or null once it has been dropped. */
+    public CatalogSnapshot snapshot(long version) {
+        for (CatalogSnapshot s : retained) {
+            if (s.version() == version) return s;
+        }
+        return null;
+    }
+
+    /**
+     * Active listings for the given ids, keyed by id. Ids the current snapshot
+     * does not hold (e.g. listed since the last rebuild) are read with a single
+     * IN (...) query; ids that are unknown or not active are simply absent.
+     */
+    public Map<String, Listing> lookup(Listing.Kind kind, Collection<String> ids) throws SQLException {
+        CatalogSnapshot.Section section = current.section(kind);
+        Map<String, Listing> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : ids) {
+            Listing l = section.byId(id);
+            if (l != null) found.put(id, l);
+            else misses.add(id);
+        }
+        if (misses.isEmpty()) return found;
+
+        String table = kind == Listing.Kind.HOTEL ? "Hotels_info" : "paying_guest_info";
+        String sql = "SELECT * FROM " + table + " WHERE Status = 'Active' AND " + kind.idColumn
+                + " IN (" + String.join(",", Collections.nCopies(misses.size(), "?")) + ")";
+
+        int loaded = 0;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < misses.size(); i++) ps.setString(i + 1, misses.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int cols = meta.getColumnCount();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= cols; i++) {
+                        row.put(meta.getColumnLabel(i), rs.getObject(i));
+                    }
+                    Listing l = new Listing(kind, row);
+                    found.put(l.id(), l);
+                    loaded++;
+                }
+            }
+        }
+
+        // The snapshot is missing active rows, so it is behind the database
+        if (loaded > 0) invalidate();
+        return found;
+    }
+
+    /**
+     * Signals that listings changed. Bursts of calls collapse into one rebuild.
+     */
+    public void invalidate() {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                rebuildQueued.set(false);
+                rebuildQuietly();
+            }, INVALIDATE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ===== Loading =====
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void rebuild() throws SQLException {
+        List<Listing> hotels;
+        List<Listing> pgs;
+
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            hotels = load(conn, "SELECT * FROM Hotels_info WHERE Status = 'Active'", Listing.Kind.HOTEL);
+            pgs = load(conn, "SELECT * FROM paying_guest_info WHERE Status = 'Active'", Listing.Kind.PG);
+        }
+
+        Map<String, Integer> bookingCounts = loadBookingCounts();
+
+        long version = fingerprint(hotels, pgs, bookingCounts);
+        if (version == current.version()) return; // nothing changed
+
+        CatalogSnapshot next = new CatalogSnapshot(version, hotels, pgs, bookingCounts);
+
+        List<CatalogSnapshot> keep = new ArrayList<>(RETAINED_SNAPSHOTS);
+        keep.add(next);
+        for (CatalogSnapshot s : retained) {
+            if (keep.size() < RETAINED_SNAPSHOTS) keep.add(s);
+        }
+        retained = List.copyOf(keep);
+        current = next;
+    }
+
+    /** Non-cancelled bookings per Hotel_ID / PG_ID, used for popularity sort. */
+    private Map<String, Integer> loadBookingCounts() {
+        String sql = """
+                SELECT Hotel_ID, COUNT(*) AS Bookings
+                FROM bookings_info
+                WHERE UPPER(COALESCE(Booking_Status, '')) <> 'CANCELLED'
+                GROUP BY Hotel_ID
+                """;
+
+        Map<String, Integer> counts = new HashMap<>();
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String id = rs.getString("Hotel_ID");
+                if (id != null) counts.put(id.trim(), rs.getInt("Bookings"));
+            }
+        } catch (SQLException e) {
+            // Popularity is a ranking hint; serve the catalog without it
+            e.printStackTrace();
+        }
+        return counts;
+    }
+
+    private List<Listing> load(Connection conn, String sql, Listing.Kind kind) throws SQLException {
+        List<Listing> list = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            ResultSetMetaData meta = rs.getMetaData();
+            int cols = meta.getColumnCount();
+
+            CatalogSnapshot.Section previous = current.section(kind);
+            while (rs.next()) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int i = 1; i <= cols; i++) {
+                    row.put(meta.getColumnLabel(i), rs.getObject(i));
+                }
+                // Unchanged rows keep their Listing, and with it the cached JSON fragments
+                Listing same = previous.byId(Listing.idOf(kind, row));
+                list.add(same != null && same.columns().equals(row) ? same : new Listing(kind, row));
+            }
+        }
+        // Catalog order is by id, so a search cursor can find its place in a newer snapshot
+        list.sort(Comparator.comparing(Listing::id, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return list;
+    }
+
+    /** 64-bit FNV-1a over every column value, so identical reloads keep the same version. */
+    private static long fingerprint(List<Listing> hotels, List<Listing> pgs, Map<String, Integer> bookingCounts) {
+        long h = 0xcbf29ce484222325L;
+        for (List<Listing> list : List.of(hotels, pgs)) {
+            for (Listing l : list) {
+                for (Object v : l.columns().values()) {
+                    byte[] b = String.valueOf(v).getBytes(StandardCharsets.UTF_8);
+                    for (byte x : b) {
+                        h ^= x;
+                        h *= 0x100000001b3L;
+                    }
+                    h ^= 0x1f;
+                    h *= 0x100000001b3L;
+                }
+            }
+            h ^= 0x1e;
+            h *= 0x100000001b3L;
+        }
+        // Order-independent so HashMap iteration order does not matter
+        long counts = 0;
+        for (Map.Entry<String, Integer> e : bookingCounts.entrySet()) {
+            counts += (e.getKey().hashCode() * 0x9E3779B97F4A7C15L) ^ e.getValue();
+        }
+        h ^= counts;
+        h *= 0x100000001b3L;
+        return h == 0 ? 1 : h;
+    }
+}
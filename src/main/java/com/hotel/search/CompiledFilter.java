@@ -0,0 +1,314 @@
+package com.hotel.search;
+
+import java.util.List;
+
+/**
+ * A {@link FilterSpec} compiled against the columns of one catalog section.
+ *
+ * String predicates are resolved once per dictionary entry into lookup
+ * tables; each predicate then becomes one tight pass over a primitive column
+ * that writes a bitmap word at a time with no data-dependent branches.
+ * Results and facet counts are pure bitmap ANDs and popcounts, and rows are
+ * only materialized by the caller for the selected indexes.
+ */
+public final class CompiledFilter {
+
+    // Facet predicate slots
+    private static final int F_CITY = 0;
+    private static final int F_HOTEL_TYPE = 1;
+    private static final int F_ROOM_TYPE = 2;
+    private static final int F_PRICE = 3;
+    private static final int F_RATING = 4;
+    private static final int F_AMENITIES = 5;
+    private static final int FACETS = 6;
+
+    private final CatalogColumns cols;
+    private final long[] scope;                         // non-facet predicates, never null
+    private final long[][] facet = new long[FACETS][];  // null = predicate not present
+
+    private CompiledFilter(FilterSpec spec, CatalogSnapshot.Section section, RoomAvailability availability) {
+        this.cols = section.columns();
+        int n = cols.size;
+
+        // ----- scope: partner, hotel id, availability, customization, text -----
+        long[] s = Bits.all(n);
+        if (!spec.partnerId().isEmpty()) {
+            Bits.and(s, equalsScan(cols.partnerId, cols.partners.lookup(spec.partnerId())));
+        }
+        if (!spec.hotelId().isEmpty()) {
+            Bits.and(s, Bits.of(n, section.indexOf(spec.hotelId())));
+        }
+        if (spec.availableOnly()) {
+            Bits.and(s, positiveScan(cols.availableRooms));
+        }
+        if (!spec.customization().isEmpty()) {
+            boolean[] ok = new boolean[cols.customizations.size()];
+            int id = cols.customizations.lookup(spec.customization());
+            if (id >= 0) ok[id] = true;
+            Bits.and(s, lookupScan(cols.customizationId, ok));
+        }
+        if (!spec.query().isEmpty()) {
+            Bits.and(s, textScan(spec.query()));
+        }
+        if (spec.hasStay()) {
+            // Last, so the calendar is only asked about rows that passed everything else above
+            stayScan(s, section, spec, availability);
+        }
+        this.scope = s;
+
+        // ----- facet predicates -----
+        if (!spec.city().isEmpty()) {
+            boolean[] cityOk = containsTable(cols.cities, spec.city());
+            boolean[] stateOk = containsTable(cols.states, spec.city());
+            facet[F_CITY] = cityOrStateScan(cityOk, stateOk);
+        }
+        if (!spec.hotelType().isEmpty()) {
+            facet[F_HOTEL_TYPE] = lookupScan(cols.typeId, equalsTable(cols.types, spec.hotelType()));
+        }
+        if (!spec.roomType().isEmpty()) {
+            facet[F_ROOM_TYPE] = lookupScan(cols.roomTypeId, equalsTable(cols.roomTypes, spec.roomType()));
+        }
+        if (spec.hasPriceRange()) {
+            facet[F_PRICE] = rangeScan(cols.price, spec.minPrice(), spec.maxPrice());
+        }
+        if (spec.hasRating()) {
+            facet[F_RATING] = atLeastScan(cols.rating, (float) spec.rating());
+        }
+        if (!spec.amenities().isEmpty()) {
+            boolean[] ok = new boolean[cols.amenitySets.size()];
+            for (int id = 0; id < ok.length; id++) {
+                String have = cols.amenitySets.key(id);
+                boolean all = true;
+                for (String a : spec.amenities()) all &= have.contains(a);
+                ok[id] = all;
+            }
+            facet[F_AMENITIES] = lookupScan(cols.amenitySetId, ok);
+        }
+    }
+
+    /**
+     * @param availability answers stay-date searches; without one they fall
+     *                     back to the static Available_Rooms count
+     */
+    public static CompiledFilter compile(FilterSpec spec, CatalogSnapshot.Section section,
+                                         RoomAvailability availability) {
+        return new CompiledFilter(spec, section, availability);
+    }
+
+    /** Matches over the whole section. */
+    public Selection select(boolean withFacets) {
+        return select(null, withFacets);
+    }
+
+    /**
+     * Matches restricted to the given candidate indexes (null = whole section).
+     * Facets, when requested, are counted over the same candidates.
+     */
+    public Selection select(int[] candidates, boolean withFacets) {
+        long[] base = scope.clone();
+        if (candidates != null) {
+            long[] c = new long[base.length];
+            for (int i : candidates) Bits.set(c, i);
+            Bits.and(base, c);
+        }
+
+        long[] full = base.clone();
+        for (long[] f : facet) Bits.and(full, f);
+
+        if (!withFacets) return new Selection(full, null);
+
+        SearchFacets facets = new SearchFacets();
+        facets.setTotal(Bits.cardinality(full));
+
+        countOptions(facets, FilterSpec.CITY, cols.cities, cols.cityId, others(base, F_CITY));
+        countOptions(facets, FilterSpec.HOTEL_TYPE, cols.types, cols.typeId, others(base, F_HOTEL_TYPE));
+        countOptions(facets, FilterSpec.ROOM_TYPE, cols.roomTypes, cols.roomTypeId, others(base, F_ROOM_TYPE));
+
+        int[] priceCounts = new int[SearchFacets.PRICE_EDGES.length - 1];
+        Bits.forEach(others(base, F_PRICE), i -> {
+            int b = cols.priceBucket[i];
+            if (b >= 0) priceCounts[b]++;
+        });
+        for (int b = 0; b < priceCounts.length; b++) facets.addPrice(b, priceCounts[b]);
+
+        int[] ratingCounts = new int[SearchFacets.RATING_BANDS.length];
+        Bits.forEach(others(base, F_RATING), i -> {
+            float r = cols.rating[i];
+            for (int b = 0; b < ratingCounts.length; b++) {
+                if (r >= SearchFacets.RATING_BANDS[b]) ratingCounts[b]++;
+            }
+        });
+        for (int b = 0; b < ratingCounts.length; b++) facets.addRating(b, ratingCounts[b]);
+
+        // Amenities use AND semantics, so they are counted over full matches
+        List<long[]> tokenBits = cols.amenityBits;
+        for (int t = 0; t < tokenBits.size(); t++) {
+            int count = Bits.andCardinality(full, tokenBits.get(t));
+            if (count > 0) facets.addOption(FilterSpec.AMENITIES, cols.amenityLabels.get(t), count);
+        }
+
+        return new Selection(full, facets);
+    }
+
+    /** base AND every facet predicate except the given one. */
+    private long[] others(long[] base, int skip) {
+        long[] bits = base.clone();
+        for (int f = 0; f < FACETS; f++) {
+            if (f != skip) Bits.and(bits, facet[f]);
+        }
+        return bits;
+    }
+
+    private static void countOptions(SearchFacets facets, int facetBit, CatalogColumns.Dictionary dict,
+                                     short[] ids, long[] rows) {
+        int[] counts = new int[dict.size()];
+        Bits.forEach(rows, i -> counts[ids[i] & 0xFFFF]++);
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) facets.addOption(facetBit, dict.label(id), counts[id]);
+        }
+    }
+
+    // ===== Dictionary tables =====
+
+    private static boolean[] containsTable(CatalogColumns.Dictionary dict, String needle) {
+        boolean[] ok = new boolean[dict.size()];
+        for (int id = 0; id < ok.length; id++) ok[id] = dict.key(id).contains(needle);
+        return ok;
+    }
+
+    private static boolean[] equalsTable(CatalogColumns.Dictionary dict, String value) {
+        boolean[] ok = new boolean[dict.size()];
+        int id = dict.lookup(value);
+        if (id >= 0) ok[id] = true;
+        return ok;
+    }
+
+    // ===== Column scans (one bitmap word per 64 rows) =====
+
+    private long[] lookupScan(short[] ids, boolean[] ok) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                word |= (ok[ids[base + b] & 0xFFFF] ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+
+    private long[] lookupScan(int[] ids, boolean[] ok) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                word |= (ok[ids[base + b]] ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+
+    private long[] equalsScan(int[] ids, int id) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                word |= (ids[base + b] == id ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+
+    private long[] cityOrStateScan(boolean[] cityOk, boolean[] stateOk) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                boolean hit = cityOk[cols.cityId[base + b] & 0xFFFF] | stateOk[cols.stateId[base + b] & 0xFFFF];
+                word |= (hit ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+
+    /** Clears rows without spec.rooms() rooms free on every night of the stay. */
+    private void stayScan(long[] s, CatalogSnapshot.Section section, FilterSpec spec, RoomAvailability availability) {
+        Bits.forEach(s, i -> {
+            boolean ok = availability != null
+                    ? availability.hasRooms(section.get(i), spec.checkIn(), spec.checkOut(), spec.rooms())
+                    : cols.availableRooms[i] >= spec.rooms();
+            if (!ok) Bits.clear(s, i);
+        });
+    }
+
+    /** LIKE %q% on name, city, state or country. */
+    private long[] textScan(String q) {
+        boolean[] cityOk = containsTable(cols.cities, q);
+        boolean[] stateOk = containsTable(cols.states, q);
+        boolean[] countryOk = containsTable(cols.countries, q);
+        long[] out = new long[Bits.words(cols.size)];
+        for (int i = 0; i < cols.size; i++) {
+            if (cityOk[cols.cityId[i] & 0xFFFF]
+                    || stateOk[cols.stateId[i] & 0xFFFF]
+                    || countryOk[cols.countryId[i] & 0xFFFF]
+                    || cols.nameKey[i].contains(q)) {
+                Bits.set(out, i);
+            }
+        }
+        return out;
+    }
+
+    private long[] rangeScan(double[] values, double min, double max) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                double v = values[base + b];
+                word |= ((v >= min) & (v <= max) ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+
+    private long[] atLeastScan(float[] values, float min) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                word |= (values[base + b] >= min ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+
+    private long[] positiveScan(int[] values) {
+        long[] out = new long[Bits.words(cols.size)];
+        for (int w = 0; w < out.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, cols.size - base);
+            long word = 0;
+            for (int b = 0; b < end; b++) {
+                word |= (values[base + b] > 0 ? 1L : 0L) << b;
+            }
+            out[w] = word;
+        }
+        return out;
+    }
+}
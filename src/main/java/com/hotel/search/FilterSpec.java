@@ -0,0 +1,178 @@
+package com.hotel.search;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed form of the /filterHotels JSON filter object.
+ * Semantics mirror the original SQL filters: city is a substring match on
+ * City or State, type and room type are case-insensitive equality, price is
+ * BETWEEN, rating is >=, and every amenity must be a substring.
+ * See {@link CompiledFilter} for evaluation.
+ */
+public final class FilterSpec {
+
+    // ===== Facet bits (one per facet-able predicate) =====
+    public static final int CITY = 1;
+    public static final int HOTEL_TYPE = 1 << 1;
+    public static final int ROOM_TYPE = 1 << 2;
+    public static final int PRICE = 1 << 3;
+    public static final int RATING = 1 << 4;
+    public static final int AMENITIES = 1 << 5;
+
+    private static final int MAX_ROOMS = 50;
+
+    private final String city;
+    private final String hotelType;
+    private final String roomType;
+    private final boolean hasPriceRange;
+    private final double minPrice;
+    private final double maxPrice;
+    private final boolean hasRating;
+    private final double rating;
+    private final List<String> amenities;
+    private final String partnerId;
+    private final String hotelId;
+    private final boolean availableOnly;
+    private final String customization;
+    private final String query;
+    private final LocalDate checkIn;   // null = no stay dates
+    private final LocalDate checkOut;
+    private final int rooms;
+
+    private FilterSpec(JSONObject filters) {
+        this.city = lowerOrEmpty(filters.optString("city"));
+        this.hotelType = lowerOrEmpty(filters.optString("hotelType"));
+        this.roomType = lowerOrEmpty(filters.optString("roomType"));
+
+        this.hasPriceRange = filters.has("minPrice") && filters.has("maxPrice");
+        this.minPrice = hasPriceRange ? filters.getDouble("minPrice") : 0;
+        this.maxPrice = hasPriceRange ? filters.getDouble("maxPrice") : 0;
+
+        this.hasRating = filters.has("rating");
+        this.rating = hasRating ? filters.getDouble("rating") : 0;
+
+        List<String> list = new ArrayList<>();
+        JSONArray arr = filters.optJSONArray("amenities");
+        if (arr != null) {
+            for (int i = 0; i < arr.length(); i++) {
+                String a = lowerOrEmpty(arr.optString(i));
+                if (!a.isEmpty()) list.add(a);
+            }
+        }
+        this.amenities = Collections.unmodifiableList(list);
+
+        this.partnerId = filters.optString("partnerId", "").trim();
+        this.hotelId = filters.optString("hotelId", "").trim();
+        this.availableOnly = filters.optBoolean("availableOnly", false);
+        this.customization = filters.optString("customization", "");
+        this.query = lowerOrEmpty(filters.optString("q", ""));
+
+        // Stay dates: rooms free every night from checkIn up to (not including) checkOut
+        String in = filters.optString("checkIn", "").trim();
+        String out = filters.optString("checkOut", "").trim();
+        if (in.isEmpty() != out.isEmpty()) {
+            throw new IllegalArgumentException("checkIn and checkOut must be given together");
+        }
+        if (in.isEmpty()) {
+            this.checkIn = null;
+            this.checkOut = null;
+        } else {
+            try {
+                this.checkIn = LocalDate.parse(in);
+                this.checkOut = LocalDate.parse(out);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("checkIn/checkOut must be yyyy-MM-dd");
+            }
+            if (!checkOut.isAfter(checkIn)) {
+                throw new IllegalArgumentException("checkOut must be after checkIn");
+            }
+            if (checkIn.isBefore(LocalDate.now())) {
+                throw new IllegalArgumentException("checkIn cannot be in the past");
+            }
+        }
+        this.rooms = filters.optInt("rooms", 1);
+        if (rooms < 1 || rooms > MAX_ROOMS) {
+            throw new IllegalArgumentException("rooms must be between 1 and " + MAX_ROOMS);
+        }
+    }
+
+    public static FilterSpec from(JSONObject filters) {
+        return new FilterSpec(filters);
+    }
+
+    // ===== Non-facet predicates =====
+
+    public String partnerId() { return partnerId; }
+    public String hotelId() { return hotelId; }
+    public boolean availableOnly() { return availableOnly; }
+    public String customization() { return customization; }
+
+    /** Free text matched against name, city, state and country (home page search box). */
+    public String query() { return query; }
+
+    /** True when checkIn/checkOut were given; see {@link RoomAvailability}. */
+    public boolean hasStay() { return checkIn != null; }
+    public LocalDate checkIn() { return checkIn; }
+    public LocalDate checkOut() { return checkOut; }
+    public int rooms() { return rooms; }
+
+    // ===== Facet predicates (evaluated by CompiledFilter) =====
+
+    String city() { return city; }
+    String hotelType() { return hotelType; }
+    String roomType() { return roomType; }
+    boolean hasPriceRange() { return hasPriceRange; }
+    double minPrice() { return minPrice; }
+    double maxPrice() { return maxPrice; }
+    boolean hasRating() { return hasRating; }
+    double rating() { return rating; }
+    List<String> amenities() { return amenities; }
+
+    /** Stable text form of every predicate, used to bind cursors to a search and to coalesce identical ones. */
+    public String canonical() {
+        return String.join("\u0001",
+                city, hotelType, roomType,
+                hasPriceRange ? minPrice + ".." + maxPrice : "",
+                hasRating ? Double.toString(rating) : "",
+                String.join(",", amenities),
+                partnerId, hotelId, Boolean.toString(availableOnly), customization, query,
+                hasStay() ? checkIn + ".." + checkOut + "x" + rooms : "");
+    }
+
+    /** Parses Room_Price the same way as CAST(REPLACE(REPLACE(Room_Price,'₹',''),',','') AS DECIMAL). */
+    public static double parsePrice(Object raw) {
+        if (raw == null) return 0;
+        if (raw instanceof Number) return ((Number) raw).doubleValue();
+
+        String s = raw.toString().replace("₹", "").replace(",", "").trim();
+        int end = 0;
+        boolean dot = false;
+        while (end < s.length()) {
+            char c = s.charAt(end);
+            if (Character.isDigit(c) || (c == '-' && end == 0)) {
+                end++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+                end++;
+            } else {
+                break;
+            }
+        }
+        try {
+            return end == 0 ? 0 : Double.parseDouble(s.substring(0, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String lowerOrEmpty(String s) {
+        return s == null ? "" : s.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,189 @@
+package com.hotel.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Uniform lat/lng grid over the listings of one snapshot.
+ * Radius queries only touch the cells overlapping the search circle, and
+ * nearest-first queries walk rings of cells outward from the query point and
+ * stop as soon as no unvisited cell can beat the current k-th hit.
+ */
+public final class GeoGrid {
+
+    static final double CELL_DEG = 0.05;            // ~5.5 km of latitude
+    static final double KM_PER_DEG = 111.32;
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    // "12.97,77.59", "12.97, 77.59" or a maps URL containing "@12.97,77.59,15z" / "q=12.97,77.59"
+    private static final Pattern LAT_LNG =
+            Pattern.compile("(-?\\d{1,2}(?:\\.\\d+)?)\\s*,\\s*(-?\\d{1,3}(?:\\.\\d+)?)");
+
+    public record Hit(int index, double distanceKm) {}
+
+    /** Nearest first; equal distances fall back to catalog order. */
+    public static final Comparator<Hit> BY_DISTANCE =
+            Comparator.comparingDouble(Hit::distanceKm).thenComparingInt(Hit::index);
+
+    private final double[] lat;
+    private final double[] lng;
+    private final Map<Long, int[]> cells;
+    private final int minRow, maxRow, minCol, maxCol;
+
+    GeoGrid(double[] lat, double[] lng) {
+        this.lat = lat;
+        this.lng = lng;
+
+        Map<Long, List<Integer>> build = new HashMap<>();
+        int rMin = Integer.MAX_VALUE, rMax = Integer.MIN_VALUE;
+        int cMin = Integer.MAX_VALUE, cMax = Integer.MIN_VALUE;
+
+        for (int i = 0; i < lat.length; i++) {
+            if (Double.isNaN(lat[i])) continue;
+            int r = row(lat[i]);
+            int c = col(lng[i]);
+            build.computeIfAbsent(key(r, c), k -> new ArrayList<>()).add(i);
+            rMin = Math.min(rMin, r);
+            rMax = Math.max(rMax, r);
+            cMin = Math.min(cMin, c);
+            cMax = Math.max(cMax, c);
+        }
+
+        this.cells = new HashMap<>(build.size() * 2);
+        for (Map.Entry<Long, List<Integer>> e : build.entrySet()) {
+            this.cells.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        this.minRow = rMin;
+        this.maxRow = rMax;
+        this.minCol = cMin;
+        this.maxCol = cMax;
+    }
+
+    public boolean isEmpty() {
+        return cells.isEmpty();
+    }
+
+    /** All accepted points within radiusKm, unordered. */
+    public List<Hit> within(double qLat, double qLng, double radiusKm, IntPredicate accept) {
+        List<Hit> hits = new ArrayList<>();
+        if (cells.isEmpty()) return hits;
+
+        double dLat = radiusKm / KM_PER_DEG;
+        double dLng = radiusKm / (KM_PER_DEG * Math.max(0.01, Math.cos(Math.toRadians(Math.min(89, Math.abs(qLat) + dLat)))));
+
+        int r0 = Math.max(minRow, row(qLat - dLat)), r1 = Math.min(maxRow, row(qLat + dLat));
+        int c0 = Math.max(minCol, col(qLng - dLng)), c1 = Math.min(maxCol, col(qLng + dLng));
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int[] bucket = cells.get(key(r, c));
+                if (bucket == null) continue;
+                for (int i : bucket) {
+                    double d = distanceKm(qLat, qLng, lat[i], lng[i]);
+                    if (d <= radiusKm && accept.test(i)) hits.add(new Hit(i, d));
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Up to k accepted points within maxKm, nearest first. Visits cells ring by
+     * ring, so the cost depends on local density rather than catalog size.
+     */
+    public List<Hit> nearest(double qLat, double qLng, int k, double maxKm, IntPredicate accept) {
+        List<Hit> out = new ArrayList<>();
+        if (cells.isEmpty() || k <= 0) return out;
+
+        // Max-heap of the best k so far
+        PriorityQueue<Hit> best = new PriorityQueue<>(BY_DISTANCE.reversed());
+
+        int qr = row(qLat), qc = col(qLng);
+        int maxRing = Math.max(Math.max(Math.abs(qr - minRow), Math.abs(qr - maxRow)),
+                Math.max(Math.abs(qc - minCol), Math.abs(qc - maxCol)));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            double bound = ringLowerBoundKm(qLat, ring);
+            if (bound > maxKm) break;
+            if (best.size() == k && bound > best.peek().distanceKm()) break;
+
+            for (int r = qr - ring; r <= qr + ring; r++) {
+                if (r < minRow || r > maxRow) continue;
+                boolean edgeRow = r == qr - ring || r == qr + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = qc - ring; c <= qc + ring; c += Math.max(1, step)) {
+                    int[] bucket = cells.get(key(r, c));
+                    if (bucket == null) continue;
+                    for (int i : bucket) {
+                        double d = distanceKm(qLat, qLng, lat[i], lng[i]);
+                        if (d > maxKm) continue;
+                        Hit hit = new Hit(i, d);
+                        if (best.size() == k && BY_DISTANCE.compare(hit, best.peek()) >= 0) continue;
+                        if (!accept.test(i)) continue;
+                        best.add(hit);
+                        if (best.size() > k) best.poll();
+                    }
+                }
+            }
+        }
+
+        out.addAll(best);
+        out.sort(BY_DISTANCE);
+        return out;
+    }
+
+    /** Any point in ring n is at least (n - 1) cells away along one axis. */
+    private static double ringLowerBoundKm(double qLat, int ring) {
+        if (ring <= 1) return 0;
+        double farLat = Math.min(89, Math.abs(qLat) + ring * CELL_DEG);
+        double cellKm = CELL_DEG * KM_PER_DEG * Math.cos(Math.toRadians(farLat));
+        return (ring - 1) * Math.min(cellKm, CELL_DEG * KM_PER_DEG);
+    }
+
+    // ===== Coordinates =====
+
+    /** Parses "lat,lng" (also inside a maps URL). Returns null if absent or out of range. */
+    public static double[] parseLocation(String raw) {
+        if (raw == null || raw.isBlank()) return null;
+        Matcher m = LAT_LNG.matcher(raw);
+        while (m.find()) {
+            try {
+                double la = Double.parseDouble(m.group(1));
+                double lo = Double.parseDouble(m.group(2));
+                if (la >= -90 && la <= 90 && lo >= -180 && lo <= 180 && !(la == 0 && lo == 0)) {
+                    return new double[]{la, lo};
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return null;
+    }
+
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static int row(double latitude) {
+        return (int) Math.floor(latitude / CELL_DEG);
+    }
+
+    private static int col(double longitude) {
+        return (int) Math.floor(longitude / CELL_DEG);
+    }
+
+    private static long key(int r, int c) {
+        return ((long) r << 32) | (c & 0xffffffffL);
+    }
+}
@@ -0,0 +1,56 @@
+package com.hotel.search;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A "near=lat,lng&radiusKm=" request against one catalog section.
+ */
+public record GeoQuery(double lat, double lng, double radiusKm) {
+
+    public static final double DEFAULT_RADIUS_KM = 25;
+    public static final double MAX_RADIUS_KM = 200;
+
+    /**
+     * Returns null when no origin was sent.
+     *
+     * @throws IllegalArgumentException if near or radiusKm is malformed
+     */
+    public static GeoQuery parse(String near, String radiusKm) {
+        if (near == null || near.isBlank()) return null;
+
+        double[] point = GeoGrid.parseLocation(near);
+        if (point == null) {
+            throw new IllegalArgumentException("near must be 'lat,lng'");
+        }
+
+        double radius = DEFAULT_RADIUS_KM;
+        if (radiusKm != null && !radiusKm.isBlank()) {
+            try {
+                radius = Double.parseDouble(radiusKm.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("radiusKm must be a number");
+            }
+            if (!(radius > 0)) {
+                throw new IllegalArgumentException("radiusKm must be positive");
+            }
+            radius = Math.min(radius, MAX_RADIUS_KM);
+        }
+        return new GeoQuery(point[0], point[1], radius);
+    }
+
+    /** Up to k accepted listings inside the radius, nearest first. */
+    public List<GeoGrid.Hit> nearest(CatalogSnapshot.Section section, int k, IntPredicate accept) {
+        return section.geo().nearest(lat, lng, k, radiusKm, accept);
+    }
+
+    /** Every accepted listing inside the radius, unordered. */
+    public List<GeoGrid.Hit> within(CatalogSnapshot.Section section, IntPredicate accept) {
+        return section.geo().within(lat, lng, radiusKm, accept);
+    }
+
+    /** Distance rounded to 10 m for responses. */
+    public static double roundKm(double km) {
+        return Math.round(km * 100.0) / 100.0;
+    }
+}
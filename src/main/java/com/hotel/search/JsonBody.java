@@ -0,0 +1,71 @@
+package com.hotel.search;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JSON response assembled from pre-serialized pieces (mostly cached
+ * listing fragments) and written to the exchange without copying them into
+ * one buffer first.
+ */
+public final class JsonBody {
+
+    private static final byte[] OBJECT_END = {'}'};
+    private static final byte[] COMMA = {','};
+
+    private final List<byte[]> parts = new ArrayList<>();
+    private long length;
+
+    public JsonBody raw(String json) {
+        return raw(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public JsonBody raw(byte[] json) {
+        parts.add(json);
+        length += json.length;
+        return this;
+    }
+
+    /**
+     * Appends a JSON array of listings in the given view. When distancesKm is
+     * not null, each object also gets a Distance_Km field.
+     */
+    public JsonBody listings(List<Listing> listings, ListingView view, double[] distancesKm) {
+        raw("[");
+        for (int i = 0; i < listings.size(); i++) {
+            if (i > 0) raw(COMMA);
+            raw(listings.get(i).fragment(view));
+            if (distancesKm != null && !Double.isNaN(distancesKm[i])) {
+                raw(",\"Distance_Km\":" + GeoQuery.roundKm(distancesKm[i]));
+            }
+            raw(OBJECT_END);
+        }
+        return raw("]");
+    }
+
+    /** The whole body as one array, for callers that embed it in a larger response. */
+    public byte[] toByteArray() {
+        byte[] out = new byte[(int) length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, pos, part.length);
+            pos += part.length;
+        }
+        return out;
+    }
+
+    public void send(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            for (byte[] part : parts) {
+                os.write(part);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.hotel.search;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One active hotel or PG row as held in a {@link CatalogSnapshot}.
+ * The typed fields are parsed once at load time; {@link #columns()} keeps
+ * every column of the source row (label -> value) for serialization.
+ */
+public final class Listing {
+
+    public enum Kind {
+        HOTEL("Hotel_ID", "Hotel_Name", "Hotel_Type", "Hotel_Images"),
+        PG("PG_ID", "PG_Name", "PG_Type", "PG_Images");
+
+        final String idColumn;
+        final String nameColumn;
+        final String typeColumn;
+        final String imagesColumn;
+
+        Kind(String idColumn, String nameColumn, String typeColumn, String imagesColumn) {
+            this.idColumn = idColumn;
+            this.nameColumn = nameColumn;
+            this.typeColumn = typeColumn;
+            this.imagesColumn = imagesColumn;
+        }
+
+        public String imagesColumn() {
+            return imagesColumn;
+        }
+    }
+
+    private final Kind kind;
+    private final String id;
+    private final String partnerId;
+    private final String name;
+    private final String type;
+    private final String roomType;
+    private final String city;
+    private final String state;
+    private final String country;
+    private final String amenities;
+    private final String customization;
+    private final double price;
+    private final double rating;
+    private final int totalRooms;
+    private final int availableRooms;
+    private final double lat;
+    private final double lng;
+    private final Map<String, Object> columns;
+    // Rendered views; a changed row becomes a new Listing, so these never go stale
+    private final Map<String, byte[]> fragments = new ConcurrentHashMap<>();
+
+    Listing(Kind kind, Map<String, Object> row) {
+        this.kind = kind;
+        this.columns = Collections.unmodifiableMap(new LinkedHashMap<>(row));
+
+        this.id = str(row.get(kind.idColumn));
+        this.partnerId = str(row.get("Partner_ID"));
+        this.name = str(row.get(kind.nameColumn));
+        this.type = str(row.get(kind.typeColumn));
+        this.roomType = str(row.get("Room_Type"));
+        this.city = str(row.get("City"));
+        this.state = str(row.get("State"));
+        this.country = str(row.get("Country"));
+        this.amenities = str(row.get("Amenities"));
+        this.customization = str(row.get("Customization"));
+        this.price = FilterSpec.parsePrice(row.get("Room_Price"));
+        this.rating = toDouble(row.get("Rating"));
+        this.totalRooms = (int) toDouble(row.get("Total_Rooms"));
+        this.availableRooms = (int) toDouble(row.get("Available_Rooms"));
+
+        double[] point = GeoGrid.parseLocation(str(row.get("Hotel_Location")));
+        this.lat = point == null ? Double.NaN : point[0];
+        this.lng = point == null ? Double.NaN : point[1];
+    }
+
+    public Kind kind() { return kind; }
+    public String id() { return id; }
+    public String partnerId() { return partnerId; }
+    public String name() { return name; }
+    public String type() { return type; }
+    public String roomType() { return roomType; }
+    public String city() { return city; }
+    public String state() { return state; }
+    public String country() { return country; }
+    public String amenities() { return amenities; }
+    public String customization() { return customization; }
+    public double price() { return price; }
+    public double rating() { return rating; }
+    public int totalRooms() { return totalRooms; }
+    public int availableRooms() { return availableRooms; }
+    public double lat() { return lat; }
+    public double lng() { return lng; }
+    public boolean hasLocation() { return !Double.isNaN(lat); }
+
+    /** All source columns in select order. Read-only. */
+    public Map<String, Object> columns() { return columns; }
+
+    /** This listing rendered in the given view, built on first use. Do not modify. */
+    public byte[] fragment(ListingView view) {
+        if (!view.cached()) return view.render(this);
+        return fragments.computeIfAbsent(view.name(), k -> view.render(this));
+    }
+
+    /** Id read from a raw row, before a Listing is built. */
+    static String idOf(Kind kind, Map<String, Object> row) {
+        return str(row.get(kind.idColumn));
+    }
+
+    private static String str(Object o) {
+        return o == null ? "" : o.toString().trim();
+    }
+
+    private static double toDouble(Object o) {
+        if (o == null) return 0;
+        if (o instanceof Number) return ((Number) o).doubleValue();
+        try {
+            return Double.parseDouble(o.toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.hotel.search;
+
+/**
+ * One JSON shape of a listing as served by an endpoint. The rendered bytes
+ * are cached on the {@link Listing} and only rebuilt when the listing row
+ * changes (see {@link Listing#fragment}).
+ */
+public interface ListingView {
+
+    /** Cache key; must be unique per shape. */
+    String name();
+
+    /**
+     * The listing as a UTF-8 JSON object <em>without</em> its closing brace,
+     * so per-request fields (e.g. distance) can be appended before closing it.
+     */
+    byte[] render(Listing listing);
+
+    /** False for one-off shapes (e.g. ad-hoc field lists) that should not be kept per listing. */
+    default boolean cached() {
+        return true;
+    }
+}
@@ -0,0 +1,190 @@
+package com.hotel.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Serialized search responses keyed by their canonical request.
+ *
+ * Bounded by total bytes with segmented-LRU eviction: new entries start in a
+ * probation segment and move to a protected segment (80% of the budget) on
+ * their second hit, so the few hundred popular filter combinations survive
+ * bursts of one-off searches. Entries expire after a TTL, and the whole
+ * cache is dropped as soon as the catalog version changes, since every
+ * cached page was cut from an older snapshot.
+ */
+public final class ResponseCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private static final class Entry {
+        final byte[] value;
+        final long expiresAt;
+        final long size;
+
+        Entry(String key, byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.size = value.length + (long) key.length() * 2 + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    private final long maxBytes;
+    private final long protectedMaxBytes;
+    private final long ttlMillis;
+    private final LongSupplier currentVersion;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Entry> protect = new LinkedHashMap<>(64, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+    private long version;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * @param currentVersion the live catalog version; a change clears the cache
+     */
+    public ResponseCache(long maxBytes, long ttlMillis, LongSupplier currentVersion) {
+        this.maxBytes = maxBytes;
+        this.protectedMaxBytes = (long) (maxBytes * PROTECTED_SHARE);
+        this.ttlMillis = ttlMillis;
+        this.currentVersion = currentVersion;
+        this.version = currentVersion.getAsLong();
+    }
+
+    /** The cached response, or null. */
+    public synchronized byte[] get(String key) {
+        checkVersion();
+
+        Entry e = protect.get(key);
+        if (e == null) {
+            e = probation.get(key);
+            if (e != null && !expired(key, e, probation)) {
+                // Second hit: promote
+                probation.remove(key);
+                probationBytes -= e.size;
+                protect.put(key, e);
+                protectedBytes += e.size;
+                demoteOverflow();
+                hits++;
+                return e.value;
+            }
+            misses++;
+            return null;
+        }
+
+        if (expired(key, e, protect)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.value;
+    }
+
+    /**
+     * Stores a response computed against the given catalog version. Ignored if
+     * the catalog has moved on since, or if the value alone exceeds the budget.
+     */
+    public synchronized void put(String key, long computedAtVersion, byte[] value) {
+        checkVersion();
+        if (computedAtVersion != version) return;
+
+        Entry e = new Entry(key, value, System.currentTimeMillis() + ttlMillis);
+        if (e.size > maxBytes - protectedMaxBytes) return;
+
+        remove(key);
+        probation.put(key, e);
+        probationBytes += e.size;
+        evictOverflow();
+    }
+
+    public void put(String key, long computedAtVersion, String value) {
+        put(key, computedAtVersion, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void clear() {
+        probation.clear();
+        protect.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    /** Counters and sizes, for the stats endpoint. */
+    public synchronized Map<String, Object> stats() {
+        checkVersion();
+        long lookups = hits + misses;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", probation.size() + protect.size());
+        m.put("bytes", probationBytes + protectedBytes);
+        m.put("maxBytes", maxBytes);
+        m.put("protectedBytes", protectedBytes);
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("hitRate", lookups == 0 ? 0.0 : Math.round(hits * 10000.0 / lookups) / 10000.0);
+        m.put("evictions", evictions);
+        m.put("expirations", expirations);
+        m.put("invalidations", invalidations);
+        m.put("catalogVersion", Long.toString(version));
+        m.put("ttlSeconds", ttlMillis / 1000);
+        return m;
+    }
+
+    // ===== Internals (lock held) =====
+
+    private void checkVersion() {
+        long v = currentVersion.getAsLong();
+        if (v != version) {
+            version = v;
+            if (!probation.isEmpty() || !protect.isEmpty()) invalidations++;
+            clear();
+        }
+    }
+
+    private boolean expired(String key, Entry e, LinkedHashMap<String, Entry> segment) {
+        if (System.currentTimeMillis() < e.expiresAt) return false;
+        segment.remove(key);
+        if (segment == protect) protectedBytes -= e.size;
+        else probationBytes -= e.size;
+        expirations++;
+        return true;
+    }
+
+    private void remove(String key) {
+        Entry e = probation.remove(key);
+        if (e != null) probationBytes -= e.size;
+        e = protect.remove(key);
+        if (e != null) protectedBytes -= e.size;
+    }
+
+    /** Protected overflow goes back to the most recent end of probation. */
+    private void demoteOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = protect.entrySet().iterator();
+        while (protectedBytes > protectedMaxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> lru = it.next();
+            it.remove();
+            protectedBytes -= lru.getValue().size;
+            probation.put(lru.getKey(), lru.getValue());
+            probationBytes += lru.getValue().size;
+        }
+        evictOverflow();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = probation.entrySet().iterator();
+        while (probationBytes + protectedBytes > maxBytes && it.hasNext()) {
+            probationBytes -= it.next().getValue().size;
+            it.remove();
+            evictions++;
+        }
+    }
+}
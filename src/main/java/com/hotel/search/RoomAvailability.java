@@ -0,0 +1,18 @@
+package com.hotel.search;
+
+import java.time.LocalDate;
+
+/**
+ * Date-aware room availability, consulted by searches that carry stay dates
+ * ({@link FilterSpec#hasStay()}).
+ */
+public interface RoomAvailability {
+
+    /**
+     * True if the listing has at least rooms rooms free on every night from
+     * checkIn up to, but not including, checkOut.
+     *
+     * @throws IllegalArgumentException if the range is outside what can be answered
+     */
+    boolean hasRooms(Listing listing, LocalDate checkIn, LocalDate checkOut, int rooms);
+}
@@ -0,0 +1,61 @@
+package com.hotel.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token for paged catalog searches.
+ *
+ * Carries the snapshot version the first page was served from, the sort,
+ * the position to resume at, and the sort key / id of the last row returned
+ * (used to seek when that snapshot is no longer retained; catalog order is by
+ * id, so it seeks on the id alone). A hash of the
+ * search parameters stops a token from being replayed against a different
+ * search.
+ */
+public record SearchCursor(long version, String sort, int position, double lastKey, long searchHash, String lastId) {
+
+    private static final String FORMAT = "1";
+
+    public String encode() {
+        String raw = String.join("|",
+                FORMAT,
+                Long.toString(version),
+                sort,
+                Integer.toString(position),
+                Double.toString(lastKey),
+                Long.toString(searchHash),
+                lastId == null ? "" : lastId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static SearchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            String[] p = raw.split("\\|", 7);
+            if (p.length != 7 || !FORMAT.equals(p[0])) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            int position = Integer.parseInt(p[3]);
+            if (position < 0) throw new IllegalArgumentException("Invalid cursor");
+            return new SearchCursor(Long.parseLong(p[1]), p[2], position,
+                    Double.parseDouble(p[4]), Long.parseLong(p[5]), p[6]);
+        } catch (IllegalArgumentException e) {
+            // also covers NumberFormatException and bad base64
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /** 64-bit FNV-1a of the canonical search parameters. */
+    static long hash(String canonical) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : canonical.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
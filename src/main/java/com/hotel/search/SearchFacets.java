@@ -0,0 +1,135 @@
+package com.hotel.search;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Facet counts for the filter screen.
+ *
+ * Each option count answers "how many results would I get if I picked this":
+ * a row is counted for a single-select facet when it passes every other
+ * filter (its own facet is ignored), and for amenities (AND semantics) only
+ * when it passes all filters.
+ */
+public final class SearchFacets {
+
+    // Price buckets in rupees: [edge[i], edge[i+1])
+    static final double[] PRICE_EDGES = {0, 1000, 2000, 3000, 5000, 10000, Double.POSITIVE_INFINITY};
+
+    // Rating bands are cumulative ("4+" includes 4.5)
+    static final double[] RATING_BANDS = {4.5, 4, 3, 2, 1};
+
+    private final Map<String, Bucket> cities = new LinkedHashMap<>();
+    private final Map<String, Bucket> hotelTypes = new LinkedHashMap<>();
+    private final Map<String, Bucket> roomTypes = new LinkedHashMap<>();
+    private final Map<String, Bucket> amenities = new LinkedHashMap<>();
+    private final int[] priceCounts = new int[PRICE_EDGES.length - 1];
+    private final int[] ratingCounts = new int[RATING_BANDS.length];
+    private int total;
+
+    // ===== Accumulation (driven by CompiledFilter) =====
+
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    void addOption(int facet, String label, int count) {
+        switch (facet) {
+            case FilterSpec.CITY -> increment(cities, label, count);
+            case FilterSpec.HOTEL_TYPE -> increment(hotelTypes, label, count);
+            case FilterSpec.ROOM_TYPE -> increment(roomTypes, label, count);
+            case FilterSpec.AMENITIES -> increment(amenities, label, count);
+            default -> throw new IllegalArgumentException("Not an option facet: " + facet);
+        }
+    }
+
+    void addPrice(int bucket, int count) {
+        priceCounts[bucket] += count;
+    }
+
+    void addRating(int band, int count) {
+        ratingCounts[band] += count;
+    }
+
+    public int total() {
+        return total;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("city", toArray(cities));
+        json.put("hotelType", toArray(hotelTypes));
+        json.put("roomType", toArray(roomTypes));
+        json.put("amenities", toArray(amenities));
+
+        JSONArray price = new JSONArray();
+        for (int i = 0; i < priceCounts.length; i++) {
+            JSONObject o = new JSONObject();
+            double lo = PRICE_EDGES[i];
+            double hi = PRICE_EDGES[i + 1];
+            o.put("value", Double.isInfinite(hi) ? (long) lo + "+" : (long) lo + "-" + (long) hi);
+            o.put("min", lo);
+            if (!Double.isInfinite(hi)) o.put("max", hi);
+            o.put("count", priceCounts[i]);
+            price.put(o);
+        }
+        json.put("price", price);
+
+        JSONArray ratingArr = new JSONArray();
+        for (int i = 0; i < ratingCounts.length; i++) {
+            JSONObject o = new JSONObject();
+            o.put("value", RATING_BANDS[i] + "+");
+            o.put("min", RATING_BANDS[i]);
+            o.put("count", ratingCounts[i]);
+            ratingArr.put(o);
+        }
+        json.put("rating", ratingArr);
+
+        return json;
+    }
+
+    static int priceBucket(double price) {
+        if (price < 0) return -1;
+        for (int i = 0; i < PRICE_EDGES.length - 1; i++) {
+            if (price < PRICE_EDGES[i + 1]) return i;
+        }
+        return -1;
+    }
+
+    private static void increment(Map<String, Bucket> map, String value, int count) {
+        if (value == null) return;
+        String display = value.trim();
+        if (display.isEmpty()) return;
+        map.computeIfAbsent(display.toLowerCase(), k -> new Bucket(display)).count += count;
+    }
+
+    private static JSONArray toArray(Map<String, Bucket> map) {
+        List<Bucket> list = new ArrayList<>(map.values());
+        list.sort((a, b) -> a.count != b.count
+                ? Integer.compare(b.count, a.count)
+                : a.label.compareToIgnoreCase(b.label));
+
+        JSONArray arr = new JSONArray();
+        for (Bucket b : list) {
+            JSONObject o = new JSONObject();
+            o.put("value", b.label);
+            o.put("count", b.count);
+            arr.put(o);
+        }
+        return arr;
+    }
+
+    private static final class Bucket {
+        final String label;
+        int count;
+
+        Bucket(String label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.hotel.search;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Result of running a {@link CompiledFilter}: the matching listing indexes
+ * of one catalog section as a bitmap, plus facet counts when requested.
+ */
+public final class Selection {
+
+    private final long[] bits;
+    private final int count;
+    private final SearchFacets facets;
+
+    Selection(long[] bits, SearchFacets facets) {
+        this.bits = bits;
+        this.count = Bits.cardinality(bits);
+        this.facets = facets;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean contains(int index) {
+        return index >= 0 && (index >>> 6) < bits.length && Bits.test(bits, index);
+    }
+
+    /** Visits matching indexes in catalog order. */
+    public void forEach(IntConsumer action) {
+        Bits.forEach(bits, action);
+    }
+
+    /**
+     * Walks an order (a presorted permutation, or null for catalog order)
+     * from position from and hands up to limit matches to out, stopping as
+     * soon as the page is full.
+     *
+     * @return position of the next match after the page, or -1 if there is none
+     */
+    public int page(int[] order, int from, int limit, IntConsumer out) {
+        int size = order == null ? bits.length << 6 : order.length;
+        int taken = 0;
+        for (int p = Math.max(0, from); p < size; p++) {
+            int i = order == null ? p : order[p];
+            if (!contains(i)) continue;
+            if (taken == limit) return p;
+            out.accept(i);
+            taken++;
+        }
+        return -1;
+    }
+
+    public int[] toArray() {
+        int[] out = new int[count];
+        int[] n = {0};
+        Bits.forEach(bits, i -> out[n[0]++] = i);
+        return out;
+    }
+
+    /** Null unless facets were requested. */
+    public SearchFacets facets() {
+        return facets;
+    }
+}
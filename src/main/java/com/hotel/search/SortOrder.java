@@ -0,0 +1,29 @@
+package com.hotel.search;
+
+/**
+ * Orders kept presorted for every catalog section. Ties fall back to catalog
+ * order so paging over a permutation is stable.
+ */
+public enum SortOrder {
+    PRICE_ASC,
+    PRICE_DESC,
+    RATING_DESC,
+    POPULARITY_DESC;
+
+    /** Maps the sortBy values used by the apps; null for catalog/distance order. */
+    public static SortOrder fromSortBy(String sortBy) {
+        if (sortBy == null) return null;
+        switch (sortBy) {
+            case "price_lowest":
+                return PRICE_ASC;
+            case "price_highest":
+                return PRICE_DESC;
+            case "top_rated":
+                return RATING_DESC;
+            case "popularity":
+                return POPULARITY_DESC;
+            default:
+                return null;
+        }
+    }
+}
@@ -2,10 +2,13 @@ package com.hotel.server;
 
 import java.net.InetSocketAddress;
 import java.sql.Connection;
+import java.util.concurrent.Executors;
 import com.hotel.app.AppFilterHandler;
 import com.hotel.app.BookingHandler;
 import com.hotel.app.BookingHistoryHandler;
+import com.hotel.app.CacheStatsHandler;
 import com.hotel.app.HomePageHandler;
+import com.hotel.app.HomeScreenHandler;
 import com.hotel.app.HotelsHandler;
 import com.hotel.app.LoginHandler;
 import com.hotel.app.PaymentHandler;
@@ -13,16 +16,34 @@ import com.hotel.app.PgsHandler;
 import com.hotel.app.ProfileHandler;
 import com.hotel.app.RegisterHandler;
 import com.hotel.app.RewardsWalletHandler;
+import com.hotel.booking.BookingStateMachine;
+import com.hotel.booking.CompletionSweeper;
+import com.hotel.booking.HoldManager;
+import com.hotel.booking.InventoryCalendar;
+import com.hotel.booking.ReservationEngine;
+import com.hotel.search.CatalogStore;
+import com.hotel.search.ResponseCache;
 import com.hotel.utilities.DbConfig;
 import com.hotel.utilities.DbConfigLoader;
+import com.hotel.utilities.IdGenerator;
+import com.hotel.utilities.IdempotencyStore;
+import com.hotel.utilities.Outbox;
+import com.hotel.utilities.OutboxRelay;
+import com.hotel.utilities.ParallelQueries;
 import com.hotel.web.finance.GetPartnerFinanceHandler;
+import com.hotel.web.finance.GetPartnerRevenueSeriesHandler;
 import com.hotel.web.finance.GetPartnerTransactionsHandler;
+import com.hotel.web.finance.PartnerLedger;
+import com.hotel.web.finance.PartnerRollups;
+import com.hotel.web.finance.PayoutCompensator;
 import com.hotel.web.finance.RequestPayoutHandler;
 import com.hotel.web.finance.SetFinanceNotificationViewedHandler;
 import com.hotel.web.finance.UpdateBankDetailsHandler;
 import com.hotel.web.partner.AddHotelsHandler;
 import com.hotel.web.partner.AddPgHandler;
 import com.hotel.web.partner.HotelImagesHandler;
+import com.hotel.web.partner.PartnerEventHub;
+import com.hotel.web.partner.PartnerStatsStore;
 import com.hotel.web.partner.WebBookingHandler;
 import com.hotel.web.partner.WebDashBoardHandler;
 import com.hotel.web.partner.WebLoginRegisterHandler;
@@ -32,6 +53,14 @@ import com.hotel.web.partner.WebViewPGsHandler;
 import com.sun.net.httpserver.HttpServer;
 
 public class HotelBookingServer {
+
+    private static final long SEARCH_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long SEARCH_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+    private static final int REQUEST_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    private static final int QUERY_THREADS = 32;
+    // /home runs at most two database parts per request; half of each pool at most, as for QUERY_THREADS
+    private static final int HOME_FAN_OUT_THREADS = Math.min(2 * REQUEST_THREADS, DbConfig.POOL_SIZE / 2);
+
     public static void main(String[] args) throws Exception {
         int port = 8080; // Keep consistent with Flutter (10.0.2.2:8080)
 
@@ -56,56 +85,122 @@ public class HotelBookingServer {
             // Just validation
         }
 
+        // ===== Load the active hotel / PG catalog used by search =====
+        CatalogStore catalogStore = new CatalogStore(dbConfig);
+        catalogStore.start();
+
+        // ===== Change events, written with each booking / payment / payout change =====
+        Outbox.ensureSchema(dbConfig.getCustomerDataSource());
+        Outbox.ensureSchema(dbConfig.getPartnerDataSource());
+        // Shared relays (one server at a time) feed derived tables; local ones per-server state
+        OutboxRelay customerEvents = new OutboxRelay(dbConfig.getCustomerDataSource(), "customer", true);
+        OutboxRelay partnerEvents = new OutboxRelay(dbConfig.getPartnerDataSource(), "partner", true);
+        OutboxRelay localCustomerEvents = new OutboxRelay(dbConfig.getCustomerDataSource(), "customer-local", false, 1);
+        OutboxRelay localPartnerEvents = new OutboxRelay(dbConfig.getPartnerDataSource(), "partner-local", false, 1);
+
+        // ===== Per-night room calendar (search), room inventory claims, payment holds and auto-completion (booking) =====
+        InventoryCalendar inventory = new InventoryCalendar(dbConfig);
+        inventory.start();
+        ReservationEngine reservations = new ReservationEngine(dbConfig, catalogStore, inventory);
+        reservations.ensureSchema();
+        BookingStateMachine bookingStates = new BookingStateMachine();
+        bookingStates.addListener(t -> inventory.bookingChanged(t.bookingId()));
+        // Changes committed on other servers
+        localCustomerEvents.subscribe(Outbox.BOOKING, e -> inventory.bookingChanged(e.aggregateKey()));
+        HoldManager holds = new HoldManager(dbConfig, reservations, bookingStates);
+        holds.start();
+        new CompletionSweeper(dbConfig, bookingStates).start();
+        // Failed payouts are given back once, off the request path
+        new PayoutCompensator(dbConfig).start();
+
+        // ===== Partner revenue ledger, kept from booking events and payouts =====
+        PartnerLedger partnerLedger = new PartnerLedger(dbConfig, customerEvents.name());
+        partnerLedger.start();
+        partnerLedger.subscribe(customerEvents);
+        // Daily / monthly trend buckets for the finance charts
+        PartnerRollups partnerRollups = new PartnerRollups(dbConfig, customerEvents.name());
+        partnerRollups.start();
+        partnerRollups.subscribe(customerEvents);
+
+        // ===== Partner dashboard counters, kept from booking / payout events =====
+        PartnerStatsStore partnerStats = new PartnerStatsStore(dbConfig, customerEvents.name());
+        partnerStats.start();
+        partnerStats.subscribe(customerEvents, partnerEvents);
+
+        // ===== Live booking / payout notifications for the partner web app (SSE) =====
+        PartnerEventHub partnerEventHub = new PartnerEventHub();
+        partnerEventHub.subscribe(localCustomerEvents, localPartnerEvents);
+        partnerEventHub.start();
+
+        // ===== Ids for bookings, users, partners, listings and payouts =====
+        IdGenerator ids = new IdGenerator(dbConfig);
+        ids.start();
+
+        // ===== Replay store for retried booking / payment POSTs =====
+        IdempotencyStore idempotency = new IdempotencyStore(dbConfig);
+        idempotency.start();
+
+        // ===== Independent per-request queries run side by side (wallet, partner finance) =====
+        // Half of each pool at most, so the fan-out cannot starve the other handlers
+        ParallelQueries queries = new ParallelQueries(QUERY_THREADS, DbConfig.POOL_SIZE / 2);
+
+        // Serialized /filterHotels and /hotels/filter responses, dropped when the catalog changes
+        ResponseCache searchCache = new ResponseCache(SEARCH_CACHE_BYTES, SEARCH_CACHE_TTL_MILLIS,
+                () -> catalogStore.current().version());
+
         // ========== MOBILE / APP HANDLERS ==========
         server.createContext("/login", new LoginHandler(dbConfig));
         server.createContext("/app/forgot-password/verify", new LoginHandler(dbConfig));
         server.createContext("/app/forgot-password/change", new LoginHandler(dbConfig));
-        server.createContext("/register", new RegisterHandler(dbConfig));
-        server.createContext("/hotels/filter", new HomePageHandler(dbConfig));
-        server.createContext("/hotels", new HotelsHandler(dbConfig));
+        server.createContext("/register", new RegisterHandler(dbConfig, ids));
+        server.createContext("/hotels/filter", new HomePageHandler(dbConfig, catalogStore, searchCache, inventory));
+        server.createContext("/hotels", new HotelsHandler(dbConfig, catalogStore));
+        server.createContext("/home", new HomeScreenHandler(dbConfig, catalogStore, bookingStates, reservations, queries,
+                HOME_FAN_OUT_THREADS));
+        server.createContext("/cache/stats", new CacheStatsHandler(searchCache));
         server.createContext("/paying_guest", new PgsHandler(dbConfig));
-        server.createContext("/booking", new BookingHandler(dbConfig));
+        server.createContext("/booking", new BookingHandler(dbConfig, inventory, reservations, holds, bookingStates, idempotency, ids));
         server.createContext("/profile", new ProfileHandler(dbConfig));
         server.createContext("/app/change-password", new ProfileHandler(dbConfig));
-        server.createContext("/booking-history", new BookingHistoryHandler(dbConfig));
-        server.createContext("/cancel-booking", new BookingHistoryHandler(dbConfig));
-        server.createContext("/update-booking-dates", new BookingHistoryHandler(dbConfig));
-        server.createContext("/filterHotels", new AppFilterHandler(dbConfig));
+        server.createContext("/booking-history", new BookingHistoryHandler(dbConfig, bookingStates, reservations));
+        server.createContext("/cancel-booking", new BookingHistoryHandler(dbConfig, bookingStates, reservations));
+        server.createContext("/update-booking-dates", new BookingHistoryHandler(dbConfig, bookingStates, reservations));
+        server.createContext("/filterHotels", new AppFilterHandler(catalogStore, searchCache, inventory));
         
         // ============= App Payment & Wallets Section ===============
         
-        server.createContext("/wallet", new RewardsWalletHandler(dbConfig));
-        server.createContext("/wallet/deposit", new RewardsWalletHandler(dbConfig));
-        server.createContext("/wallet/pay", new RewardsWalletHandler(dbConfig));
-        server.createContext("/coupon/validate", new RewardsWalletHandler(dbConfig));
-        server.createContext("/referrals", new RewardsWalletHandler(dbConfig));
-        server.createContext("/payment/createOrder", new PaymentHandler(dbConfig));
-        server.createContext("/payment/verify", new PaymentHandler(dbConfig));
-        server.createContext("/razorpay/webhook", new PaymentHandler(dbConfig));
-        server.createContext("/payment/refund", new PaymentHandler(dbConfig));
+        server.createContext("/wallet", new RewardsWalletHandler(dbConfig, queries));
+        server.createContext("/wallet/deposit", new RewardsWalletHandler(dbConfig, queries));
+        server.createContext("/wallet/pay", new RewardsWalletHandler(dbConfig, queries));
+        server.createContext("/coupon/validate", new RewardsWalletHandler(dbConfig, queries));
+        server.createContext("/referrals", new RewardsWalletHandler(dbConfig, queries));
+        server.createContext("/payment/createOrder", new PaymentHandler(dbConfig, reservations, holds, bookingStates, idempotency));
+        server.createContext("/payment/verify", new PaymentHandler(dbConfig, reservations, holds, bookingStates, idempotency));
+        server.createContext("/razorpay/webhook", new PaymentHandler(dbConfig, reservations, holds, bookingStates, idempotency));
+        server.createContext("/payment/refund", new PaymentHandler(dbConfig, reservations, holds, bookingStates, idempotency));
 
         // ========== WEB HANDLERS ==========
-        server.createContext("/weblogin", new WebLoginRegisterHandler(dbConfig));
-        server.createContext("/registerlogin", new WebLoginRegisterHandler(dbConfig));
-        server.createContext("/forgotpassword", new WebLoginRegisterHandler(dbConfig));
+        server.createContext("/weblogin", new WebLoginRegisterHandler(dbConfig, ids));
+        server.createContext("/registerlogin", new WebLoginRegisterHandler(dbConfig, ids));
+        server.createContext("/forgotpassword", new WebLoginRegisterHandler(dbConfig, ids));
         
-        server.createContext("/api/partner", new WebDashBoardHandler(dbConfig));
+        server.createContext("/api/partner", new WebDashBoardHandler(partnerStats, partnerEventHub));
 
         server.createContext("/webgetprofile", new WebProfileHandler(dbConfig));
         server.createContext("/webupdateprofile", new WebProfileHandler(dbConfig));
         server.createContext("/webchangepassword", new WebProfileHandler(dbConfig));
         server.createContext("/webdeleteprofile", new WebProfileHandler(dbConfig));
 
-        server.createContext("/webaddhotels", new AddHotelsHandler(dbConfig));
+        server.createContext("/webaddhotels", new AddHotelsHandler(dbConfig, catalogStore, reservations, ids));
         server.createContext("/hotel_images", new HotelImagesHandler(dbConfig));
-        server.createContext("/webaddpgs", new AddPgHandler(dbConfig));
+        server.createContext("/webaddpgs", new AddPgHandler(dbConfig, catalogStore, ids));
 
-        server.createContext("/webviewhotels", new WebViewHotelsHandler(dbConfig)); 
-        server.createContext("/webviewpgs", new WebViewPGsHandler(dbConfig));
+        server.createContext("/webviewhotels", new WebViewHotelsHandler(dbConfig, catalogStore)); 
+        server.createContext("/webviewpgs", new WebViewPGsHandler(dbConfig, catalogStore));
 
-        server.createContext("/webgetPartnerBookings", new WebBookingHandler(dbConfig));
-        server.createContext("/webcancelBooking", new WebBookingHandler(dbConfig));
-        server.createContext("/webupdateBookingStatus", new WebBookingHandler(dbConfig));
+        server.createContext("/webgetPartnerBookings", new WebBookingHandler(dbConfig, bookingStates, reservations));
+        server.createContext("/webcancelBooking", new WebBookingHandler(dbConfig, bookingStates, reservations));
+        server.createContext("/webupdateBookingStatus", new WebBookingHandler(dbConfig, bookingStates, reservations));
         server.createContext("/setNotificationViewed", new SetFinanceNotificationViewedHandler(dbConfig));
 
 
@@ -114,14 +209,22 @@ public class HotelBookingServer {
         server.createContext("/customize", new ProfileHandler(dbConfig));
 
         // ========== PARTNER FINANCE HANDLERS ==========
-        server.createContext("/getPartnerFinance", new GetPartnerFinanceHandler(dbConfig));
+        server.createContext("/getPartnerFinance", new GetPartnerFinanceHandler(dbConfig, queries, partnerLedger));
+        server.createContext("/getPartnerRevenueSeries", new GetPartnerRevenueSeriesHandler(partnerRollups));
         server.createContext("/updateBankDetails", new UpdateBankDetailsHandler(dbConfig));
-        server.createContext("/requestPayout", new RequestPayoutHandler(dbConfig));
+        server.createContext("/requestPayout", new RequestPayoutHandler(dbConfig, ids, partnerLedger));
         server.createContext("/getPartnerTransactions", new GetPartnerTransactionsHandler(dbConfig));
         
 
+        // ======== START EVENT RELAYS ========
+        customerEvents.start();
+        partnerEvents.start();
+        localCustomerEvents.start();
+        localPartnerEvents.start();
+
         // ======== START SERVER ========
-        server.setExecutor(null); // default executor
+        // Requests run on a pool; the default executor handles one request at a time
+        server.setExecutor(Executors.newFixedThreadPool(REQUEST_THREADS));
         server.start();
 
         System.out.println("✅ Server started successfully on port " + port);
@@ -11,6 +11,9 @@ import javax.sql.DataSource;
  */
 public final class DbConfig {
 
+    /** Connections per pool (customer and partner each). */
+    public static final int POOL_SIZE = 20;
+
     // ===== DB URLs =====
     private final String customerDbUrl;
     private final String partnerDbUrl;
@@ -68,7 +71,7 @@ public final class DbConfig {
         config.setDriverClassName("com.mysql.cj.jdbc.Driver");
 
         // Pool tuning (safe defaults)
-        config.setMaximumPoolSize(10);
+        config.setMaximumPoolSize(POOL_SIZE);
         config.setMinimumIdle(2);
         config.setConnectionTimeout(30_000);
         config.setIdleTimeout(600_000);
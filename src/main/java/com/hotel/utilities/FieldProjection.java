@@ -0,0 +1,116 @@
+package com.hotel.utilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Parsed {@code fields=} parameter: which columns a response should carry.
+ *
+ * The value is a comma list of column names and/or preset names, e.g.
+ * {@code fields=card} or {@code fields=card,Description}. Names are matched
+ * case-insensitively. A missing/blank parameter, or the "detail" preset,
+ * means every column (the endpoint's original response).
+ */
+public final class FieldProjection {
+
+    public static final FieldProjection ALL = new FieldProjection(null, true);
+
+    /** Presets for hotel and PG listings (names of the other kind are simply absent). */
+    public static final Map<String, List<String>> LISTING_PRESETS = Map.of(
+            "card", List.of(
+                    "Hotel_ID", "PG_ID", "Partner_ID", "Hotel_Name", "PG_Name", "Hotel_Type", "PG_Type",
+                    "City", "State", "Room_Price", "Rating", "Available_Rooms", "Hotel_Images", "PG_Images"),
+            "detail", List.of());
+
+    /** Presets for booking history rows. */
+    public static final Map<String, List<String>> BOOKING_PRESETS = Map.of(
+            "card", List.of(
+                    "Booking_ID", "Hotel_ID", "Hotel_Name", "Hotel_Type", "Check_In_Date", "Check_Out_Date",
+                    "Guest_Count", "Total_Rooms_Booked", "Final_Payable_Amount", "Booking_Status"),
+            "detail", List.of());
+
+    private final Set<String> fields;   // lower case; null = all
+    private final boolean presetOnly;
+
+    private FieldProjection(Set<String> fields, boolean presetOnly) {
+        this.fields = fields;
+        this.presetOnly = presetOnly;
+    }
+
+    public static FieldProjection parse(String param, Map<String, List<String>> presets) {
+        if (param == null || param.isBlank()) return ALL;
+
+        Set<String> fields = new LinkedHashSet<>();
+        boolean presetOnly = true;
+        for (String token : param.split(",")) {
+            String name = token.trim();
+            if (name.isEmpty()) continue;
+
+            List<String> preset = presets.get(name.toLowerCase(Locale.ROOT));
+            if (preset == null) {
+                fields.add(name.toLowerCase(Locale.ROOT));
+                presetOnly = false;
+            } else if (preset.isEmpty()) {
+                return ALL; // "detail"
+            } else {
+                for (String f : preset) fields.add(f.toLowerCase(Locale.ROOT));
+            }
+        }
+        return fields.isEmpty() ? ALL : new FieldProjection(fields, presetOnly);
+    }
+
+    public boolean isAll() {
+        return fields == null;
+    }
+
+    public boolean includes(String column) {
+        return fields == null || fields.contains(column.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * True when built only from presets, i.e. one of a small, fixed set of
+     * shapes that is worth caching per row.
+     */
+    public boolean isPreset() {
+        return presetOnly;
+    }
+
+    /** Stable identity of this projection, for cache keys. */
+    public String key() {
+        return fields == null ? "*" : String.join(",", new TreeSet<>(fields));
+    }
+
+    /**
+     * SQL select list: the known columns that were asked for, plus the ones the
+     * handler itself needs, in known-column order. Only names from known are
+     * ever returned, so the result is safe to splice into SQL. "*" for ALL.
+     */
+    public String selectList(List<String> known, String... required) {
+        if (fields == null) return "*";
+
+        Set<String> needed = new LinkedHashSet<>(fields);
+        for (String r : required) needed.add(r.toLowerCase(Locale.ROOT));
+
+        List<String> columns = new ArrayList<>();
+        for (String c : known) {
+            if (needed.contains(c.toLowerCase(Locale.ROOT))) columns.add(c);
+        }
+        return columns.isEmpty() ? known.get(0) : String.join(", ", columns);
+    }
+
+    /** Copy of row with only the projected keys, order preserved. */
+    public <V> Map<String, V> apply(Map<String, V> row) {
+        if (fields == null) return row;
+        Map<String, V> out = new LinkedHashMap<>();
+        for (Map.Entry<String, V> e : row.entrySet()) {
+            if (includes(e.getKey())) out.put(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+}
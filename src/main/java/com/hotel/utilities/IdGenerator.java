@@ -0,0 +1,204 @@
+package com.hotel.utilities;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique, time-ordered ids for bookings, users, partners, listings and
+ * payouts, without a database round trip per id.
+ *
+ * Snowflake layout in a positive long: 41 bits of milliseconds since
+ * 2024-01-01 (good for ~69 years), 10 bits of node id, 12 bits of sequence
+ * (4096 ids per millisecond per node). The hot path is a single CAS on the
+ * last (millisecond, sequence) pair. When a millisecond's sequence runs out,
+ * or the clock steps back, ids borrow from the next millisecond rather than
+ * wait, so they never repeat and never go backwards on a node.
+ *
+ * Each server leases its node id from the id_nodes table at start-up and
+ * heartbeats it; a slot whose owner stopped heartbeating can be taken over.
+ * The lease also remembers the last millisecond handed out, so a restart
+ * with a slow clock continues after it.
+ *
+ * Ids are written as the existing prefix plus 13 upper-case base-36 digits,
+ * so they stay short and sort by creation time, e.g. BKG0A1B2C3D4E5F6.
+ */
+public final class IdGenerator {
+
+    public static final String BOOKING = "BKG";
+    public static final String TRANSACTION = "TXN";
+    public static final String USER = "CR";
+    public static final String PARTNER = "PR";
+    public static final String HOTEL = "HOTEL_";
+    public static final String PG = "PG_";
+    public static final String PAYOUT = "TX_";
+
+    static final long EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODES = 1 << NODE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int ENCODED_LENGTH = 13; // Long.MAX_VALUE in base 36
+
+    private static final long HEARTBEAT_SECONDS = 30;
+    private static final long LEASE_EXPIRY_SECONDS = 120;
+
+    private final DbConfig dbConfig;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    private final ScheduledExecutorService heartbeat;
+
+    /** (millis since epoch << SEQUENCE_BITS) | sequence of the last id. */
+    private final AtomicLong last = new AtomicLong();
+    private volatile long nodeId = -1;
+
+    public IdGenerator(DbConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "id-node-lease");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    /** Leases a node id and keeps the lease alive. Must run before the first id. */
+    public void start() throws SQLException {
+        ensureSchema();
+        lease();
+        heartbeat.scheduleWithFixedDelay(this::renewQuietly, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        heartbeat.shutdownNow();
+    }
+
+    // ===== Ids =====
+
+    /** A new id with the given prefix. */
+    public String next(String prefix) {
+        return prefix + encode(nextLong());
+    }
+
+    public long nextLong() {
+        long node = nodeId;
+        if (node < 0) throw new IllegalStateException("IdGenerator has not been started");
+
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        while (true) {
+            long prev = last.get();
+            long millis = prev >>> SEQUENCE_BITS;
+            long seq = prev & SEQUENCE_MASK;
+            if (now > millis) {
+                millis = now;
+                seq = 0;
+            } else if (++seq > SEQUENCE_MASK) {
+                millis++; // this millisecond is used up: borrow the next one
+                seq = 0;
+            }
+            long next = (millis << SEQUENCE_BITS) | seq;
+            if (last.compareAndSet(prev, next)) {
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | seq;
+            }
+        }
+    }
+
+    static String encode(long id) {
+        String s = Long.toString(id, 36).toUpperCase(Locale.ROOT);
+        return "0".repeat(ENCODED_LENGTH - s.length()) + s;
+    }
+
+    // ===== Node lease =====
+
+    private void ensureSchema() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS id_nodes (
+                  node_id      INT          NOT NULL PRIMARY KEY,
+                  owner        VARCHAR(128) NOT NULL,
+                  last_millis  BIGINT       NOT NULL,
+                  heartbeat_at TIMESTAMP    NOT NULL
+                )
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+        }
+    }
+
+    /** Takes the first free or abandoned node id. */
+    private void lease() throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp stale = new Timestamp(System.currentTimeMillis() - LEASE_EXPIRY_SECONDS * 1000);
+
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            for (int node = 0; node < MAX_NODES; node++) {
+                try (PreparedStatement ins = conn.prepareStatement(
+                        "INSERT IGNORE INTO id_nodes (node_id, owner, last_millis, heartbeat_at) VALUES (?, ?, 0, ?)")) {
+                    ins.setInt(1, node);
+                    ins.setString(2, owner);
+                    ins.setTimestamp(3, now);
+                    if (ins.executeUpdate() == 1) {
+                        takeOver(node, 0);
+                        return;
+                    }
+                }
+                try (PreparedStatement upd = conn.prepareStatement(
+                        "UPDATE id_nodes SET owner = ?, heartbeat_at = ? WHERE node_id = ? AND heartbeat_at < ?")) {
+                    upd.setString(1, owner);
+                    upd.setTimestamp(2, now);
+                    upd.setInt(3, node);
+                    upd.setTimestamp(4, stale);
+                    if (upd.executeUpdate() == 1) {
+                        takeOver(node, lastMillis(conn, node));
+                        return;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("No free id node among " + MAX_NODES);
+    }
+
+    private void takeOver(int node, long lastMillis) {
+        // Never reuse a millisecond the previous owner of this node may have used
+        long floor = lastMillis + 1;
+        last.accumulateAndGet(floor << SEQUENCE_BITS, Math::max);
+        nodeId = node;
+        System.out.println("IdGenerator leased node " + node);
+    }
+
+    private static long lastMillis(Connection conn, int node) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT last_millis FROM id_nodes WHERE node_id = ?")) {
+            ps.setInt(1, node);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void renewQuietly() {
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "UPDATE id_nodes SET heartbeat_at = ?, last_millis = ? WHERE node_id = ? AND owner = ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            ps.setLong(2, last.get() >>> SEQUENCE_BITS);
+            ps.setLong(3, nodeId);
+            ps.setString(4, owner);
+            if (ps.executeUpdate() == 0) {
+                // Lost the lease (e.g. a long pause): move to a fresh node id
+                lease();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.hotel.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes POSTs carrying an Idempotency-Key header safe to retry.
+ *
+ * The first request for a (scope, key) runs and its response is recorded;
+ * a retry gets the recorded response instead of running again. Duplicates
+ * arriving while the first is still running wait for it on this node
+ * ({@link SingleFlight}, per key), and get a 409 if it is running on another
+ * node. Recent responses are kept in a small striped LRU in front of the
+ * idempotency_keys table, so no lock is shared between unrelated keys.
+ *
+ * The action commits its transaction through {@link Claim#commit}, which
+ * records the response in that same transaction (idempotency_keys lives in
+ * the customer DB too), so a booking or payment can never be committed with
+ * its key left pending for a retry to take over. Responses the action did
+ * not commit work for (a 409 after rollback) are recorded afterwards.
+ *
+ * Each claim stores a fresh token in its row, and every later write for the
+ * key (commit, record, forget) matches on it, so a request whose key was
+ * taken over as stale cannot overwrite or delete its successor's row.
+ *
+ * Reusing a key with a different request body is rejected with 422. 5xx
+ * responses and exceptions are not recorded, so the client can retry them.
+ */
+public final class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    /** A response as recorded and replayed. */
+    public record Response(int status, String body) {
+    }
+
+    private record Recorded(String requestHash, Response response) {
+    }
+
+    /** The work behind an idempotent request. */
+    @FunctionalInterface
+    public interface Action {
+        Response run(Claim claim) throws Exception;
+    }
+
+    /** Handed to the action; commits its transaction together with the recorded response. */
+    public static final class Claim {
+        private final String scope;
+        private final String key;
+        private final String token;
+        private Response recorded;
+
+        private Claim(String scope, String key, String token) {
+            this.scope = scope;
+            this.key = key;
+            this.token = token;
+        }
+
+        /** Records response on conn, inside the caller's transaction, then commits it. */
+        public void commit(Connection conn, Response response) throws SQLException {
+            if (key != null) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE idempotency_keys SET status_code = ?, response_body = ? "
+                                + "WHERE scope = ? AND idem_key = ? AND status_code = 0 AND claim_token = ?")) {
+                    ps.setInt(1, response.status());
+                    ps.setString(2, response.body());
+                    ps.setString(3, scope);
+                    ps.setString(4, key);
+                    ps.setString(5, token);
+                    if (ps.executeUpdate() != 1) {
+                        // Taken over by a retry that believed this request dead; let it win
+                        throw new SQLException("Idempotency-Key " + key + " is no longer held by this request");
+                    }
+                }
+            }
+            conn.commit();
+            recorded = response;
+        }
+    }
+
+    private static final Response IN_PROGRESS =
+            new Response(409, "{\"error\":\"A request with this Idempotency-Key is still in progress\"}");
+
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final long WAIT_MILLIS = 30_000;
+    private static final long PENDING_TAKEOVER_SECONDS = 120; // a leader that died mid-request
+    private static final long RETENTION_HOURS = 24;
+    private static final int STRIPES = 16;
+    private static final int ENTRIES_PER_STRIPE = 1024;
+
+    private final DbConfig dbConfig;
+    private final SingleFlight<String, Recorded> inFlight = new SingleFlight<>();
+    private final LruStripe[] recent = new LruStripe[STRIPES];
+    private final ScheduledExecutorService purger;
+
+    public IdempotencyStore(DbConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        for (int i = 0; i < STRIPES; i++) recent[i] = new LruStripe();
+        this.purger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "idempotency-purge");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Creates (or upgrades) the table if needed and starts purging old keys. */
+    public void start() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS idempotency_keys (
+                  scope         VARCHAR(32)  NOT NULL,
+                  idem_key      VARCHAR(128) NOT NULL,
+                  request_hash  CHAR(64)     NOT NULL,
+                  claim_token   CHAR(36)     NOT NULL DEFAULT '',
+                  status_code   INT          NOT NULL DEFAULT 0,
+                  response_body MEDIUMTEXT   NULL,
+                  created_at    TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                  PRIMARY KEY (scope, idem_key),
+                  KEY idx_idempotency_keys_created (created_at)
+                )
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+            SchemaUtil.ensureColumn(conn, "idempotency_keys", "claim_token",
+                    "CHAR(36) NOT NULL DEFAULT '' AFTER request_hash");
+        }
+        purger.scheduleWithFixedDelay(this::purgeQuietly, 1, 1, TimeUnit.HOURS);
+    }
+
+    /**
+     * Runs action once per (scope, key). A null or blank key means the client
+     * did not ask for idempotency and the action simply runs.
+     */
+    public Response execute(String scope, String key, String requestBody, Action action) throws Exception {
+        if (key == null || key.isBlank()) return action.run(new Claim(scope, null, null));
+        if (key.length() > MAX_KEY_LENGTH) {
+            return new Response(400, "{\"error\":\"Idempotency-Key is too long\"}");
+        }
+
+        String id = scope + '\n' + key;
+        String hash = sha256(requestBody == null ? "" : requestBody);
+
+        Recorded cached = stripe(id).get(id);
+        if (cached != null) return replay(cached, hash);
+
+        Recorded result;
+        try {
+            result = inFlight.run(id, WAIT_MILLIS, () -> runOnce(scope, key, id, hash, action));
+        } catch (TimeoutException e) {
+            return IN_PROGRESS;
+        }
+        // Waiters share the leader's result, so their own body is checked against it here
+        return replay(result, hash);
+    }
+
+    private Recorded runOnce(String scope, String key, String id, String hash, Action action) throws Exception {
+        Recorded cached = stripe(id).get(id);
+        if (cached != null) return cached;
+
+        String token = UUID.randomUUID().toString();
+        Recorded stored = claim(scope, key, hash, token);
+        if (stored != null) {
+            if (stored.response() == null) return new Recorded(hash, IN_PROGRESS);
+            stripe(id).put(id, stored);
+            return stored;
+        }
+
+        Claim claim = new Claim(scope, key, token);
+        Response response;
+        try {
+            response = action.run(claim);
+        } catch (Exception | Error e) {
+            if (claim.recorded == null) forget(scope, key, token);
+            throw e;
+        }
+        if (claim.recorded != null) {
+            // Recorded with the work; a failure after the commit still replays what was committed
+            Recorded recorded = new Recorded(hash, claim.recorded);
+            stripe(id).put(id, recorded);
+            return recorded;
+        }
+        Recorded recorded = new Recorded(hash, response);
+        if (response.status() >= 500) {
+            forget(scope, key, token);
+        } else if (record(scope, key, token, response)) {
+            // Nothing was committed for this response, so recording it separately is safe
+            stripe(id).put(id, recorded);
+        }
+        return recorded;
+    }
+
+    // ===== Table =====
+
+    /**
+     * Inserts a pending row for the key, stamped with token. Returns null if
+     * this caller now owns the key, otherwise what is stored for it (response
+     * null = still pending).
+     */
+    private Recorded claim(String scope, String key, String hash, String token) throws SQLException {
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO idempotency_keys (scope, idem_key, request_hash, claim_token) VALUES (?, ?, ?, ?)")) {
+                ps.setString(1, scope);
+                ps.setString(2, key);
+                ps.setString(3, hash);
+                ps.setString(4, token);
+                ps.executeUpdate();
+                return null;
+            } catch (SQLIntegrityConstraintViolationException duplicate) {
+                // Someone has (or had) this key
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT request_hash, status_code, response_body FROM idempotency_keys WHERE scope = ? AND idem_key = ?")) {
+                ps.setString(1, scope);
+                ps.setString(2, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return claim(scope, key, hash, token); // purged in between
+                    int status = rs.getInt("status_code");
+                    Response response = status == 0 ? null : new Response(status, rs.getString("response_body"));
+                    if (response != null) return new Recorded(rs.getString("request_hash"), response);
+                }
+            }
+
+            // Pending: take it over only if its owner has been gone for a while
+            try (PreparedStatement ps = conn.prepareStatement("""
+                    UPDATE idempotency_keys SET request_hash = ?, claim_token = ?, created_at = CURRENT_TIMESTAMP
+                    WHERE scope = ? AND idem_key = ? AND status_code = 0 AND created_at < ?
+                    """)) {
+                ps.setString(1, hash);
+                ps.setString(2, token);
+                ps.setString(3, scope);
+                ps.setString(4, key);
+                ps.setTimestamp(5, new Timestamp(System.currentTimeMillis() - PENDING_TAKEOVER_SECONDS * 1000));
+                return ps.executeUpdate() == 1 ? null : new Recorded(hash, null);
+            }
+        }
+    }
+
+    /** Records response if the key is still this request's claim; false if it was taken over. */
+    private boolean record(String scope, String key, String token, Response response) throws SQLException {
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "UPDATE idempotency_keys SET status_code = ?, response_body = ? "
+                             + "WHERE scope = ? AND idem_key = ? AND status_code = 0 AND claim_token = ?")) {
+            ps.setInt(1, response.status());
+            ps.setString(2, response.body());
+            ps.setString(3, scope);
+            ps.setString(4, key);
+            ps.setString(5, token);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /** Releases the key, unless it has since been taken over by another request. */
+    private void forget(String scope, String key, String token) {
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "DELETE FROM idempotency_keys WHERE scope = ? AND idem_key = ? AND status_code = 0 AND claim_token = ?")) {
+            ps.setString(1, scope);
+            ps.setString(2, key);
+            ps.setString(3, token);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace(); // the pending row is taken over after PENDING_TAKEOVER_SECONDS
+        }
+    }
+
+    private void purgeQuietly() {
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM idempotency_keys WHERE created_at < ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(RETENTION_HOURS)));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ===== Helpers =====
+
+    private static Response replay(Recorded recorded, String hash) {
+        if (!recorded.requestHash().equals(hash)) {
+            return new Response(422, "{\"error\":\"Idempotency-Key was already used for a different request\"}");
+        }
+        return recorded.response();
+    }
+
+    private LruStripe stripe(String id) {
+        return recent[(id.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private static String sha256(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class LruStripe {
+        private final LinkedHashMap<String, Recorded> map = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Recorded> eldest) {
+                return size() > ENTRIES_PER_STRIPE;
+            }
+        };
+
+        synchronized Recorded get(String id) {
+            return map.get(id);
+        }
+
+        synchronized void put(String id, Recorded recorded) {
+            map.put(id, recorded);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hotel.utilities;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import javax.sql.DataSource;
+
+/**
+ * A time-limited, database-backed lease so a background job runs on one
+ * server at a time.
+ *
+ * {@link #tryAcquire} takes the lease if it is free, expired or already
+ * ours, and extends it; the holder calls it again between units of work to
+ * keep it. If the holder dies, another server takes over once the lease
+ * runs out. The lease is advisory: work done under it should still be safe
+ * to repeat (conditional updates), since a paused holder can outlive it.
+ */
+public final class JobLease {
+
+    private final DataSource dataSource;
+    private final String jobName;
+    private final long leaseSeconds;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    public JobLease(DataSource dataSource, String jobName, long leaseSeconds) {
+        this.dataSource = dataSource;
+        this.jobName = jobName;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    public static void ensureSchema(DataSource dataSource) throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS job_leases (
+                  job_name    VARCHAR(64)  NOT NULL PRIMARY KEY,
+                  owner       VARCHAR(128) NOT NULL,
+                  lease_until TIMESTAMP    NOT NULL
+                )
+                """;
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+        }
+    }
+
+    /** Takes or extends the lease. Returns false if another server holds it. */
+    public boolean tryAcquire() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ins = conn.prepareStatement("""
+                    INSERT IGNORE INTO job_leases (job_name, owner, lease_until)
+                    VALUES (?, ?, CURRENT_TIMESTAMP + INTERVAL ? SECOND)
+                    """)) {
+                ins.setString(1, jobName);
+                ins.setString(2, owner);
+                ins.setLong(3, leaseSeconds);
+                if (ins.executeUpdate() == 1) return true;
+            }
+            try (PreparedStatement upd = conn.prepareStatement("""
+                    UPDATE job_leases SET owner = ?, lease_until = CURRENT_TIMESTAMP + INTERVAL ? SECOND
+                    WHERE job_name = ? AND (owner = ? OR lease_until < CURRENT_TIMESTAMP)
+                    """)) {
+                upd.setString(1, owner);
+                upd.setLong(2, leaseSeconds);
+                upd.setString(3, jobName);
+                upd.setString(4, owner);
+                return upd.executeUpdate() == 1;
+            }
+        }
+    }
+
+    /** Gives the lease up early so another server need not wait for it to expire. */
+    public void release() {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "UPDATE job_leases SET lease_until = CURRENT_TIMESTAMP WHERE job_name = ? AND owner = ?")) {
+            ps.setString(1, jobName);
+            ps.setString(2, owner);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.hotel.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import javax.sql.DataSource;
+import org.json.JSONObject;
+
+/**
+ * The outbox_events table: a change and the event describing it are
+ * written in the same transaction, so an event exists if and only if its
+ * change committed. {@link OutboxRelay} tails the table and hands events to
+ * subscribers. Each database (customer, partner) has its own outbox, next
+ * to the tables whose changes it records.
+ *
+ * Delivery is at least once. A consumer whose effect is not naturally
+ * idempotent (adding to a counter) calls {@link #markApplied} in the
+ * transaction that applies the event, and skips the event if it was already
+ * applied.
+ */
+public final class Outbox {
+
+    public static final String BOOKING = "booking";
+    public static final String PAYMENT = "payment";
+    public static final String PAYOUT = "payout";
+
+    private Outbox() {
+    }
+
+    /** One committed event. Events with the same key are delivered in id order. */
+    public record Event(long id, String aggregateType, String aggregateKey, String eventType,
+                        JSONObject payload, long createdAtMillis) {
+    }
+
+    public static void ensureSchema(DataSource dataSource) throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS outbox_events (
+                  id             BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                  aggregate_type VARCHAR(32)  NOT NULL,
+                  aggregate_key  VARCHAR(64)  NOT NULL,
+                  event_type     VARCHAR(32)  NOT NULL,
+                  payload        TEXT         NOT NULL,
+                  created_at     TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                  KEY idx_outbox_events_created (created_at)
+                )
+                """;
+        String offsets = """
+                CREATE TABLE IF NOT EXISTS outbox_offsets (
+                  relay_name VARCHAR(64) NOT NULL PRIMARY KEY,
+                  last_id    BIGINT      NOT NULL
+                )
+                """;
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+            st.execute(offsets);
+        }
+    }
+
+    /** Records an event on the caller's connection, inside its transaction. */
+    public static void append(Connection conn, String aggregateType, String aggregateKey, String eventType,
+                              JSONObject payload) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO outbox_events (aggregate_type, aggregate_key, event_type, payload) VALUES (?, ?, ?, ?)")) {
+            ps.setString(1, aggregateType);
+            ps.setString(2, aggregateKey);
+            ps.setString(3, eventType);
+            ps.setString(4, payload.toString());
+            ps.executeUpdate();
+        }
+    }
+
+    // ===== Consumer side =====
+
+    /** Creates the applied_events table in the database where a consumer writes. */
+    public static void ensureAppliedSchema(DataSource dataSource) throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS applied_events (
+                  consumer   VARCHAR(64) NOT NULL,
+                  event_id   BIGINT      NOT NULL,
+                  applied_at TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                  PRIMARY KEY (consumer, event_id),
+                  KEY idx_applied_events_applied (applied_at)
+                )
+                """;
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+        }
+    }
+
+    /**
+     * Marks an event as applied by a consumer, in the caller's transaction.
+     * Returns false if it already was, in which case the caller skips it.
+     * The consumer name should include the source outbox, since ids are
+     * per database.
+     */
+    public static boolean markApplied(Connection conn, String consumer, long eventId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT IGNORE INTO applied_events (consumer, event_id) VALUES (?, ?)")) {
+            ps.setString(1, consumer);
+            ps.setLong(2, eventId);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /** Forgets applied markers older than the outbox keeps events. */
+    public static void purgeApplied(DataSource dataSource, String consumer, long olderThanMillis) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "DELETE FROM applied_events WHERE consumer = ? AND applied_at < ? LIMIT 10000")) {
+            ps.setString(1, consumer);
+            ps.setTimestamp(2, new Timestamp(olderThanMillis));
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.hotel.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.json.JSONObject;
+
+/**
+ * Tails one database's {@link Outbox} and delivers each event to the
+ * subscribers for its aggregate type, at least once.
+ *
+ * Events are read in id order in batches. Each aggregate key is pinned to one
+ * of a few single-threaded lanes, so events for the same booking (or
+ * partner) are handled one at a time in order while different keys run in
+ * parallel. If a subscriber throws, later events for that key wait and the
+ * cursor stops before the failed event, so it and anything after it are
+ * delivered again on the next poll. Subscribers must therefore be
+ * idempotent.
+ *
+ * Auto-increment ids become visible out of order when transactions commit
+ * out of order, so the relay does not move past a missing id until it has
+ * waited GAP_WAIT_MILLIS for it and no transaction that was already open
+ * when the gap appeared is still running (after that it was a rollback).
+ * A gap is never held for longer than GAP_GIVE_UP_MILLIS, and every skipped
+ * id is logged.
+ *
+ * A shared relay runs on one server at a time under a {@link JobLease} and
+ * keeps its cursor in outbox_offsets; use it for derived tables. A local
+ * relay runs on every server from the events committed after start-up,
+ * with its cursor in memory; use it for per-server state such as caches
+ * and open connections.
+ */
+public final class OutboxRelay {
+
+    public interface Subscriber {
+        void handle(Outbox.Event event) throws Exception;
+    }
+
+    private static final int BATCH_SIZE = 200;
+    private static final int DEFAULT_LANES = 8;
+    private static final long POLL_MILLIS = 250;
+    private static final long GAP_WAIT_MILLIS = 10_000;
+    private static final long GAP_GIVE_UP_MILLIS = 5 * 60_000;
+    private static final long LEASE_SECONDS = 30;
+    private static final int MAX_ATTEMPTS = 20;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final long RETENTION_DAYS = 7;
+
+    private final DataSource dataSource;
+    private final String name;
+    private final boolean shared;
+    private final JobLease lease;
+    private final Map<String, List<Subscriber>> subscribers = new HashMap<>();
+    private final ExecutorService[] lanes;
+    private final ScheduledExecutorService poller;
+
+    private long cursor;
+    private volatile long startedAfter = Long.MAX_VALUE;
+    private long gapAt = -1;
+    private long gapSince;
+    private long lastPurge;
+    private int failedPolls;
+    private long retryAfter;
+    private final Map<Long, Integer> attempts = new HashMap<>();
+
+    public OutboxRelay(DataSource dataSource, String name, boolean shared) {
+        this(dataSource, name, shared, DEFAULT_LANES);
+    }
+
+    /** With one lane every event is delivered in id order, not just those of one key. */
+    public OutboxRelay(DataSource dataSource, String name, boolean shared, int laneCount) {
+        this.dataSource = dataSource;
+        this.name = name;
+        this.shared = shared;
+        this.lease = shared ? new JobLease(dataSource, "outbox-relay:" + name, LEASE_SECONDS) : null;
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String thread = "outbox-" + name + "-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, thread);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Registers a subscriber for an aggregate type. Call before {@link #start}. */
+    public synchronized void subscribe(String aggregateType, Subscriber subscriber) {
+        subscribers.computeIfAbsent(aggregateType, k -> new CopyOnWriteArrayList<>()).add(subscriber);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * For a local relay, the last id before it started: every later event is
+     * delivered by it. Long.MAX_VALUE before start and for shared relays.
+     */
+    public long startedAfter() {
+        return startedAfter;
+    }
+
+    // ===== Lifecycle =====
+
+    public void start() throws SQLException {
+        Outbox.ensureSchema(dataSource);
+        if (shared) {
+            JobLease.ensureSchema(dataSource);
+        } else {
+            cursor = maxId();
+            startedAfter = cursor;
+        }
+        poller.scheduleWithFixedDelay(this::pollQuietly, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        poller.shutdownNow();
+        for (ExecutorService lane : lanes) lane.shutdownNow();
+        if (lease != null) lease.release();
+    }
+
+    // ===== Polling =====
+
+    private void pollQuietly() {
+        try {
+            // Keep going while full batches are delivered
+            while (poll()) {
+                if (Thread.currentThread().isInterrupted()) return;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** One batch; returns true if a full batch was delivered and more may be waiting. */
+    private boolean poll() throws SQLException, InterruptedException {
+        if (System.currentTimeMillis() < retryAfter) return false;
+        if (shared) {
+            if (!lease.tryAcquire()) return false;
+            cursor = storedCursor(); // another server may have moved it while it held the lease
+            purgeIfDue();
+        }
+
+        List<Outbox.Event> events = read(cursor);
+        List<Outbox.Event> ready = new ArrayList<>(events.size());
+        long expected = cursor + 1;
+        for (Outbox.Event e : events) {
+            if (e.id() != expected && !gapExpired(expected, e.id())) break;
+            ready.add(e);
+            expected = e.id() + 1;
+        }
+        if (ready.isEmpty()) return false;
+
+        long delivered = dispatch(ready);
+        if (delivered < ready.get(ready.size() - 1).id()) {
+            // Back off so a subscriber's outage is not burned through MAX_ATTEMPTS in seconds
+            failedPolls = Math.min(failedPolls + 1, 16);
+            retryAfter = System.currentTimeMillis() + Math.min(POLL_MILLIS << failedPolls, MAX_BACKOFF_MILLIS);
+        } else {
+            failedPolls = 0;
+        }
+        if (delivered > cursor) {
+            cursor = delivered;
+            if (shared) storeCursor(delivered);
+        }
+        return ready.size() == BATCH_SIZE && delivered == ready.get(ready.size() - 1).id();
+    }
+
+    /** True once the relay has waited long enough for the ids from expected up to next to appear. */
+    private boolean gapExpired(long expected, long next) {
+        long now = System.currentTimeMillis();
+        if (gapAt != expected) {
+            gapAt = expected;
+            gapSince = now;
+        }
+        long waited = now - gapSince;
+        if (waited < GAP_WAIT_MILLIS) return false;
+        if (waited < GAP_GIVE_UP_MILLIS && olderTransactionOpen(waited)) return false;
+        System.err.println("OutboxRelay " + name + ": skipping missing event ids " + expected
+                + (next - 1 > expected ? "-" + (next - 1) : "") + " after waiting " + waited + " ms");
+        return true;
+    }
+
+    /**
+     * True if a transaction that began before the gap was seen is still open:
+     * it may hold the missing ids and commit them yet. If the server will not
+     * say (innodb_trx needs the PROCESS privilege), the wait alone decides.
+     */
+    private boolean olderTransactionOpen(long waitedMillis) {
+        String sql = "SELECT 1 FROM information_schema.innodb_trx WHERE trx_started <= NOW() - INTERVAL ? SECOND LIMIT 1";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            // trx_started has whole seconds; one less errs towards waiting
+            ps.setLong(1, Math.max(waitedMillis / 1000 - 1, 0));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("OutboxRelay " + name + ": cannot check open transactions: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Hands the events to their lanes and waits for them. Returns the id up
+     * to which every event was handled.
+     */
+    private long dispatch(List<Outbox.Event> events) throws InterruptedException {
+        Map<Integer, List<Outbox.Event>> byLane = new HashMap<>();
+        for (Outbox.Event e : events) {
+            byLane.computeIfAbsent(Math.floorMod(e.aggregateKey().hashCode(), lanes.length), k -> new ArrayList<>()).add(e);
+        }
+
+        List<Future<Long>> futures = new ArrayList<>();
+        for (Map.Entry<Integer, List<Outbox.Event>> lane : byLane.entrySet()) {
+            futures.add(lanes[lane.getKey()].submit(() -> runLane(lane.getValue())));
+        }
+
+        long delivered = events.get(events.size() - 1).id();
+        for (Future<Long> f : futures) {
+            try {
+                Long failedAt = f.get();
+                if (failedAt != null) delivered = Math.min(delivered, failedAt - 1);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return delivered;
+    }
+
+    /** Handles one lane's events in order; returns the first failed id, or null. */
+    private Long runLane(List<Outbox.Event> events) {
+        Set<String> blockedKeys = new HashSet<>();
+        Long firstFailed = null;
+        for (Outbox.Event e : events) {
+            if (blockedKeys.contains(e.aggregateKey())) continue;
+            if (!deliver(e)) {
+                blockedKeys.add(e.aggregateKey());
+                if (firstFailed == null) firstFailed = e.id();
+            }
+        }
+        return firstFailed;
+    }
+
+    private boolean deliver(Outbox.Event event) {
+        List<Subscriber> targets;
+        synchronized (this) {
+            targets = subscribers.getOrDefault(event.aggregateType(), List.of());
+        }
+        try {
+            for (Subscriber s : targets) s.handle(event);
+            synchronized (attempts) {
+                attempts.remove(event.id());
+            }
+            return true;
+        } catch (Exception e) {
+            int tries;
+            synchronized (attempts) {
+                tries = attempts.merge(event.id(), 1, Integer::sum);
+            }
+            if (tries >= MAX_ATTEMPTS) {
+                // A poison event must not stop every later event for good
+                System.err.println("OutboxRelay " + name + ": giving up on event " + event.id() + " after " + tries + " attempts");
+                e.printStackTrace();
+                synchronized (attempts) {
+                    attempts.remove(event.id());
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // ===== Table =====
+
+    private List<Outbox.Event> read(long after) throws SQLException {
+        String sql = """
+                SELECT id, aggregate_type, aggregate_key, event_type, payload, created_at
+                FROM outbox_events WHERE id > ? ORDER BY id LIMIT ?
+                """;
+        List<Outbox.Event> events = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, after);
+            ps.setInt(2, BATCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    events.add(new Outbox.Event(
+                            rs.getLong("id"),
+                            rs.getString("aggregate_type"),
+                            rs.getString("aggregate_key"),
+                            rs.getString("event_type"),
+                            new JSONObject(rs.getString("payload")),
+                            rs.getTimestamp("created_at").getTime()));
+                }
+            }
+        }
+        return events;
+    }
+
+    private long maxId() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM outbox_events")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private long storedCursor() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ins = conn.prepareStatement(
+                    "INSERT IGNORE INTO outbox_offsets (relay_name, last_id) VALUES (?, 0)")) {
+                ins.setString(1, name);
+                ins.executeUpdate();
+            }
+            return deliveredThrough(conn, name);
+        }
+    }
+
+    /**
+     * How far a shared relay has delivered, read on the caller's connection
+     * (so inside its snapshot). 0 if it has not delivered anything yet.
+     */
+    public static long deliveredThrough(Connection conn, String relayName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT last_id FROM outbox_offsets WHERE relay_name = ?")) {
+            ps.setString(1, relayName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void storeCursor(long lastId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "UPDATE outbox_offsets SET last_id = ? WHERE relay_name = ? AND last_id < ?")) {
+            ps.setLong(1, lastId);
+            ps.setString(2, name);
+            ps.setLong(3, lastId);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Deletes events past retention that every shared relay has delivered, at most hourly. */
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < TimeUnit.HOURS.toMillis(1)) return;
+        lastPurge = now;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     """
+                     DELETE FROM outbox_events
+                     WHERE id <= (SELECT MIN(last_id) FROM outbox_offsets) AND created_at < ?
+                     LIMIT 10000
+                     """)) {
+            ps.setTimestamp(1, new Timestamp(now - TimeUnit.DAYS.toMillis(RETENTION_DAYS)));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hotel.utilities;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Runs a request's independent queries at the same time, each on its own
+ * pooled connection, so the request waits for the slowest query rather than
+ * the sum of them.
+ *
+ * The queries of one {@link Scope} share a deadline. The first failure, or
+ * the deadline passing, fails the whole scope: the other queries are
+ * cancelled and their connections aborted (the pool replaces them), so
+ * nothing keeps running for a request that has already answered.
+ *
+ * <pre>
+ * try (ParallelQueries.Scope q = queries.open(2000)) {
+ *     ParallelQueries.Slot&lt;Row&gt; a = q.fork("finance", partnerDs, conn -> ...);
+ *     ParallelQueries.Slot&lt;List&lt;Row&gt;&gt; b = q.fork("bookings", customerDs, conn -> ...);
+ *     q.join();
+ *     use(a.get(), b.get());
+ * }
+ * </pre>
+ *
+ * A query must not need another query's result; dependent steps belong in
+ * one query or after {@link Scope#join}.
+ *
+ * At most maxPerDataSource queries hold a connection of the same pool at
+ * once, across all scopes, so a burst of fan-out requests queues here (up to
+ * its deadline) instead of taking every connection the rest of the server
+ * needs.
+ */
+public final class ParallelQueries {
+
+    @FunctionalInterface
+    public interface Query<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    /** A query's result, readable after {@link Scope#join} returned normally. */
+    public static final class Slot<T> {
+        private volatile T value;
+        private volatile boolean done;
+
+        public T get() {
+            if (!done) throw new IllegalStateException("Query has not completed");
+            return value;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int maxPerDataSource;
+    private final Map<DataSource, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public ParallelQueries(int threads, int maxPerDataSource) {
+        this.maxPerDataSource = maxPerDataSource;
+        AtomicInteger n = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "parallel-query-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Scope open(long timeoutMillis) {
+        return new Scope(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public final class Scope implements AutoCloseable {
+        private final long deadline;
+        private final TaskScope<Object> tasks = new TaskScope<>(executor);
+        private final Map<String, Slot<Object>> slots = new HashMap<>();
+        private final Set<Connection> inUse = ConcurrentHashMap.newKeySet();
+
+        private Scope(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> Slot<T> fork(String name, DataSource dataSource, Query<T> query) {
+            if (slots.containsKey(name)) throw new IllegalArgumentException("Duplicate query name " + name);
+            Slot<Object> slot = new Slot<>();
+            slots.put(name, slot);
+
+            Semaphore pool = permits.computeIfAbsent(dataSource, ds -> new Semaphore(maxPerDataSource, true));
+            tasks.fork(name, remainingMillis(), () -> {
+                if (!pool.tryAcquire(remainingMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new SQLTimeoutException("Query " + name + " got no connection before the deadline");
+                }
+                try (Connection conn = dataSource.getConnection()) {
+                    inUse.add(conn);
+                    try {
+                        return query.run(conn);
+                    } finally {
+                        inUse.remove(conn);
+                    }
+                } finally {
+                    pool.release();
+                }
+            });
+            return (Slot<T>) slot;
+        }
+
+        private long remainingMillis() {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        }
+
+        /** Waits for every query; throws the first failure, or SQLTimeoutException at the deadline. */
+        public void join() throws SQLException, InterruptedException {
+            TaskScope.Result<Object> r;
+            while ((r = tasks.next()) != null) {
+                if (r.ok()) {
+                    Slot<Object> slot = slots.get(r.name());
+                    slot.value = r.value();
+                    slot.done = true;
+                    continue;
+                }
+                close();
+                if (r.timedOut()) throw new SQLTimeoutException("Query " + r.name() + " ran past the deadline");
+                Throwable e = r.error();
+                if (e instanceof SQLException sql) throw sql;
+                if (e instanceof RuntimeException re) throw re;
+                if (e instanceof Error err) throw err;
+                throw new SQLException("Query " + r.name() + " failed", e);
+            }
+        }
+
+        /** Cancels whatever is still running. */
+        @Override
+        public void close() {
+            tasks.close();
+            // Interrupting a thread does not stop a JDBC read; aborting its connection does
+            for (Connection conn : inUse) {
+                try {
+                    conn.abort(Runnable::run);
+                } catch (SQLException | RuntimeException ignored) {
+                }
+            }
+            inUse.clear();
+        }
+    }
+}
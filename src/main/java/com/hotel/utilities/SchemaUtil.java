@@ -0,0 +1,72 @@
+package com.hotel.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Start-up schema helpers for the tables this server depends on.
+ */
+public final class SchemaUtil {
+
+    private SchemaUtil() {
+    }
+
+    /**
+     * Creates an index unless one with that name already exists on the table.
+     * Names and columns come from code, never from requests.
+     *
+     * @return true if the index was created
+     */
+    public static boolean ensureIndex(Connection conn, String table, String indexName, String... columns)
+            throws SQLException {
+        String check = """
+                SELECT 1 FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?
+                LIMIT 1
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(check)) {
+            ps.setString(1, table);
+            ps.setString(2, indexName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return false;
+            }
+        }
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE INDEX " + indexName + " ON " + table + " (" + String.join(", ", columns) + ")");
+        }
+        System.out.println("Created index " + indexName + " on " + table);
+        return true;
+    }
+
+    /**
+     * Adds a column unless the table already has it, for tables created by an
+     * older CREATE TABLE IF NOT EXISTS. Names and definitions come from code.
+     *
+     * @return true if the column was added
+     */
+    public static boolean ensureColumn(Connection conn, String table, String column, String definition)
+            throws SQLException {
+        String check = """
+                SELECT 1 FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?
+                LIMIT 1
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(check)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return false;
+            }
+        }
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+        System.out.println("Added column " + column + " to " + table);
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package com.hotel.utilities;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collapses concurrent calls for the same key into one computation.
+ *
+ * The first caller for a key (the leader) runs the task on its own thread;
+ * callers arriving while it runs wait for, and share, its result. Nothing is
+ * cached: once the leader finishes the key is free again. If the task throws,
+ * every waiter gets the same exception. Waiters give up after maxWaitMillis
+ * with a {@link TimeoutException}; the leader is never interrupted by them.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V run(K key, long maxWaitMillis, Callable<V> task) throws Exception {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+
+        if (leader != null) {
+            try {
+                return leader.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception ex) throw ex;
+                if (cause instanceof Error err) throw err;
+                throw e;
+            }
+        }
+
+        try {
+            V value = task.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.hotel.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A group of named subtasks forked together, each with its own time limit.
+ *
+ * Results are taken with {@link #next()} in the order the subtasks finish;
+ * a subtask that runs past its limit is cancelled and comes back as timed
+ * out instead. Closing the scope cancels whatever is still running, so no
+ * subtask outlives the request that forked it:
+ *
+ * <pre>
+ * try (TaskScope&lt;byte[]&gt; scope = new TaskScope&lt;&gt;(executor)) {
+ *     scope.fork("wallet", 1500, () -> ...);
+ *     for (TaskScope.Result&lt;byte[]&gt; r; (r = scope.next()) != null; ) { ... }
+ * }
+ * </pre>
+ */
+public final class TaskScope<T> implements AutoCloseable {
+
+    /** Outcome of one subtask: exactly one of value/error is set unless it timed out. */
+    public record Result<T>(String name, T value, Throwable error, boolean timedOut) {
+        public boolean ok() {
+            return error == null && !timedOut;
+        }
+    }
+
+    private final Executor executor;
+    private final List<Part> pending = new ArrayList<>();
+    private final LinkedBlockingQueue<Part> finished = new LinkedBlockingQueue<>();
+
+    public TaskScope(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void fork(String name, long timeoutMillis, Callable<T> task) {
+        Part part = new Part(name, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), task);
+        pending.add(part);
+        executor.execute(part);
+    }
+
+    /**
+     * The next subtask to finish or time out, or null once every forked
+     * subtask has been returned.
+     */
+    public Result<T> next() throws InterruptedException {
+        while (!pending.isEmpty()) {
+            Part soonest = pending.get(0);
+            for (Part p : pending) {
+                if (p.deadline < soonest.deadline) soonest = p;
+            }
+
+            Part done = finished.poll(Math.max(0, soonest.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (done != null) {
+                if (!pending.remove(done)) continue; // already reported as timed out
+                return done.result();
+            }
+
+            if (System.nanoTime() - soonest.deadline >= 0) {
+                pending.remove(soonest);
+                soonest.cancel(true);
+                return new Result<>(soonest.name, null, null, true);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        for (Part p : pending) p.cancel(true);
+        pending.clear();
+    }
+
+    private final class Part extends FutureTask<T> {
+        final String name;
+        final long deadline;
+
+        Part(String name, long deadline, Callable<T> task) {
+            super(task);
+            this.name = name;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void done() {
+            finished.offer(this);
+        }
+
+        Result<T> result() {
+            try {
+                return new Result<>(name, get(), null, false);
+            } catch (ExecutionException e) {
+                return new Result<>(name, null, e.getCause(), false);
+            } catch (CancellationException | InterruptedException e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                return new Result<>(name, null, e, false);
+            }
+        }
+    }
+}
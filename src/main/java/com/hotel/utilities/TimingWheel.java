@@ -0,0 +1,165 @@
+package com.hotel.utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel: schedules keys to expire at a deadline with
+ * O(1) schedule and cancel, however many keys are pending.
+ *
+ * Level 0 has one slot per tick; each level above covers {@code slots}
+ * times the span of the one below. A key goes into the lowest level whose
+ * span reaches its deadline and is moved down ("cascaded") when its slot
+ * comes round, so each key is touched at most once per level. Deadlines
+ * beyond the top level wait in it and are re-placed on each pass.
+ *
+ * Time only moves when {@link #advance} is called; the caller drives it
+ * from a scheduler and acts on the keys it returns. Not tied to wall-clock
+ * time, so it can be driven with any monotonic millisecond clock.
+ */
+public final class TimingWheel<K> {
+
+    private static final class Node<K> {
+        final K key;
+        final long deadlineTick;
+        Node<K> prev;
+        Node<K> next;
+
+        Node(K key, long deadlineTick) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final Node<K>[][] buckets; // sentinel heads of circular lists
+    private final Map<K, Node<K>> pending = new HashMap<>();
+    private long currentTick;
+
+    /**
+     * @param slotsPerLevel rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int slotsPerLevel, int levels, long nowMillis) {
+        if (tickMillis <= 0 || slotsPerLevel < 2 || levels < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel dimensions");
+        }
+        int b = 32 - Integer.numberOfLeadingZeros(slotsPerLevel - 1);
+        if ((long) b * levels > 62) throw new IllegalArgumentException("Timing wheel span too large");
+
+        this.tickMillis = tickMillis;
+        this.bits = b;
+        this.mask = (1 << b) - 1;
+        this.levels = levels;
+        this.buckets = new Node[levels][1 << b];
+        for (Node<K>[] level : buckets) {
+            for (int i = 0; i < level.length; i++) {
+                Node<K> head = new Node<>(null, 0);
+                head.prev = head;
+                head.next = head;
+                level[i] = head;
+            }
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedules a key, replacing any deadline it already had. Returns false
+     * (and schedules nothing) if the deadline has already passed; the caller
+     * should then act on the key right away.
+     */
+    public synchronized boolean schedule(K key, long deadlineMillis) {
+        unlink(pending.remove(key));
+        long deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        if (deadlineTick <= currentTick) return false;
+
+        Node<K> node = new Node<>(key, deadlineTick);
+        pending.put(key, node);
+        place(node);
+        return true;
+    }
+
+    /** Removes a key's deadline. Returns false if it was not scheduled. */
+    public synchronized boolean cancel(K key) {
+        Node<K> node = pending.remove(key);
+        unlink(node);
+        return node != null;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /** Moves time forward to nowMillis and returns the keys whose deadline passed, oldest first. */
+    public synchronized List<K> advance(long nowMillis) {
+        List<K> expired = new ArrayList<>();
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            currentTick++;
+            cascade();
+            Node<K> head = buckets[0][(int) (currentTick & mask)];
+            for (Node<K> n = head.next; n != head; ) {
+                Node<K> next = n.next;
+                unlink(n);
+                pending.remove(n.key);
+                expired.add(n.key);
+                n = next;
+            }
+        }
+        return expired;
+    }
+
+    // ===== Internals (lock held) =====
+
+    /** Re-places the due slot of every level whose lower levels just wrapped. */
+    private void cascade() {
+        for (int level = 1; level < levels; level++) {
+            int shift = bits * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) return;
+
+            Node<K> head = buckets[level][(int) ((currentTick >>> shift) & mask)];
+            Node<K> n = head.next;
+            head.next = head;
+            head.prev = head;
+            while (n != head) {
+                Node<K> next = n.next;
+                place(n);
+                n = next;
+            }
+        }
+    }
+
+    private void place(Node<K> node) {
+        long delta = node.deadlineTick - currentTick;
+        long tick = node.deadlineTick;
+        int level = 0;
+        while (level < levels - 1 && delta >= 1L << (bits * (level + 1))) level++;
+        if (level == levels - 1 && delta >= 1L << (bits * levels)) {
+            // Past the top level's span: park in its last slot and re-place later
+            tick = currentTick + (1L << (bits * levels)) - 1;
+        }
+        if (level == 0 && delta <= 0) {
+            // Cascaded onto the current tick: due now, picked up by advance() this tick
+            tick = currentTick;
+        }
+
+        Node<K> head = buckets[level][(int) ((tick >>> (bits * level)) & mask)];
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    private static <K> void unlink(Node<K> node) {
+        if (node == null || node.prev == null) return;
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+}
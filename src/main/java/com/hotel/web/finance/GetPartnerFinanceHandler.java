@@ -1,6 +1,7 @@
 package com.hotel.web.finance;
 
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.ParallelQueries;
 import com.sun.net.httpserver.*;
 import java.io.*;
 import java.net.URLDecoder;
@@ -12,11 +13,17 @@ import java.util.*;
 public class GetPartnerFinanceHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final ParallelQueries queries;
+	private final PartnerLedger ledger;
 
-    public GetPartnerFinanceHandler(DbConfig dbConfig) {
+    public GetPartnerFinanceHandler(DbConfig dbConfig, ParallelQueries queries, PartnerLedger ledger) {
         this.dbConfig = dbConfig;
+        this.queries = queries;
+        this.ledger = ledger;
     }
 
+    private static final long QUERY_TIMEOUT_MILLIS = 5000;
+
     private static final DecimalFormat df = new DecimalFormat("#.##");
 
     @Override
@@ -52,34 +59,45 @@ public class GetPartnerFinanceHandler implements HttpHandler {
         partnerId = partnerId.trim();
 
         try {
-            // 1) Fetch partner finance row (BANK + commission + paid/pending etc.)
-            Map<String, Object> partnerMap = fetchPartnerFinanceRow(partnerId);
+            // 1) Partner finance row (BANK details etc.), the ledger balances and the partner's
+            //    bookings are independent reads on two databases: run them side by side
+            Map<String, Object> partnerMap;
+            PartnerLedger.Balance balance;
+            BookingAggregation agg;
+            String pid = partnerId;
+            try (ParallelQueries.Scope q = queries.open(QUERY_TIMEOUT_MILLIS)) {
+                ParallelQueries.Slot<Map<String, Object>> finance =
+                        q.fork("finance", dbConfig.getPartnerDataSource(), conn -> fetchPartnerFinanceRow(conn, pid));
+                ParallelQueries.Slot<PartnerLedger.Balance> balances =
+                        q.fork("ledger", dbConfig.getPartnerDataSource(), conn -> ledger.get(conn, pid));
+                ParallelQueries.Slot<BookingAggregation> bookings =
+                        q.fork("bookings", dbConfig.getCustomerDataSource(), conn -> fetchBookings(conn, pid));
+                q.join();
+                partnerMap = finance.get();
+                balance = balances.get();
+                agg = bookings.get();
+            }
             if (partnerMap.isEmpty()) {
                 sendResponse(exchange, 404, "{\"status\":\"error\",\"message\":\"Partner not found\"}");
                 return;
             }
 
-            // 2) Commission percentage MUST come from DB (Partner_Finance.Commission_Percentage).
-            //    If DB returns NULL treat as 0.0 (do NOT use any other hard-coded fallback).
-            double commissionPercent = 0.0;
-            Object cpObj = partnerMap.get("Commission_Percentage");
-            if (cpObj != null) {
-                try { commissionPercent = Double.parseDouble(cpObj.toString()); }
-                catch (Exception ignored) { commissionPercent = 0.0; }
-            }
+            // 2) Commission percentage is the one payouts charge: Partner_Finance.Commission_Percentage,
+            //    or PartnerLedger.FALLBACK_COMMISSION_PERCENT when it is not set.
+            double commissionPercent = balance.commissionPercent();
 
-            // 3) Fetch bookings for partner and compute totals using commissionPercent
-            BookingAggregation agg = fetchBookingsAndCompute(partnerId, commissionPercent);
+            // 3) Per-booking commission/net using commissionPercent
+            applyCommission(agg, commissionPercent);
 
-            // Recognized totals (only COMPLETED bookings)
-            double recognizedRevenue = agg.recognizedRevenue;
-            double provisionalRevenue = agg.provisionalRevenue;
+            // Totals are the ledger's running balances; recognized is COMPLETED only
+            double recognizedRevenue = balance.recognized();
+            double provisionalRevenue = balance.provisional();
 
-            double commissionAmount = recognizedRevenue * commissionPercent / 100.0;
-            double netRevenue = recognizedRevenue - commissionAmount;
+            double commissionAmount = balance.commission();
+            double netRevenue = balance.net();
 
-            double paidPayout = toDouble(partnerMap.getOrDefault("Paid_Payout", 0.0));
-            double pendingPayout = Math.max(0.0, netRevenue - paidPayout);
+            double paidPayout = balance.paid();
+            double pendingPayout = balance.pending();
 
             // 5) Build response
             Map<String, Object> result = new LinkedHashMap<>();
@@ -125,7 +143,7 @@ public class GetPartnerFinanceHandler implements HttpHandler {
     }
 
     // Fetch partner finance row from partner_info.Partner_Finance
-    private Map<String, Object> fetchPartnerFinanceRow(String partnerId) throws Exception {
+    private Map<String, Object> fetchPartnerFinanceRow(Connection conn, String partnerId) throws SQLException {
         Map<String, Object> map = new LinkedHashMap<>();
 
         String sql = """
@@ -137,8 +155,7 @@ public class GetPartnerFinanceHandler implements HttpHandler {
                 WHERE Partner_ID = ?
                 """;
 
-        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, partnerId);
             try (ResultSet rs = ps.executeQuery()) {
@@ -155,8 +172,8 @@ public class GetPartnerFinanceHandler implements HttpHandler {
         return map;
     }
 
-    // Query bookings_info for partner and compute per-booking commission/net and aggregates
-    private BookingAggregation fetchBookingsAndCompute(String partnerId, double commissionPercent) throws Exception {
+    // Query bookings_info for partner and compute aggregates
+    private BookingAggregation fetchBookings(Connection conn, String partnerId) throws SQLException {
         BookingAggregation agg = new BookingAggregation();
 
         // Select relevant columns from bookings_info. Include Total_Price (revenue).
@@ -172,8 +189,7 @@ public class GetPartnerFinanceHandler implements HttpHandler {
                 ORDER BY Check_In_Date DESC
                 """;
 
-        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, partnerId);
             try (ResultSet rs = ps.executeQuery()) {
@@ -189,25 +205,11 @@ public class GetPartnerFinanceHandler implements HttpHandler {
                         if (tpObj != null) totalPrice = Double.parseDouble(tpObj.toString());
                     } catch (Exception ignored) { totalPrice = 0.0; }
 
+                    // Counts only; the revenue totals come from PartnerLedger
                     String status = rs.getString("Booking_Status");
-                    if (status != null) {
-                        if (status.equalsIgnoreCase("CANCELLED")) agg.cancelled++;
-                        else if (status.equalsIgnoreCase("COMPLETED")) {
-                            agg.completed++;
-                            // Recognized revenue only from completed bookings
-                            agg.recognizedRevenue += totalPrice;
-                        } else if (status.equalsIgnoreCase("PENDING") || status.equalsIgnoreCase("CONFIRMED")) {
-                            agg.provisionalCount++;
-                            agg.provisionalRevenue += totalPrice;
-                        } else {
-                            // other statuses treat as provisional (you can refine)
-                            agg.provisionalCount++;
-                            agg.provisionalRevenue += totalPrice;
-                        }
-                    } else {
-                        agg.provisionalCount++;
-                        agg.provisionalRevenue += totalPrice;
-                    }
+                    if ("CANCELLED".equalsIgnoreCase(status)) agg.cancelled++;
+                    else if ("COMPLETED".equalsIgnoreCase(status)) agg.completed++;
+                    else agg.provisionalCount++; // PENDING, CONFIRMED and anything else
 
                     Map<String, Object> booking = new LinkedHashMap<>();
                     // add all selected columns to booking map
@@ -217,15 +219,8 @@ public class GetPartnerFinanceHandler implements HttpHandler {
                         booking.put(colLabel, val != null ? val : "");
                     }
 
-                    // compute commission & net for this booking using commissionPercent from partner table
-                    // We compute per-booking commission/net for visibility; totals only include completed as above.
-                    double commissionAmt = totalPrice * commissionPercent / 100.0;
-                    double netAmt = totalPrice - commissionAmt;
-
-                    booking.put("Commission_Amount", df.format(commissionAmt));
-                    booking.put("Net_Revenue", df.format(netAmt));
-
                     agg.bookings.add(booking);
+                    agg.amounts.add(totalPrice);
                 }
             }
         }
@@ -233,6 +228,19 @@ public class GetPartnerFinanceHandler implements HttpHandler {
         return agg;
     }
 
+    // Per-booking commission/net for visibility, using the partner's commission rate;
+    // the totals are the ledger's.
+    private void applyCommission(BookingAggregation agg, double commissionPercent) {
+        for (int i = 0; i < agg.bookings.size(); i++) {
+            double totalPrice = agg.amounts.get(i);
+            double commissionAmt = totalPrice * commissionPercent / 100.0;
+            double netAmt = totalPrice - commissionAmt;
+
+            agg.bookings.get(i).put("Commission_Amount", df.format(commissionAmt));
+            agg.bookings.get(i).put("Net_Revenue", df.format(netAmt));
+        }
+    }
+
     // Helper to extract partner_id from GET query or POST form
     private String extractPartnerId(HttpExchange exchange) throws IOException {
         if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
@@ -247,13 +255,12 @@ public class GetPartnerFinanceHandler implements HttpHandler {
 
     // Small aggregator class
     private static class BookingAggregation {
-        double recognizedRevenue = 0.0; // sum of completed bookings
-        double provisionalRevenue = 0.0; // sum of pending/confirmed
         int count = 0; // total bookings returned
         int completed = 0;
         int cancelled = 0;
         int provisionalCount = 0;
         List<Map<String, Object>> bookings = new ArrayList<>();
+        List<Double> amounts = new ArrayList<>(); // Original_Amount per booking, same order
     }
 
     // ---------- Helpers ----------
@@ -292,11 +299,6 @@ public class GetPartnerFinanceHandler implements HttpHandler {
         return map;
     }
 
-    private double toDouble(Object o) {
-        if (o == null) return 0.0;
-        try { return Double.parseDouble(o.toString()); } catch (Exception e) { return 0.0; }
-    }
-
     private String escape(String s) {
         if (s == null) return "";
         return s.replace("\\", "\\\\")
@@ -0,0 +1,150 @@
+package com.hotel.web.finance;
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * GET /getPartnerRevenueSeries?partner_id=..&granularity=day|month&from=yyyy-MM-dd&to=yyyy-MM-dd[&hotel_id=..]
+ *
+ * Trend chart data from {@link PartnerRollups}: one point per check-in day
+ * (or month) with bookings, room-nights, gross, commission, net and
+ * cancellations. Days older than the rollups keep come back as month points.
+ */
+public class GetPartnerRevenueSeriesHandler implements HttpHandler {
+
+    private static final int DEFAULT_DAYS = 30;
+    private static final int DEFAULT_MONTHS = 12;
+    private static final int MAX_DAYS = 366;
+    private static final int MAX_MONTHS = 120;
+
+    private final PartnerRollups rollups;
+
+    public GetPartnerRevenueSeriesHandler(PartnerRollups rollups) {
+        this.rollups = rollups;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+
+        if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        Map<String, String> q = queryToMap(exchange.getRequestURI().getRawQuery());
+        String partnerId = q.get("partner_id");
+        if (partnerId == null || partnerId.isBlank()) {
+            sendResponse(exchange, 400, error("partner_id is required"));
+            return;
+        }
+        String hotelId = q.get("hotel_id");
+        if (hotelId != null && hotelId.isBlank()) hotelId = null;
+
+        String granularity = q.getOrDefault("granularity", "day").toLowerCase(Locale.ROOT);
+        boolean monthly;
+        if (granularity.equals("month")) monthly = true;
+        else if (granularity.equals("day")) monthly = false;
+        else {
+            sendResponse(exchange, 400, error("granularity must be day or month"));
+            return;
+        }
+
+        LocalDate from;
+        LocalDate to;
+        try {
+            to = q.containsKey("to") ? LocalDate.parse(q.get("to")) : LocalDate.now();
+            from = q.containsKey("from") ? LocalDate.parse(q.get("from"))
+                    : monthly ? to.minusMonths(DEFAULT_MONTHS - 1).withDayOfMonth(1) : to.minusDays(DEFAULT_DAYS - 1);
+        } catch (DateTimeParseException e) {
+            sendResponse(exchange, 400, error("from and to must be yyyy-MM-dd"));
+            return;
+        }
+        if (from.isAfter(to)) {
+            sendResponse(exchange, 400, error("from must not be after to"));
+            return;
+        }
+        if (monthly ? ChronoUnit.MONTHS.between(from.withDayOfMonth(1), to) >= MAX_MONTHS
+                    : ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            sendResponse(exchange, 400, error("Range too long: at most " + (monthly ? MAX_MONTHS + " months" : MAX_DAYS + " days")));
+            return;
+        }
+
+        try {
+            List<PartnerRollups.Point> points = monthly
+                    ? rollups.monthly(partnerId.trim(), hotelId, from, to)
+                    : rollups.daily(partnerId.trim(), hotelId, from, to);
+
+            JSONArray series = new JSONArray();
+            for (PartnerRollups.Point p : points) {
+                series.put(new JSONObject()
+                        .put("period", p.period().toString())
+                        .put("granularity", p.monthly() ? "month" : "day")
+                        .put("bookings", p.bookings())
+                        .put("room_nights", p.roomNights())
+                        .put("gross", round2(p.gross()))
+                        .put("commission", round2(p.commission()))
+                        .put("net", round2(p.gross() - p.commission()))
+                        .put("cancellations", p.cancellations()));
+            }
+
+            JSONObject result = new JSONObject()
+                    .put("status", "success")
+                    .put("partner_id", partnerId.trim())
+                    .put("granularity", granularity)
+                    .put("from", from.toString())
+                    .put("to", to.toString())
+                    .put("points", series);
+            if (hotelId != null) result.put("hotel_id", hotelId);
+            sendResponse(exchange, 200, result.toString());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendResponse(exchange, 500, error(e.getMessage()));
+        }
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100.0) / 100.0;
+    }
+
+    private String error(String message) {
+        return new JSONObject().put("status", "error").put("message", message == null ? "" : message).toString();
+    }
+
+    private Map<String, String> queryToMap(String query) {
+        Map<String, String> map = new HashMap<>();
+        if (query == null || query.isEmpty()) return map;
+        for (String pair : query.split("&")) {
+            String[] kv = pair.split("=", 2);
+            if (kv.length == 2) {
+                map.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8), URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+            }
+        }
+        return map;
+    }
+
+    private void sendResponse(HttpExchange exchange, int code, String msg) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
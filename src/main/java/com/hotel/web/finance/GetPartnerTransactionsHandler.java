@@ -46,7 +46,14 @@ public class GetPartnerTransactionsHandler implements HttpHandler {
 
         try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
 
-            String sql = "SELECT * FROM Partner_Transactions WHERE Partner_ID=? ORDER BY Transaction_Date DESC";
+            // Read-only; served by idx_partner_transactions_partner_date. Failed payouts are
+            // compensated by PayoutCompensator, not here.
+            String sql = """
+                    SELECT Transaction_ID, Transaction_Date, Total_Amount, Withdrawal_Amount, Balance_Amount,
+                           Status, Transaction_Type, Comments
+                    FROM Partner_Transactions
+                    WHERE Partner_ID=?
+                    ORDER BY Transaction_Date DESC""";
             PreparedStatement stmt = conn.prepareStatement(sql);
             stmt.setString(1, partnerId);
             ResultSet rs = stmt.executeQuery();
@@ -56,10 +63,6 @@ public class GetPartnerTransactionsHandler implements HttpHandler {
                 String status = rs.getString("Status");
                 double withdrawal = rs.getDouble("Withdrawal_Amount");
 
-                if ("Failed".equalsIgnoreCase(status)) {
-                    adjustFinanceForFailed(conn, partnerId, withdrawal);
-                }
-
                 Map<String, Object> obj = new LinkedHashMap<>();
                 obj.put("Transaction_ID", rs.getString("Transaction_ID"));
                 obj.put("Transaction_Date", rs.getString("Transaction_Date"));
@@ -86,27 +89,6 @@ public class GetPartnerTransactionsHandler implements HttpHandler {
         sendResponse(exchange, 200, response);
     }
 
-    // ======================================================================
-    // AUTO REVERSE FINANCE WHEN FAILED
-    // ======================================================================
-    private void adjustFinanceForFailed(Connection conn, String partnerId, double amount) {
-        try {
-            String checkSql =
-                    "UPDATE Partner_Finance " +
-                            "SET Pending_Payout = Pending_Payout + ?, " +
-                            "Paid_Payout = Paid_Payout - ? " +
-                            "WHERE Partner_ID = ? AND Paid_Payout >= ?";
-            PreparedStatement ps = conn.prepareStatement(checkSql);
-            ps.setDouble(1, amount);
-            ps.setDouble(2, amount);
-            ps.setString(3, partnerId);
-            ps.setDouble(4, amount);
-            ps.executeUpdate();
-        } catch (Exception ignored) {
-            ignored.printStackTrace();
-        }
-    }
-
     private String readBody(HttpExchange exchange) throws IOException {
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
@@ -0,0 +1,345 @@
+package com.hotel.web.finance;
+
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.Outbox;
+import com.hotel.utilities.OutboxRelay;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * One partner_ledger row per partner (partner DB) with the running money
+ * balances payouts and the finance page work from:
+ *
+ *   recognized   Original_Amount of COMPLETED bookings
+ *   provisional  Original_Amount of bookings neither completed nor cancelled
+ *   commission   the platform's share of recognized, at the partner's
+ *                commission rate when each booking was recognized
+ *   paid         payouts requested, less failed ones given back
+ *   pending      recognized - commission - paid (generated column)
+ *
+ * Booking events from the customer relay move a booking's amount between
+ * buckets (each event applied once, see {@link Outbox#markApplied}). A
+ * payout adds to paid in the payout's own transaction, and
+ * {@link PayoutCompensator} takes a failed one back out. Reads are a primary
+ * key lookup; nothing sums bookings_info any more.
+ *
+ * The table is seeded once, the same way as PartnerStatsStore: bookings and
+ * the customer outbox are read in one snapshot, and undelivered events the
+ * seed already includes are marked applied.
+ */
+public final class PartnerLedger {
+
+    /** Used when Partner_Finance has no commission rate, as payouts always have. */
+    public static final double FALLBACK_COMMISSION_PERCENT = 15.0;
+
+    private static final String CONSUMER = "partner-ledger:customer";
+    private static final long APPLIED_RETENTION_DAYS = 14;
+
+    private final DbConfig dbConfig;
+    private final String bookingRelay;
+    private volatile boolean seeded;
+    private volatile long lastPurge;
+
+    public record Balance(double recognized, double provisional, double commission, double paid,
+                          double commissionPercent) {
+
+        public double net() {
+            return round2(recognized - commission);
+        }
+
+        /** What the partner can still withdraw. */
+        public double pending() {
+            return Math.max(0.0, round2(recognized - commission - paid));
+        }
+    }
+
+    /** @param bookingRelay name of the shared relay delivering customer-DB booking events */
+    public PartnerLedger(DbConfig dbConfig, String bookingRelay) {
+        this.dbConfig = dbConfig;
+        this.bookingRelay = bookingRelay;
+    }
+
+    // ===== Lifecycle =====
+
+    /** Needs payout_compensations, so runs after {@link PayoutCompensator#start}. */
+    public void start() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS partner_ledger (
+                  partner_id  VARCHAR(64)   NOT NULL PRIMARY KEY,
+                  recognized  DECIMAL(14,2) NOT NULL DEFAULT 0,
+                  provisional DECIMAL(14,2) NOT NULL DEFAULT 0,
+                  commission  DECIMAL(14,2) NOT NULL DEFAULT 0,
+                  paid        DECIMAL(14,2) NOT NULL DEFAULT 0,
+                  pending     DECIMAL(14,2) AS (recognized - commission - paid) STORED,
+                  updated_at  TIMESTAMP     NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                )
+                """;
+        String meta = """
+                CREATE TABLE IF NOT EXISTS partner_ledger_meta (
+                  id     TINYINT NOT NULL PRIMARY KEY,
+                  seeded TINYINT NOT NULL DEFAULT 0
+                )
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+            st.execute(meta);
+        }
+        Outbox.ensureAppliedSchema(dbConfig.getPartnerDataSource());
+        seedIfNeeded();
+    }
+
+    public void subscribe(OutboxRelay customerEvents) {
+        customerEvents.subscribe(Outbox.BOOKING, this::onBookingEvent);
+    }
+
+    // ===== Reads =====
+
+    public Balance get(String partnerId) throws SQLException {
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            return get(conn, partnerId);
+        }
+    }
+
+    /** Reads on a partner-DB connection the caller already holds. */
+    public Balance get(Connection conn, String partnerId) throws SQLException {
+        return read(conn, partnerId, false);
+    }
+
+    /** Reads and locks the partner's balance in the caller's transaction, for a payout. */
+    public Balance lock(Connection conn, String partnerId) throws SQLException {
+        return read(conn, partnerId, true);
+    }
+
+    private static Balance read(Connection conn, String partnerId, boolean forUpdate) throws SQLException {
+        String sql = """
+                SELECT l.recognized, l.provisional, l.commission, l.paid,
+                       IF(COALESCE(f.Commission_Percentage, 0) > 0, f.Commission_Percentage, ?) AS commission_percent
+                FROM (SELECT ? AS partner_id) p
+                LEFT JOIN partner_ledger l ON l.partner_id = p.partner_id
+                LEFT JOIN Partner_Finance f ON f.Partner_ID = p.partner_id
+                """ + (forUpdate ? " FOR UPDATE OF l" : "");
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setDouble(1, FALLBACK_COMMISSION_PERCENT);
+            ps.setString(2, partnerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return new Balance(
+                        rs.getDouble("recognized"),
+                        rs.getDouble("provisional"),
+                        rs.getDouble("commission"),
+                        rs.getDouble("paid"),
+                        rs.getDouble("commission_percent"));
+            }
+        }
+    }
+
+    // ===== Writes =====
+
+    /** Adds to (or, negative, takes from) the partner's paid total in the caller's transaction. */
+    public static void addPaid(Connection conn, String partnerId, double amount) throws SQLException {
+        String sql = """
+                INSERT INTO partner_ledger (partner_id, paid) VALUES (?, ?)
+                ON DUPLICATE KEY UPDATE paid = paid + VALUES(paid)
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, partnerId);
+            ps.setDouble(2, amount);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Moves amounts between buckets; commission follows recognized at the partner's current rate. */
+    private static void addRevenue(Connection conn, String partnerId, double recognized, double provisional)
+            throws SQLException {
+        String sql = """
+                INSERT INTO partner_ledger (partner_id, recognized, provisional, commission)
+                SELECT p.partner_id, ?, ?,
+                       ROUND(? * IF(COALESCE(f.Commission_Percentage, 0) > 0, f.Commission_Percentage, ?) / 100, 2)
+                FROM (SELECT ? AS partner_id) p
+                LEFT JOIN Partner_Finance f ON f.Partner_ID = p.partner_id
+                ON DUPLICATE KEY UPDATE
+                  recognized = recognized + VALUES(recognized),
+                  provisional = provisional + VALUES(provisional),
+                  commission = commission + VALUES(commission)
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setDouble(1, recognized);
+            ps.setDouble(2, provisional);
+            ps.setDouble(3, recognized);
+            ps.setDouble(4, FALLBACK_COMMISSION_PERCENT);
+            ps.setString(5, partnerId);
+            ps.executeUpdate();
+        }
+    }
+
+    // ===== Events =====
+
+    private void onBookingEvent(Outbox.Event event) throws SQLException {
+        seedIfNeeded();
+        JSONObject p = event.payload();
+        JSONObject booking = p.getJSONObject("booking");
+        String partnerId = booking.optString("partner_id", "");
+        String from = "CREATED".equals(event.eventType()) ? null : p.optString("from", null);
+        String to = p.optString("to", null);
+        double amount = booking.optDouble("amount", 0.0);
+        if (partnerId.isBlank() || amount == 0.0 || (from != null && from.equals(to))) return;
+
+        double recognized = 0.0;
+        double provisional = 0.0;
+        if (from != null) {
+            if (isRecognized(from)) recognized -= amount;
+            else if (isProvisional(from)) provisional -= amount;
+        }
+        if (isRecognized(to)) recognized += amount;
+        else if (isProvisional(to)) provisional += amount;
+        if (recognized == 0.0 && provisional == 0.0) return;
+
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (Outbox.markApplied(conn, CONSUMER, event.id())) addRevenue(conn, partnerId, recognized, provisional);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        purgeIfDue();
+    }
+
+    private static boolean isRecognized(String status) {
+        return "COMPLETED".equalsIgnoreCase(status);
+    }
+
+    /** Everything not completed or cancelled, as the finance page has always counted it. */
+    private static boolean isProvisional(String status) {
+        return !isRecognized(status) && !"CANCELLED".equalsIgnoreCase(status);
+    }
+
+    // ===== Seeding =====
+
+    private synchronized void seedIfNeeded() throws SQLException {
+        if (seeded) return;
+
+        try (Connection partnerConn = dbConfig.getPartnerDataSource().getConnection()) {
+            partnerConn.setAutoCommit(false);
+            try {
+                // Serializes seeding across servers; the loser sees seeded = 1
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("INSERT IGNORE INTO partner_ledger_meta (id, seeded) VALUES (1, 0)");
+                    try (ResultSet rs = st.executeQuery("SELECT seeded FROM partner_ledger_meta WHERE id = 1 FOR UPDATE")) {
+                        if (rs.next() && rs.getInt(1) == 1) {
+                            partnerConn.commit();
+                            seeded = true;
+                            return;
+                        }
+                    }
+                }
+
+                Map<String, double[]> revenue = new HashMap<>();
+                List<Long> included = new ArrayList<>();
+                readBookings(revenue, included);
+
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("DELETE FROM partner_ledger");
+                }
+                for (Map.Entry<String, double[]> e : revenue.entrySet()) {
+                    addRevenue(partnerConn, e.getKey(), e.getValue()[0], e.getValue()[1]);
+                }
+                seedPaid(partnerConn);
+                for (long id : included) Outbox.markApplied(partnerConn, CONSUMER, id);
+
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("UPDATE partner_ledger_meta SET seeded = 1 WHERE id = 1");
+                }
+                partnerConn.commit();
+                seeded = true;
+                System.out.println("PartnerLedger: seeded " + revenue.size() + " partners");
+            } catch (SQLException e) {
+                partnerConn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /** {recognized, provisional} by partner and the undelivered booking events they include, from one snapshot. */
+    private void readBookings(Map<String, double[]> revenue, List<Long> included) throws SQLException {
+        String aggregate = """
+                SELECT Partner_ID,
+                       SUM(IF(s = 'COMPLETED', amount, 0)) AS recognized,
+                       SUM(IF(s NOT IN ('COMPLETED', 'CANCELLED'), amount, 0)) AS provisional
+                FROM (SELECT Partner_ID, UPPER(COALESCE(Booking_Status, 'PENDING')) AS s,
+                             COALESCE(Original_Amount, 0) AS amount
+                      FROM bookings_info WHERE Partner_ID IS NOT NULL AND Partner_ID <> '') b
+                GROUP BY Partner_ID
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try {
+                // The first read fixes the snapshot the other two see
+                long delivered = OutboxRelay.deliveredThrough(conn, bookingRelay);
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(aggregate)) {
+                    while (rs.next()) {
+                        revenue.put(rs.getString("Partner_ID"),
+                                new double[] {rs.getDouble("recognized"), rs.getDouble("provisional")});
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id FROM outbox_events WHERE aggregate_type = ? AND id > ?")) {
+                    ps.setString(1, Outbox.BOOKING);
+                    ps.setLong(2, delivered);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) included.add(rs.getLong(1));
+                    }
+                }
+            } finally {
+                conn.rollback(); // read only
+            }
+        }
+    }
+
+    /** Payouts not given back: failed ones count until PayoutCompensator has handled them. */
+    private static void seedPaid(Connection conn) throws SQLException {
+        String sql = """
+                INSERT INTO partner_ledger (partner_id, paid)
+                SELECT t.Partner_ID, SUM(COALESCE(t.Withdrawal_Amount, 0))
+                FROM Partner_Transactions t
+                WHERE t.Transaction_Type = 'PAYOUT' AND t.Partner_ID IS NOT NULL
+                  AND (COALESCE(t.Status, '') <> 'Failed'
+                       OR NOT EXISTS (SELECT 1 FROM payout_compensations c WHERE c.transaction_id = t.Transaction_ID))
+                GROUP BY t.Partner_ID
+                ON DUPLICATE KEY UPDATE paid = VALUES(paid)
+                """;
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate(sql);
+        }
+    }
+
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < TimeUnit.HOURS.toMillis(1)) return;
+        lastPurge = now;
+        try {
+            Outbox.purgeApplied(dbConfig.getPartnerDataSource(), CONSUMER, now - TimeUnit.DAYS.toMillis(APPLIED_RETENTION_DAYS));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,524 @@
+package com.hotel.web.finance;
+
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.JobLease;
+import com.hotel.utilities.Outbox;
+import com.hotel.utilities.OutboxRelay;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * Per-partner trend data (partner DB): partner_rollups holds, for each
+ * (partner, hotel, check-in day), the bookings, room-nights, gross amount,
+ * commission and cancellations of the bookings checking in that day. The
+ * finance time series is a range scan of it instead of bookings_info.
+ *
+ *   bookings, room_nights, gross  bookings not cancelled or failed
+ *   commission                    on COMPLETED bookings, as in PartnerLedger
+ *   cancellations                 CANCELLED bookings
+ *
+ * Booking events from the customer relay take the booking's contribution
+ * off its old bucket and add it to the new one (status, dates or amount
+ * changed), each event applied once. The table is seeded once from a
+ * snapshot, as PartnerLedger is.
+ *
+ * Days older than DAILY_RETENTION_DAYS are compacted into month rows
+ * (granularity 'M', bucket_date the first of the month) by a leased job.
+ * partner_rollups_meta.compacted_before is the boundary: a late event for
+ * an earlier day goes straight to its month row. Event writers read the
+ * boundary under a shared lock and compaction moves it under an exclusive
+ * one, so no event lands in a day row that has just been folded away.
+ */
+public final class PartnerRollups {
+
+    private static final String CONSUMER = "partner-rollups:customer";
+    private static final String JOB_NAME = "partner-rollup-compaction";
+    private static final long APPLIED_RETENTION_DAYS = 14;
+    private static final int DAILY_RETENTION_DAYS = 180;
+    private static final long COMPACT_INTERVAL_HOURS = 6;
+    private static final long LEASE_SECONDS = 300;
+    private static final int MAX_MONTHS_PER_RUN = 24;
+
+    private static final String DAY = "D";
+    private static final String MONTH = "M";
+
+    private final DbConfig dbConfig;
+    private final String bookingRelay;
+    private final JobLease lease;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean seeded;
+    private volatile long lastPurge;
+
+    /** One point of a series; period is the day, or the first of the month. */
+    public record Point(LocalDate period, boolean monthly, int bookings, int roomNights, double gross,
+                        double commission, int cancellations) {
+    }
+
+    /** @param bookingRelay name of the shared relay delivering customer-DB booking events */
+    public PartnerRollups(DbConfig dbConfig, String bookingRelay) {
+        this.dbConfig = dbConfig;
+        this.bookingRelay = bookingRelay;
+        this.lease = new JobLease(dbConfig.getPartnerDataSource(), JOB_NAME, LEASE_SECONDS);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "partner-rollup-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    public void start() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS partner_rollups (
+                  partner_id    VARCHAR(64)   NOT NULL,
+                  bucket_date   DATE          NOT NULL,
+                  granularity   CHAR(1)       NOT NULL,
+                  hotel_id      VARCHAR(64)   NOT NULL,
+                  bookings      INT           NOT NULL DEFAULT 0,
+                  room_nights   INT           NOT NULL DEFAULT 0,
+                  gross         DECIMAL(14,2) NOT NULL DEFAULT 0,
+                  commission    DECIMAL(14,2) NOT NULL DEFAULT 0,
+                  cancellations INT           NOT NULL DEFAULT 0,
+                  PRIMARY KEY (partner_id, bucket_date, granularity, hotel_id),
+                  KEY idx_partner_rollups_granularity_date (granularity, bucket_date)
+                )
+                """;
+        String meta = """
+                CREATE TABLE IF NOT EXISTS partner_rollups_meta (
+                  id               TINYINT NOT NULL PRIMARY KEY,
+                  seeded           TINYINT NOT NULL DEFAULT 0,
+                  compacted_before DATE    NULL
+                )
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+            st.execute(meta);
+            st.executeUpdate("INSERT IGNORE INTO partner_rollups_meta (id, seeded) VALUES (1, 0)");
+        }
+        Outbox.ensureAppliedSchema(dbConfig.getPartnerDataSource());
+        JobLease.ensureSchema(dbConfig.getPartnerDataSource());
+        seedIfNeeded();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, 5, COMPACT_INTERVAL_HOURS * 60, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void subscribe(OutboxRelay customerEvents) {
+        customerEvents.subscribe(Outbox.BOOKING, this::onBookingEvent);
+    }
+
+    // ===== Reads =====
+
+    /**
+     * Daily points from..to (inclusive) for one partner, optionally one hotel.
+     * Days already compacted come back as their month's point.
+     */
+    public List<Point> daily(String partnerId, String hotelId, LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+                SELECT bucket_date, granularity,
+                       SUM(bookings) AS bookings, SUM(room_nights) AS room_nights, SUM(gross) AS gross,
+                       SUM(commission) AS commission, SUM(cancellations) AS cancellations
+                FROM partner_rollups
+                WHERE partner_id = ? AND bucket_date BETWEEN ? AND ?
+                  AND (granularity = 'M' OR bucket_date >= ?)
+                  AND (? IS NULL OR hotel_id = ?)
+                GROUP BY bucket_date, granularity
+                ORDER BY bucket_date, granularity DESC
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, partnerId);
+            ps.setDate(2, Date.valueOf(from.withDayOfMonth(1)));
+            ps.setDate(3, Date.valueOf(to));
+            ps.setDate(4, Date.valueOf(from));
+            ps.setString(5, hotelId);
+            ps.setString(6, hotelId);
+            return points(ps, "bucket_date", true);
+        }
+    }
+
+    /** Monthly points for the months from..to touch, for one partner, optionally one hotel. */
+    public List<Point> monthly(String partnerId, String hotelId, LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+                SELECT DATE_FORMAT(bucket_date, '%Y-%m-01') AS month, 'M' AS granularity,
+                       SUM(bookings) AS bookings, SUM(room_nights) AS room_nights, SUM(gross) AS gross,
+                       SUM(commission) AS commission, SUM(cancellations) AS cancellations
+                FROM partner_rollups
+                WHERE partner_id = ? AND bucket_date BETWEEN ? AND ?
+                  AND (? IS NULL OR hotel_id = ?)
+                GROUP BY month
+                ORDER BY month
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, partnerId);
+            ps.setDate(2, Date.valueOf(from.withDayOfMonth(1)));
+            ps.setDate(3, Date.valueOf(to.withDayOfMonth(to.lengthOfMonth())));
+            ps.setString(4, hotelId);
+            ps.setString(5, hotelId);
+            return points(ps, "month", false);
+        }
+    }
+
+    private static List<Point> points(PreparedStatement ps, String periodColumn, boolean byDay) throws SQLException {
+        List<Point> out = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                out.add(new Point(
+                        LocalDate.parse(rs.getString(periodColumn).substring(0, 10)),
+                        !byDay || MONTH.equals(rs.getString("granularity")),
+                        rs.getInt("bookings"),
+                        rs.getInt("room_nights"),
+                        rs.getDouble("gross"),
+                        rs.getDouble("commission"),
+                        rs.getInt("cancellations")));
+            }
+        }
+        return out;
+    }
+
+    // ===== Events =====
+
+    /** What one booking adds to its bucket. */
+    private record Contribution(String hotelId, LocalDate day, int bookings, int roomNights, double gross,
+                                double recognized, int cancellations) {
+
+        static Contribution of(JSONObject booking, String status) {
+            String day = booking.optString("check_in", "");
+            if (day.length() < 10) return null;
+            boolean cancelled = "CANCELLED".equals(status);
+            boolean live = !cancelled && !"FAILED".equals(status);
+            double amount = booking.optDouble("amount", 0.0);
+            return new Contribution(
+                    booking.optString("hotel_id", ""),
+                    LocalDate.parse(day.substring(0, 10)),
+                    live ? 1 : 0,
+                    live ? booking.optInt("rooms", 0) * booking.optInt("nights", 0) : 0,
+                    live ? amount : 0.0,
+                    "COMPLETED".equals(status) ? amount : 0.0,
+                    cancelled ? 1 : 0);
+        }
+
+        boolean isEmpty() {
+            return bookings == 0 && cancellations == 0 && gross == 0.0 && recognized == 0.0;
+        }
+
+        Contribution negate() {
+            return new Contribution(hotelId, day, -bookings, -roomNights, -gross, -recognized, -cancellations);
+        }
+    }
+
+    private void onBookingEvent(Outbox.Event event) throws SQLException {
+        seedIfNeeded();
+        JSONObject p = event.payload();
+        JSONObject before = p.getJSONObject("booking");
+        String partnerId = before.optString("partner_id", "");
+        if (partnerId.isBlank()) return;
+
+        JSONObject after = afterChange(before, p.optJSONObject("changes"));
+        Contribution removed = "CREATED".equals(event.eventType())
+                ? null : Contribution.of(before, p.optString("from", before.optString("status")));
+        Contribution added = Contribution.of(after, p.optString("to", after.optString("status")));
+        if (removed != null && removed.equals(added)) return; // nothing the rollups count changed
+
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                LocalDate compactedBefore = compactedBefore(conn, false);
+                if (Outbox.markApplied(conn, CONSUMER, event.id())) {
+                    if (removed != null && !removed.isEmpty()) add(conn, partnerId, removed.negate(), compactedBefore);
+                    if (added != null && !added.isEmpty()) add(conn, partnerId, added, compactedBefore);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        purgeIfDue();
+    }
+
+    /** The booking as the transition left it: the snapshot with the columns it set applied. */
+    private static JSONObject afterChange(JSONObject before, JSONObject changes) {
+        JSONObject after = new JSONObject(before.toString());
+        if (changes == null) return after;
+        copy(changes, "Check_In_Date", after, "check_in");
+        copy(changes, "Check_Out_Date", after, "check_out");
+        copy(changes, "Total_Rooms_Booked", after, "rooms");
+        copy(changes, "Total_Days_at_Stay", after, "nights");
+        copy(changes, "Original_Amount", after, "amount");
+        return after;
+    }
+
+    private static void copy(JSONObject changes, String column, JSONObject booking, String field) {
+        if (changes.has(column) && !changes.isNull(column)) booking.put(field, changes.get(column));
+    }
+
+    private static void add(Connection conn, String partnerId, Contribution c, LocalDate compactedBefore)
+            throws SQLException {
+        boolean compacted = compactedBefore != null && c.day().isBefore(compactedBefore);
+        LocalDate bucket = compacted ? c.day().withDayOfMonth(1) : c.day();
+        try (PreparedStatement ps = conn.prepareStatement(UPSERT)) {
+            bind(ps, partnerId, c.hotelId(), bucket, compacted ? MONTH : DAY,
+                    c.bookings(), c.roomNights(), c.gross(), c.recognized(), c.cancellations());
+            ps.executeUpdate();
+        }
+    }
+
+    /** Commission is taken on recognized amounts at the partner's current rate. */
+    private static final String UPSERT = """
+            INSERT INTO partner_rollups
+              (partner_id, bucket_date, granularity, hotel_id, bookings, room_nights, gross, commission, cancellations)
+            SELECT p.partner_id, ?, ?, ?, ?, ?, ?,
+                   ROUND(? * IF(COALESCE(f.Commission_Percentage, 0) > 0, f.Commission_Percentage, ?) / 100, 2), ?
+            FROM (SELECT ? AS partner_id) p
+            LEFT JOIN Partner_Finance f ON f.Partner_ID = p.partner_id
+            ON DUPLICATE KEY UPDATE
+              bookings = bookings + VALUES(bookings),
+              room_nights = room_nights + VALUES(room_nights),
+              gross = gross + VALUES(gross),
+              commission = commission + VALUES(commission),
+              cancellations = cancellations + VALUES(cancellations)
+            """;
+
+    private static void bind(PreparedStatement ps, String partnerId, String hotelId, LocalDate bucket,
+                             String granularity, int bookings, int roomNights, double gross, double recognized,
+                             int cancellations) throws SQLException {
+        ps.setDate(1, Date.valueOf(bucket));
+        ps.setString(2, granularity);
+        ps.setString(3, hotelId == null ? "" : hotelId);
+        ps.setInt(4, bookings);
+        ps.setInt(5, roomNights);
+        ps.setDouble(6, gross);
+        ps.setDouble(7, recognized);
+        ps.setDouble(8, PartnerLedger.FALLBACK_COMMISSION_PERCENT);
+        ps.setInt(9, cancellations);
+        ps.setString(10, partnerId);
+    }
+
+    private static LocalDate compactedBefore(Connection conn, boolean forUpdate) throws SQLException {
+        String sql = "SELECT compacted_before FROM partner_rollups_meta WHERE id = 1"
+                + (forUpdate ? " FOR UPDATE" : " FOR SHARE");
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            if (!rs.next()) return null;
+            Date d = rs.getDate(1);
+            return d == null ? null : d.toLocalDate();
+        }
+    }
+
+    // ===== Compaction =====
+
+    private void compactQuietly() {
+        try {
+            int months = compact();
+            if (months > 0) System.out.println("PartnerRollups: compacted " + months + " months of daily rows");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Folds day rows before the retention window into month rows, oldest month first. */
+    int compact() throws SQLException {
+        LocalDate target = LocalDate.now().minusDays(DAILY_RETENTION_DAYS).withDayOfMonth(1);
+        int months = 0;
+        try {
+            while (months < MAX_MONTHS_PER_RUN && lease.tryAcquire()) {
+                if (!compactOldestMonth(target)) break;
+                months++;
+            }
+        } finally {
+            lease.release();
+        }
+        return months;
+    }
+
+    /** Returns false once no day row before target is left. */
+    private boolean compactOldestMonth(LocalDate target) throws SQLException {
+        String fold = """
+                INSERT INTO partner_rollups
+                  (partner_id, bucket_date, granularity, hotel_id, bookings, room_nights, gross, commission, cancellations)
+                SELECT partner_id, ?, 'M', hotel_id, SUM(bookings), SUM(room_nights), SUM(gross),
+                       SUM(commission), SUM(cancellations)
+                FROM partner_rollups
+                WHERE granularity = 'D' AND bucket_date >= ? AND bucket_date < ?
+                GROUP BY partner_id, hotel_id
+                ON DUPLICATE KEY UPDATE
+                  bookings = bookings + VALUES(bookings),
+                  room_nights = room_nights + VALUES(room_nights),
+                  gross = gross + VALUES(gross),
+                  commission = commission + VALUES(commission),
+                  cancellations = cancellations + VALUES(cancellations)
+                """;
+        String drop = "DELETE FROM partner_rollups WHERE granularity = 'D' AND bucket_date >= ? AND bucket_date < ?";
+
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Holds off event writers until the boundary and the rows move together
+                LocalDate boundary = compactedBefore(conn, true);
+
+                LocalDate oldest = null;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT MIN(bucket_date) FROM partner_rollups WHERE granularity = 'D' AND bucket_date < ?")) {
+                    ps.setDate(1, Date.valueOf(target));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next() && rs.getDate(1) != null) oldest = rs.getDate(1).toLocalDate();
+                    }
+                }
+
+                if (oldest != null) {
+                    LocalDate month = oldest.withDayOfMonth(1);
+                    LocalDate next = month.plusMonths(1);
+                    try (PreparedStatement ps = conn.prepareStatement(fold)) {
+                        ps.setDate(1, Date.valueOf(month));
+                        ps.setDate(2, Date.valueOf(month));
+                        ps.setDate(3, Date.valueOf(next));
+                        ps.executeUpdate();
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement(drop)) {
+                        ps.setDate(1, Date.valueOf(month));
+                        ps.setDate(2, Date.valueOf(next));
+                        ps.executeUpdate();
+                    }
+                    if (boundary == null || boundary.isBefore(next)) setCompactedBefore(conn, next);
+                } else if (boundary == null || boundary.isBefore(target)) {
+                    setCompactedBefore(conn, target);
+                }
+                conn.commit();
+                return oldest != null;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void setCompactedBefore(Connection conn, LocalDate boundary) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE partner_rollups_meta SET compacted_before = ? WHERE id = 1")) {
+            ps.setDate(1, Date.valueOf(boundary));
+            ps.executeUpdate();
+        }
+    }
+
+    // ===== Seeding =====
+
+    private synchronized void seedIfNeeded() throws SQLException {
+        if (seeded) return;
+
+        try (Connection partnerConn = dbConfig.getPartnerDataSource().getConnection()) {
+            partnerConn.setAutoCommit(false);
+            try {
+                // Serializes seeding across servers; the loser sees seeded = 1
+                try (Statement st = partnerConn.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT seeded FROM partner_rollups_meta WHERE id = 1 FOR UPDATE")) {
+                    if (rs.next() && rs.getInt(1) == 1) {
+                        partnerConn.commit();
+                        seeded = true;
+                        return;
+                    }
+                }
+
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("DELETE FROM partner_rollups");
+                    st.executeUpdate("UPDATE partner_rollups_meta SET compacted_before = NULL WHERE id = 1");
+                }
+                List<Long> included = new ArrayList<>();
+                int rows = seedFromBookings(partnerConn, included);
+                for (long id : included) Outbox.markApplied(partnerConn, CONSUMER, id);
+
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("UPDATE partner_rollups_meta SET seeded = 1 WHERE id = 1");
+                }
+                partnerConn.commit();
+                seeded = true;
+                System.out.println("PartnerRollups: seeded " + rows + " daily rows");
+            } catch (SQLException e) {
+                partnerConn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes day rows from one snapshot of bookings_info, and collects the
+     * undelivered booking events that snapshot already includes.
+     */
+    private int seedFromBookings(Connection partnerConn, List<Long> included) throws SQLException {
+        String aggregate = """
+                SELECT Partner_ID, COALESCE(Hotel_ID, '') AS hotel_id, Check_In_Date AS day,
+                       SUM(live) AS bookings,
+                       SUM(IF(live, COALESCE(Total_Rooms_Booked, 0) * COALESCE(Total_Days_at_Stay, 0), 0)) AS room_nights,
+                       SUM(IF(live, COALESCE(Original_Amount, 0), 0)) AS gross,
+                       SUM(IF(s = 'COMPLETED', COALESCE(Original_Amount, 0), 0)) AS recognized,
+                       SUM(s = 'CANCELLED') AS cancellations
+                FROM (SELECT Partner_ID, Hotel_ID, Check_In_Date, Total_Rooms_Booked, Total_Days_at_Stay, Original_Amount,
+                             UPPER(COALESCE(Booking_Status, 'PENDING')) AS s,
+                             UPPER(COALESCE(Booking_Status, 'PENDING')) NOT IN ('CANCELLED', 'FAILED') AS live
+                      FROM bookings_info
+                      WHERE Partner_ID IS NOT NULL AND Partner_ID <> '' AND Check_In_Date IS NOT NULL) b
+                GROUP BY Partner_ID, COALESCE(Hotel_ID, ''), Check_In_Date
+                """;
+        int rows = 0;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try {
+                // The first read fixes the snapshot the other two see
+                long delivered = OutboxRelay.deliveredThrough(conn, bookingRelay);
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(aggregate);
+                     PreparedStatement ps = partnerConn.prepareStatement(UPSERT)) {
+                    while (rs.next()) {
+                        bind(ps, rs.getString("Partner_ID"), rs.getString("hotel_id"),
+                                rs.getDate("day").toLocalDate(), DAY,
+                                rs.getInt("bookings"), rs.getInt("room_nights"), rs.getDouble("gross"),
+                                rs.getDouble("recognized"), rs.getInt("cancellations"));
+                        ps.addBatch();
+                        if (++rows % 500 == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id FROM outbox_events WHERE aggregate_type = ? AND id > ?")) {
+                    ps.setString(1, Outbox.BOOKING);
+                    ps.setLong(2, delivered);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) included.add(rs.getLong(1));
+                    }
+                }
+            } finally {
+                conn.rollback(); // read only
+            }
+        }
+        return rows;
+    }
+
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < TimeUnit.HOURS.toMillis(1)) return;
+        lastPurge = now;
+        try {
+            Outbox.purgeApplied(dbConfig.getPartnerDataSource(), CONSUMER, now - TimeUnit.DAYS.toMillis(APPLIED_RETENTION_DAYS));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.hotel.web.finance;
+
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.JobLease;
+import com.hotel.utilities.Outbox;
+import com.hotel.utilities.SchemaUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * Gives a failed payout's amount back to the partner: the ledger's paid
+ * total, and Partner_Finance's Paid_Payout with it, go down (and
+ * Pending_Payout up) by the transaction's Withdrawal_Amount, once per
+ * transaction.
+ *
+ * Runs on one server at a time (a {@link JobLease}) every minute, in batches
+ * of up to BATCH_SIZE Failed transactions that have no row in
+ * payout_compensations yet. Each transaction's marker row, its ledger and
+ * finance updates and a PAYOUT_FAILED event are written in one
+ * transaction, so a transaction is compensated exactly once however often
+ * the job runs or overlaps with itself.
+ */
+public final class PayoutCompensator {
+
+    private static final String JOB_NAME = "payout-compensation";
+    private static final long INTERVAL_SECONDS = 60;
+    private static final long LEASE_SECONDS = 60;
+    private static final int BATCH_SIZE = 200;
+    private static final int MAX_BATCHES_PER_RUN = 50;
+
+    private record Failed(String transactionId, String partnerId, double amount) {
+    }
+
+    private final DbConfig dbConfig;
+    private final JobLease lease;
+    private final ScheduledExecutorService scheduler;
+
+    public PayoutCompensator(DbConfig dbConfig) {
+        this.dbConfig = dbConfig;
+        this.lease = new JobLease(dbConfig.getPartnerDataSource(), JOB_NAME, LEASE_SECONDS);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payout-compensator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ===== Lifecycle =====
+
+    public void start() throws SQLException {
+        JobLease.ensureSchema(dbConfig.getPartnerDataSource());
+        ensureSchema();
+        scheduler.scheduleWithFixedDelay(this::runQuietly, 10, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void ensureSchema() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS payout_compensations (
+                  transaction_id VARCHAR(64)   NOT NULL PRIMARY KEY,
+                  partner_id     VARCHAR(64)   NOT NULL,
+                  amount         DECIMAL(12,2) NOT NULL,
+                  processed_at   TIMESTAMP     NOT NULL DEFAULT CURRENT_TIMESTAMP
+                )
+                """;
+        // Failed rows from before this job were already compensated by the request path
+        String backfill = """
+                INSERT IGNORE INTO payout_compensations (transaction_id, partner_id, amount)
+                SELECT Transaction_ID, Partner_ID, 0 FROM Partner_Transactions WHERE Status = 'Failed'
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            boolean existed = tableExists(conn, "payout_compensations");
+            st.execute(ddl);
+            if (!existed) st.executeUpdate(backfill);
+
+            SchemaUtil.ensureIndex(conn, "Partner_Transactions", "idx_partner_transactions_status",
+                    "Status", "Transaction_ID");
+            SchemaUtil.ensureIndex(conn, "Partner_Transactions", "idx_partner_transactions_partner_date",
+                    "Partner_ID", "Transaction_Date");
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // ===== Run =====
+
+    private void runQuietly() {
+        try {
+            int compensated = run();
+            if (compensated > 0) System.out.println("PayoutCompensator: compensated " + compensated + " failed payouts");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** One run; returns the number of transactions compensated. */
+    int run() throws SQLException {
+        int total = 0;
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+                if (!lease.tryAcquire()) break;
+                int[] result = compensateBatch();
+                total += result[1];
+                if (result[0] < BATCH_SIZE) break;
+            }
+        } finally {
+            lease.release();
+        }
+        return total;
+    }
+
+    /** Returns {transactions picked, transactions compensated}. */
+    private int[] compensateBatch() throws SQLException {
+        String pick = """
+                SELECT t.Transaction_ID, t.Partner_ID, t.Withdrawal_Amount
+                FROM Partner_Transactions t
+                WHERE t.Status = 'Failed'
+                  AND NOT EXISTS (SELECT 1 FROM payout_compensations c WHERE c.transaction_id = t.Transaction_ID)
+                ORDER BY t.Transaction_ID
+                LIMIT ?
+                """;
+        String mark = "INSERT IGNORE INTO payout_compensations (transaction_id, partner_id, amount) VALUES (?, ?, ?)";
+        String refund = """
+                UPDATE Partner_Finance
+                SET Pending_Payout = COALESCE(Pending_Payout, 0) + ?,
+                    Paid_Payout = GREATEST(COALESCE(Paid_Payout, 0) - ?, 0)
+                WHERE Partner_ID = ?
+                """;
+
+        List<Failed> failed = new ArrayList<>();
+        int compensated = 0;
+
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement(pick)) {
+                    ps.setInt(1, BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            failed.add(new Failed(rs.getString("Transaction_ID"), rs.getString("Partner_ID"),
+                                    rs.getDouble("Withdrawal_Amount")));
+                        }
+                    }
+                }
+
+                try (PreparedStatement markPs = conn.prepareStatement(mark);
+                     PreparedStatement refundPs = conn.prepareStatement(refund)) {
+                    for (Failed f : failed) {
+                        markPs.setString(1, f.transactionId());
+                        markPs.setString(2, f.partnerId());
+                        markPs.setDouble(3, f.amount());
+                        if (markPs.executeUpdate() == 0) continue; // another run got there first
+
+                        refundPs.setDouble(1, f.amount());
+                        refundPs.setDouble(2, f.amount());
+                        refundPs.setString(3, f.partnerId());
+                        refundPs.executeUpdate();
+                        PartnerLedger.addPaid(conn, f.partnerId(), -f.amount());
+
+                        Outbox.append(conn, Outbox.PAYOUT, f.partnerId(), "PAYOUT_FAILED", new JSONObject()
+                                .put("partner_id", f.partnerId())
+                                .put("transaction_id", f.transactionId())
+                                .put("amount", f.amount())
+                                .put("status", "Failed"));
+                        compensated++;
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return new int[] {failed.size(), compensated};
+    }
+}
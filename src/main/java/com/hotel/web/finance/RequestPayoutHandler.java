@@ -1,6 +1,8 @@
 package com.hotel.web.finance;
 
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdGenerator;
+import com.hotel.utilities.Outbox;
 import com.sun.net.httpserver.*;
 import java.io.*;
 import java.net.URLDecoder;
@@ -8,17 +10,21 @@ import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import org.json.JSONObject;
 
 public class RequestPayoutHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final IdGenerator ids;
+	private final PartnerLedger ledger;
 
-    public RequestPayoutHandler(DbConfig dbConfig) {
+    public RequestPayoutHandler(DbConfig dbConfig, IdGenerator ids, PartnerLedger ledger) {
         this.dbConfig = dbConfig;
+        this.ids = ids;
+        this.ledger = ledger;
     }
 
     private static final double MIN_WITHDRAWAL = 5000.0;
-    private static final double FALLBACK_COMMISSION_PERCENT = 15.0;
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
@@ -65,24 +71,17 @@ public class RequestPayoutHandler implements HttpHandler {
         }
 
         Connection finConn = null;
-        Connection bookConn = null;
         boolean oldAutoCommit = true;
 
         try {
 
-            /** 1️⃣ COMPUTE COMPLETED BOOKINGS REVENUE **/
-            bookConn = dbConfig.getCustomerDataSource().getConnection();
-            double totalRevenue = computeTotalRevenueFromBookings(bookConn, partnerId);
-            totalRevenue = round2(totalRevenue);
-
-            /** 2️⃣ FETCH FINANCE ROW WITH LOCK **/
+            /** 1️⃣ FETCH FINANCE ROW WITH LOCK **/
             finConn = dbConfig.getPartnerDataSource().getConnection();
             oldAutoCommit = finConn.getAutoCommit();
             finConn.setAutoCommit(false);
 
-            double commissionPercent = 0;
             String selectSQL =
-                    "SELECT Commission_Percentage, Paid_Payout, Pending_Payout FROM Partner_Finance WHERE Partner_ID=? FOR UPDATE";
+                    "SELECT Partner_ID FROM Partner_Finance WHERE Partner_ID=? FOR UPDATE";
 
             try (PreparedStatement ps = finConn.prepareStatement(selectSQL)) {
                 ps.setString(1, partnerId);
@@ -93,33 +92,35 @@ public class RequestPayoutHandler implements HttpHandler {
                     sendResponse(exchange, 404, "{\"status\":\"error\",\"message\":\"Partner not found\"}");
                     return;
                 }
-
-                commissionPercent = rs.getDouble("Commission_Percentage");
-                if (commissionPercent <= 0)
-                    commissionPercent = FALLBACK_COMMISSION_PERCENT;
             }
 
-            /** Commission & Net revenue **/
-            double commissionAmount = round2(totalRevenue * commissionPercent / 100.0);
-            double netRevenue = round2(totalRevenue - commissionAmount);
+            /** 2️⃣ RUNNING BALANCES FROM THE PARTNER LEDGER (no scan of bookings) **/
+            PartnerLedger.Balance balance = ledger.lock(finConn, partnerId);
+            double totalRevenue = round2(balance.recognized());
+            double commissionPercent = balance.commissionPercent();
+            double netRevenue = balance.net();
+            double available = balance.pending();
 
             requestedAmount = round2(requestedAmount);
 
             /** Compute balance (this is the Balance_Amount that will be stored in Partner_Transactions) **/
-            double balanceAmount = round2(netRevenue - requestedAmount);
+            double balanceAmount = round2(available - requestedAmount);
             if (balanceAmount < 0) balanceAmount = 0.0;
 
-            /** Validate requested amount does not exceed available pending (netRevenue) **/
-            if (requestedAmount > netRevenue) {
+            /** Validate requested amount does not exceed what is still unpaid **/
+            if (requestedAmount > available) {
                 finConn.rollback();
                 sendResponse(exchange, 200,
-                        "{\"status\":\"error\",\"message\":\"Requested amount exceeds available payout (" + netRevenue + ")\"}");
+                        "{\"status\":\"error\",\"message\":\"Requested amount exceeds available payout (" + available + ")\"}");
                 return;
             }
 
-            /** 3️⃣ UPDATE FINANCE TABLE — mapping explicitly as you requested:
+            PartnerLedger.addPaid(finConn, partnerId, requestedAmount);
+            double paidTotal = round2(balance.paid() + requestedAmount);
+
+            /** 3️⃣ UPDATE FINANCE TABLE — a copy of the ledger for older readers:
                  Pending_Payout = Balance_Amount (from transaction)
-                 Paid_Payout    = Withdrawal_Amount (requestedAmount for THIS transaction)
+                 Paid_Payout    = everything paid out so far, this transaction included
                  Also update Total_Revenue, Net_Revenue, Commission_Percentage, Last_Payout_Date **/
             String updateFinanceSQL = """
                     UPDATE Partner_Finance
@@ -139,14 +140,14 @@ public class RequestPayoutHandler implements HttpHandler {
                 upd.setDouble(2, commissionPercent);                // Commission_Percentage
                 upd.setDouble(3, netRevenue);                       // Net_Revenue
                 upd.setDouble(4, balanceAmount);                    // Pending_Payout <- Balance_Amount
-                upd.setDouble(5, requestedAmount);                  // Paid_Payout    <- Withdrawal_Amount (this tx)
+                upd.setDouble(5, paidTotal);                        // Paid_Payout    <- ledger paid
                 upd.setDate(6, txDate);                             // Last_Payout_Date <- Transaction_Date
                 upd.setString(7, partnerId);
                 upd.executeUpdate();
             }
 
             /** 4️⃣ INSERT TRANSACTION **/
-            String txId = "TX_" + System.currentTimeMillis();
+            String txId = ids.next(IdGenerator.PAYOUT);
 
             String insert = """
                     INSERT INTO Partner_Transactions
@@ -167,29 +168,13 @@ public class RequestPayoutHandler implements HttpHandler {
                 ins.setString(9, comments);
                 ins.executeUpdate();
             }
-
-            /** 5️⃣ HANDLE IF STATUS LATER BECOMES FAILED
-             * This rollback logic will:
-             *  - add the transaction's Withdrawal_Amount back to Partner_Finance.Pending_Payout
-             *  - subtract Withdrawal_Amount from Partner_Finance.Paid_Payout
-             *  - set Partner_Transactions.Withdrawal_Amount = 0
-             *
-             * We update rows for this partner where the transaction status is 'Failed'.
-             */
-            String failureSQL = """
-                    UPDATE Partner_Finance F
-                    JOIN Partner_Transactions T ON F.Partner_ID = T.Partner_ID
-                    SET
-                        F.Pending_Payout = F.Pending_Payout + T.Withdrawal_Amount,
-                        F.Paid_Payout = F.Paid_Payout - T.Withdrawal_Amount,
-                        T.Withdrawal_Amount = 0
-                    WHERE T.Status = 'Failed' AND T.Partner_ID = ?
-                    """;
-
-            try (PreparedStatement ps = finConn.prepareStatement(failureSQL)) {
-                ps.setString(1, partnerId);
-                ps.executeUpdate();
-            }
+            Outbox.append(finConn, Outbox.PAYOUT, partnerId, "PAYOUT_REQUESTED", new JSONObject()
+                    .put("partner_id", partnerId)
+                    .put("transaction_id", txId)
+                    .put("amount", requestedAmount)
+                    .put("balance", balanceAmount)
+                    .put("net_revenue", netRevenue)
+                    .put("status", "Requested"));
 
             finConn.commit();
 
@@ -202,24 +187,11 @@ public class RequestPayoutHandler implements HttpHandler {
             sendResponse(exchange, 500, "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}");
         } finally {
             try { if (finConn != null) { finConn.setAutoCommit(oldAutoCommit); finConn.close(); }} catch (Exception ignored) {}
-            try { if (bookConn != null) bookConn.close(); } catch (Exception ignored) {}
         }
     }
 
     /** Helpers **/
 
-    private double computeTotalRevenueFromBookings(Connection conn, String partnerId) throws Exception {
-        String sql = """
-            SELECT SUM(Original_Amount) AS total
-            FROM bookings_info
-            WHERE Partner_ID=? AND Booking_Status='COMPLETED'""";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, partnerId);
-            ResultSet rs = ps.executeQuery();
-            return rs.next() ? rs.getDouble("total") : 0.0;
-        }
-    }
-
     private double round2(double v) { return Math.round(v * 100.0) / 100.0; }
 
     private String readBody(HttpExchange exchange) throws IOException {
@@ -1,6 +1,9 @@
 package com.hotel.web.partner;
 
+import com.hotel.booking.ReservationEngine;
+import com.hotel.search.CatalogStore;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdGenerator;
 import com.sun.net.httpserver.*;
 import java.io.*;
 import java.net.URLDecoder;
@@ -13,9 +16,15 @@ import org.json.*;
 public class AddHotelsHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final CatalogStore catalog;
+	private final ReservationEngine reservations;
+	private final IdGenerator ids;
 
-    public AddHotelsHandler(DbConfig dbConfig) {
+    public AddHotelsHandler(DbConfig dbConfig, CatalogStore catalog, ReservationEngine reservations, IdGenerator ids) {
         this.dbConfig = dbConfig;
+        this.catalog = catalog;
+        this.reservations = reservations;
+        this.ids = ids;
     }
 
     @Override
@@ -40,7 +49,7 @@ public class AddHotelsHandler implements HttpHandler {
         boolean isUpdate = hotelId != null && !hotelId.trim().isEmpty() && hotelExists(hotelId);
 
         if (!isUpdate) {
-            hotelId = "HOTEL_" + System.currentTimeMillis();
+            hotelId = ids.next(IdGenerator.HOTEL);
         }
 
         try {
@@ -73,6 +82,9 @@ public class AddHotelsHandler implements HttpHandler {
             boolean success = isUpdate ? updateHotelInDB(hotelId, params) : addHotelToDB(hotelId, params);
 
             if (success) {
+                // Rooms already on sale follow the new count; new hotels are seeded on first booking
+                if (isUpdate) reservations.resize(hotelId, Integer.parseInt(params.getOrDefault("total_rooms", "0")));
+                catalog.invalidate();
                 String msg = isUpdate ? "Hotel updated successfully!" : "Hotel added successfully!";
                 sendResponse(exchange, 200, "{\"status\":\"success\",\"message\":\"" + msg + "\"}");
             } else {
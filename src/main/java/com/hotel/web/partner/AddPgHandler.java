@@ -1,6 +1,8 @@
 package com.hotel.web.partner;
 
+import com.hotel.search.CatalogStore;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdGenerator;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.json.JSONArray;
@@ -17,9 +19,13 @@ import java.util.*;
 public class AddPgHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final CatalogStore catalog;
+	private final IdGenerator ids;
 
-    public AddPgHandler(DbConfig dbConfig) {
+    public AddPgHandler(DbConfig dbConfig, CatalogStore catalog, IdGenerator ids) {
         this.dbConfig = dbConfig;
+        this.catalog = catalog;
+        this.ids = ids;
     }
 
     @Override
@@ -58,7 +64,7 @@ public class AddPgHandler implements HttpHandler {
                     // pg_id may be provided for update; if not, we'll generate one (but we need it to save images).
                     String pgId = params.getOrDefault("pg_id", "").trim();
                     if (pgId.isEmpty()) {
-                        pgId = "PG_" + System.currentTimeMillis();
+                        pgId = ids.next(IdGenerator.PG);
                         params.put("pg_id", pgId);
                     }
 
@@ -107,13 +113,14 @@ public class AddPgHandler implements HttpHandler {
             isUpdate = pgExists(incomingPgId);
         } else {
             // generate new PG_ID
-            incomingPgId = "PG_" + System.currentTimeMillis();
+            incomingPgId = ids.next(IdGenerator.PG);
             params.put("pg_id", incomingPgId);
         }
 
         try {
             boolean success = isUpdate ? updatePGInDB(incomingPgId, params) : addPGToDB(incomingPgId, params);
             if (success) {
+                catalog.invalidate();
                 String msg = isUpdate ? "PG updated successfully!" : "PG added successfully!";
                 sendResponse(exchange, 200, "{\"status\":\"success\",\"message\":\"" + escapeJson(msg) + "\"}");
             } else {
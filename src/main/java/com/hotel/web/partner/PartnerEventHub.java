@@ -0,0 +1,437 @@
+package com.hotel.web.partner;
+
+import com.hotel.utilities.Outbox;
+import com.hotel.utilities.OutboxRelay;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+
+/**
+ * Server-Sent Events for the partner web app: GET /api/partner/{id}/events
+ * pushes "booking" and "payout" events as they commit, so the app refreshes
+ * its dashboard on change instead of polling it.
+ *
+ * A stream costs no thread while idle. The handler sends the headers and
+ * returns, leaving the exchange open; frames are written later by a small
+ * writer pool, one frame at a time per stream, and a heartbeat comment goes
+ * out every HEARTBEAT_SECONDS so proxies keep the connection and dead
+ * clients are found. A client that stops reading is dropped once
+ * MAX_QUEUED_FRAMES are waiting for it, or once a write to it has been
+ * blocked for WRITE_TIMEOUT_SECONDS. The blocked writer cannot be
+ * interrupted, so its connection's socket is closed underneath it, which
+ * fails the write and frees the thread. That needs the JDK server's
+ * internals (--add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED, set
+ * in the jar manifest); without them the pool gets a thread in place of the
+ * blocked one, up to MAX_WRITER_THREADS, until the write returns.
+ *
+ * Events come from local (every server, in id order) relays over the
+ * customer and partner outboxes. A frame's id is "customerId:partnerId", the
+ * last outbox ids delivered for that partner, so a reconnect with
+ * Last-Event-ID gets what it missed from a short per-partner buffer on any
+ * server. If the buffer no longer reaches back that far, or the server
+ * started after the client's last event, the client is sent a "reset" event
+ * and should reload the dashboard.
+ */
+public final class PartnerEventHub {
+
+    private static final long HEARTBEAT_SECONDS = 25;
+    private static final long RETRY_MILLIS = 5000;
+    private static final int BUFFERED_EVENTS_PER_PARTNER = 64;
+    private static final long BUFFER_IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_QUEUED_FRAMES = 256;
+    private static final int WRITER_THREADS = 4;
+    private static final int MAX_WRITER_THREADS = 64;
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
+    private static final long WRITE_CHECK_SECONDS = 2;
+
+    /** One event as buffered for replay; the ids are the partner's newest at that point. */
+    private record Frame(long customerId, long partnerId, boolean fromCustomer, String type, String data) {
+        boolean newerThan(long[] seen) {
+            return fromCustomer ? customerId > seen[0] : partnerId > seen[1];
+        }
+
+        String text() {
+            return "id: " + customerId + ":" + partnerId + "\nevent: " + type + "\ndata: " + data + "\n\n";
+        }
+    }
+
+    /** Recent events of one partner, and the ids of the newest. */
+    private static final class Buffer {
+        final ArrayDeque<Frame> frames = new ArrayDeque<>();
+        long customerId;
+        long partnerId;
+        long droppedCustomerId; // ids of the newest frame pushed out of the buffer
+        long droppedPartnerId;
+        long touchedAt = System.currentTimeMillis();
+    }
+
+    private final Map<String, Set<Stream>> streams = new ConcurrentHashMap<>();
+    private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor writers;
+    private boolean writersCapped; // logged once each time the pool reaches MAX_WRITER_THREADS
+    private final ScheduledExecutorService heartbeat;
+    private OutboxRelay customerEvents;
+    private OutboxRelay partnerEvents;
+
+    public PartnerEventHub() {
+        AtomicInteger n = new AtomicInteger();
+        this.writers = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "partner-events-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "partner-events-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Subscribes to local (per-server, single-lane) relays over the two outboxes. */
+    public void subscribe(OutboxRelay localCustomerEvents, OutboxRelay localPartnerEvents) {
+        this.customerEvents = localCustomerEvents;
+        this.partnerEvents = localPartnerEvents;
+        localCustomerEvents.subscribe(Outbox.BOOKING, this::onBookingEvent);
+        localPartnerEvents.subscribe(Outbox.PAYOUT, this::onPayoutEvent);
+    }
+
+    public void start() {
+        heartbeat.scheduleWithFixedDelay(this::beat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        heartbeat.scheduleWithFixedDelay(this::checkWrites, WRITE_CHECK_SECONDS, WRITE_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        heartbeat.shutdownNow();
+        writers.shutdownNow();
+        streams.values().forEach(set -> set.forEach(Stream::drop));
+    }
+
+    public int openStreams() {
+        return streams.values().stream().mapToInt(Set::size).sum();
+    }
+
+    // ===== Streams =====
+
+    /**
+     * Starts a stream on the exchange and returns at once; the exchange stays
+     * open until the client goes away. lastEventId may be null.
+     */
+    public void open(HttpExchange exchange, String partnerId, String lastEventId) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+        exchange.sendResponseHeaders(200, 0);
+
+        Stream stream = new Stream(partnerId, exchange);
+        List<String> first = new ArrayList<>();
+        first.add("retry: " + RETRY_MILLIS + "\n\n");
+
+        // Registered under the buffer's lock so no event falls between replay and registration
+        Buffer buffer = buffers.computeIfAbsent(partnerId, k -> new Buffer());
+        synchronized (buffer) {
+            long[] seen = parseEventId(lastEventId);
+            if (seen != null) first.addAll(replay(buffer, seen));
+            streams.computeIfAbsent(partnerId, k -> ConcurrentHashMap.newKeySet()).add(stream);
+            for (String text : first) stream.send(text);
+        }
+    }
+
+    /**
+     * The frames after seen, or a reset if this server cannot tell what the
+     * client missed: it started after the client's last event, or the
+     * buffer has dropped events the client has not seen.
+     */
+    private List<String> replay(Buffer buffer, long[] seen) {
+        boolean complete = seen[0] >= customerEvents.startedAfter() && seen[0] >= buffer.droppedCustomerId
+                && seen[1] >= partnerEvents.startedAfter() && seen[1] >= buffer.droppedPartnerId;
+        List<String> out = new ArrayList<>();
+        if (!complete) {
+            out.add("id: " + buffer.customerId + ":" + buffer.partnerId + "\nevent: reset\ndata: {}\n\n");
+            return out;
+        }
+        for (Frame f : buffer.frames) {
+            if (f.newerThan(seen)) out.add(f.text());
+        }
+        return out;
+    }
+
+    private static long[] parseEventId(String id) {
+        if (id == null || id.isBlank()) return null;
+        String[] parts = id.trim().split(":");
+        if (parts.length != 2) return null;
+        try {
+            return new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // ===== Events =====
+
+    private void onBookingEvent(Outbox.Event event) {
+        JSONObject p = event.payload();
+        JSONObject booking = p.getJSONObject("booking");
+        String partnerId = booking.optString("partner_id", "");
+        if (partnerId.isBlank()) return;
+
+        JSONObject data = new JSONObject()
+                .put("bookingId", event.aggregateKey())
+                .put("event", event.eventType())
+                .put("from", p.opt("from"))
+                .put("to", p.opt("to"))
+                .put("hotelId", booking.opt("hotel_id"))
+                .put("checkIn", booking.opt("check_in"))
+                .put("checkOut", booking.opt("check_out"));
+        publish(partnerId, event.id(), true, "booking", data.toString());
+    }
+
+    private void onPayoutEvent(Outbox.Event event) {
+        JSONObject p = event.payload();
+        String partnerId = p.optString("partner_id", "");
+        if (partnerId.isBlank()) return;
+
+        JSONObject data = new JSONObject()
+                .put("transactionId", p.opt("transaction_id"))
+                .put("event", event.eventType())
+                .put("status", p.opt("status"))
+                .put("amount", p.opt("amount"));
+        publish(partnerId, event.id(), false, "payout", data.toString());
+    }
+
+    private void publish(String partnerId, long outboxId, boolean customerOutbox, String type, String data) {
+        Buffer buffer = buffers.computeIfAbsent(partnerId, k -> new Buffer());
+        synchronized (buffer) {
+            if (customerOutbox) {
+                if (outboxId <= buffer.customerId) return; // redelivered
+                buffer.customerId = outboxId;
+            } else {
+                if (outboxId <= buffer.partnerId) return;
+                buffer.partnerId = outboxId;
+            }
+            Frame frame = new Frame(buffer.customerId, buffer.partnerId, customerOutbox, type, data);
+            buffer.frames.addLast(frame);
+            if (buffer.frames.size() > BUFFERED_EVENTS_PER_PARTNER) {
+                Frame dropped = buffer.frames.removeFirst();
+                buffer.droppedCustomerId = dropped.customerId;
+                buffer.droppedPartnerId = dropped.partnerId;
+            }
+            buffer.touchedAt = System.currentTimeMillis();
+
+            Set<Stream> open = streams.get(partnerId);
+            if (open != null) {
+                String text = frame.text();
+                for (Stream s : open) s.send(text);
+            }
+        }
+    }
+
+    private void beat() {
+        for (Set<Stream> set : streams.values()) {
+            for (Stream s : set) s.send(": ping\n\n");
+        }
+        // Forget idle partners' buffers; a client resuming after that is sent "reset"
+        long cutoff = System.currentTimeMillis() - BUFFER_IDLE_MILLIS;
+        buffers.entrySet().removeIf(e -> e.getValue().touchedAt < cutoff && !streams.containsKey(e.getKey()));
+        streams.entrySet().removeIf(e -> e.getValue().isEmpty());
+    }
+
+    /** Drops the streams whose current write has been blocked for too long. */
+    private void checkWrites() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(WRITE_TIMEOUT_SECONDS);
+        for (Set<Stream> set : streams.values()) {
+            for (Stream s : set) s.abandonIfBlockedSince(cutoff);
+        }
+    }
+
+    /** Grows (or shrinks back) the writer pool by the writers blocked on dropped streams. */
+    private boolean resizeWriters(int delta) {
+        synchronized (writers) {
+            int size = writers.getCorePoolSize() + delta;
+            if (size > MAX_WRITER_THREADS) {
+                if (!writersCapped) {
+                    writersCapped = true;
+                    System.err.println("PartnerEventHub: " + MAX_WRITER_THREADS
+                            + " writer threads, blocked writes are now delaying events for every partner");
+                }
+                return false;
+            }
+            if (size < WRITER_THREADS) return false;
+            writersCapped = false;
+            if (delta > 0) {
+                writers.setMaximumPoolSize(size);
+                writers.setCorePoolSize(size);
+            } else {
+                writers.setCorePoolSize(size);
+                writers.setMaximumPoolSize(size);
+            }
+            return true;
+        }
+    }
+
+    // ===== Connections =====
+
+    // The JDK server has no public way to close an exchange's connection; these reach its socket
+    private static final Method EXCHANGE_IMPL;
+    private static final Method CONNECTION;
+    private static final Method CHANNEL;
+
+    static {
+        Method[] m = new Method[3];
+        try {
+            m[0] = Class.forName("sun.net.httpserver.HttpExchangeImpl").getDeclaredMethod("getExchangeImpl");
+            m[1] = Class.forName("sun.net.httpserver.ExchangeImpl").getDeclaredMethod("getConnection");
+            m[2] = Class.forName("sun.net.httpserver.HttpConnection").getDeclaredMethod("getChannel");
+            for (Method x : m) x.setAccessible(true);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("PartnerEventHub: cannot reach connection sockets (" + e
+                    + "), blocked writers will be replaced instead of freed");
+            m = new Method[3];
+        }
+        EXCHANGE_IMPL = m[0];
+        CONNECTION = m[1];
+        CHANNEL = m[2];
+    }
+
+    /** The exchange's socket, or null if it cannot be reached. */
+    private static SocketChannel channelOf(HttpExchange exchange) {
+        if (EXCHANGE_IMPL == null || !EXCHANGE_IMPL.getDeclaringClass().isInstance(exchange)) return null;
+        try {
+            return (SocketChannel) CHANNEL.invoke(CONNECTION.invoke(EXCHANGE_IMPL.invoke(exchange)));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // ===== One client =====
+
+    private final class Stream {
+        private final String partnerId;
+        private final HttpExchange exchange;
+        private final SocketChannel channel; // null if closing it is not possible
+        private final OutputStream out;
+        private final ArrayDeque<String> queue = new ArrayDeque<>();
+        private volatile long writeStartedAt; // 0 while no write is under way
+        private boolean writing;
+        private boolean closed;
+        private boolean replaced; // its writer is blocked and the pool has another thread in its place
+
+        Stream(String partnerId, HttpExchange exchange) {
+            this.partnerId = partnerId;
+            this.exchange = exchange;
+            this.channel = channelOf(exchange);
+            this.out = exchange.getResponseBody();
+        }
+
+        /** Queues a frame; the writer pool drains each stream's queue in order. */
+        void send(String text) {
+            synchronized (this) {
+                if (closed) return;
+                if (queue.size() >= MAX_QUEUED_FRAMES) {
+                    drop();
+                    return;
+                }
+                queue.addLast(text);
+                if (writing) return;
+                writing = true;
+            }
+            writers.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                String text;
+                synchronized (this) {
+                    text = closed ? null : queue.pollFirst();
+                    if (text == null) {
+                        writing = false;
+                        if (!closed) return;
+                        if (replaced) resizeWriters(-1);
+                        break;
+                    }
+                }
+                writeStartedAt = System.currentTimeMillis();
+                try {
+                    out.write(text.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                } catch (IOException e) {
+                    drop(); // the client went away
+                } finally {
+                    writeStartedAt = 0;
+                }
+            }
+            closeExchange();
+        }
+
+        /**
+         * Drops the stream if its current write started before cutoff, and
+         * closes its socket so the write fails; if that is not possible, the
+         * blocked writer is replaced instead.
+         */
+        void abandonIfBlockedSince(long cutoff) {
+            long started = writeStartedAt;
+            if (started == 0 || started > cutoff) return;
+            synchronized (this) {
+                if (closed || !writing) return;
+                closed = true;
+                queue.clear();
+                replaced = !closeChannel() && resizeWriters(1);
+            }
+            Set<Stream> set = streams.get(partnerId);
+            if (set != null) set.remove(this);
+        }
+
+        private boolean closeChannel() {
+            if (channel == null) return false;
+            try {
+                channel.close();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Stops the stream at once: no more frames are queued for it and it
+         * leaves the partner's set. A writer under way closes the exchange
+         * when its write returns; otherwise it is closed here.
+         */
+        void drop() {
+            boolean idle;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                queue.clear();
+                idle = !writing;
+            }
+            Set<Stream> set = streams.get(partnerId);
+            if (set != null) set.remove(this);
+            if (idle) closeExchange();
+        }
+
+        private void closeExchange() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            exchange.close();
+        }
+    }
+}
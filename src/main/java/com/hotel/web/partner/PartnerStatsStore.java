@@ -0,0 +1,344 @@
+package com.hotel.web.partner;
+
+import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.Outbox;
+import com.hotel.utilities.OutboxRelay;
+import com.hotel.utilities.SchemaUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * One partner_stats row per partner (partner DB): booking counts by status
+ * and the partner's latest payout, so the dashboard reads a primary key
+ * instead of aggregating bookings_info on every load and poll.
+ *
+ * Kept current from outbox events: booking events from the customer relay
+ * move one booking between status counters (each event applied once, see
+ * {@link Outbox#markApplied}), payout events from the partner relay move
+ * the latest payout forward. The payout's status itself is read through
+ * its Transaction_ID, so a status changed by finance shows up immediately.
+ *
+ * The table is seeded once from bookings_info and Partner_Transactions. The
+ * seed reads the bookings and the customer outbox in one snapshot and marks
+ * the not-yet-delivered booking events it already includes as applied, so
+ * none is counted twice or lost.
+ */
+public final class PartnerStatsStore {
+
+    private static final String CONSUMER = "partner-stats:customer";
+    private static final long APPLIED_RETENTION_DAYS = 14;
+
+    private final DbConfig dbConfig;
+    private final String bookingRelay;
+    private volatile boolean seeded;
+    private volatile long lastPurge;
+
+    /** Stats as read by the dashboard. Money fields come from the partner ledger. */
+    public record Stats(int total, int pending, int confirmed, int cancelled, int completed, int failed,
+                        double totalRevenue, double netRevenue, double pendingPayout, double paidPayout,
+                        String payoutStatus) {
+    }
+
+    /** @param bookingRelay name of the shared relay delivering customer-DB booking events */
+    public PartnerStatsStore(DbConfig dbConfig, String bookingRelay) {
+        this.dbConfig = dbConfig;
+        this.bookingRelay = bookingRelay;
+    }
+
+    // ===== Lifecycle =====
+
+    public void start() throws SQLException {
+        String ddl = """
+                CREATE TABLE IF NOT EXISTS partner_stats (
+                  partner_id       VARCHAR(64)  NOT NULL PRIMARY KEY,
+                  total_bookings   INT          NOT NULL DEFAULT 0,
+                  pending          INT          NOT NULL DEFAULT 0,
+                  confirmed        INT          NOT NULL DEFAULT 0,
+                  cancelled        INT          NOT NULL DEFAULT 0,
+                  completed        INT          NOT NULL DEFAULT 0,
+                  failed           INT          NOT NULL DEFAULT 0,
+                  latest_payout_id VARCHAR(64)  NULL,
+                  latest_payout_at TIMESTAMP(3) NULL,
+                  updated_at       TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                )
+                """;
+        String meta = """
+                CREATE TABLE IF NOT EXISTS partner_stats_meta (
+                  id     TINYINT NOT NULL PRIMARY KEY,
+                  seeded TINYINT NOT NULL DEFAULT 0
+                )
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(ddl);
+            st.execute(meta);
+            SchemaUtil.ensureIndex(conn, "Partner_Transactions", "idx_partner_transactions_txn", "Transaction_ID");
+        }
+        Outbox.ensureAppliedSchema(dbConfig.getPartnerDataSource());
+        seedIfNeeded();
+    }
+
+    /** Subscribes to booking events (customer relay) and payout events (partner relay). */
+    public void subscribe(OutboxRelay customerEvents, OutboxRelay partnerEvents) {
+        customerEvents.subscribe(Outbox.BOOKING, this::onBookingEvent);
+        partnerEvents.subscribe(Outbox.PAYOUT, this::onPayoutEvent);
+    }
+
+    // ===== Reads =====
+
+    public Stats get(String partnerId) throws SQLException {
+        String sql = """
+                SELECT s.total_bookings, s.pending, s.confirmed, s.cancelled, s.completed, s.failed,
+                       l.recognized, l.recognized - l.commission AS net, GREATEST(l.pending, 0) AS pending_payout,
+                       l.paid, t.Status AS payout_status
+                FROM (SELECT ? AS partner_id) p
+                LEFT JOIN partner_stats s ON s.partner_id = p.partner_id
+                LEFT JOIN partner_ledger l ON l.partner_id = p.partner_id
+                LEFT JOIN Partner_Transactions t ON t.Transaction_ID = s.latest_payout_id
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, partnerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return new Stats(
+                        rs.getInt("total_bookings"),
+                        rs.getInt("pending"),
+                        rs.getInt("confirmed"),
+                        rs.getInt("cancelled"),
+                        rs.getInt("completed"),
+                        rs.getInt("failed"),
+                        rs.getDouble("recognized"),
+                        rs.getDouble("net"),
+                        rs.getDouble("pending_payout"),
+                        rs.getDouble("paid"),
+                        rs.getString("payout_status"));
+            }
+        }
+    }
+
+    // ===== Events =====
+
+    private void onBookingEvent(Outbox.Event event) throws SQLException {
+        seedIfNeeded();
+        JSONObject p = event.payload();
+        String partnerId = p.getJSONObject("booking").optString("partner_id", "");
+        String from = "CREATED".equals(event.eventType()) ? null : p.optString("from", null);
+        String to = p.optString("to", null);
+        if (partnerId.isBlank() || (from != null && from.equals(to))) return;
+
+        int[] delta = new int[STATUS_COLUMNS.length];
+        if (from == null) delta[0] = 1; // a new booking
+        else delta[column(from)]--;
+        delta[column(to)]++;
+
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (Outbox.markApplied(conn, CONSUMER, event.id())) addCounts(conn, partnerId, delta);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        purgeIfDue();
+    }
+
+    private void onPayoutEvent(Outbox.Event event) throws SQLException {
+        seedIfNeeded();
+        JSONObject p = event.payload();
+        String partnerId = p.optString("partner_id", "");
+        String txId = p.optString("transaction_id", "");
+        if (partnerId.isBlank() || txId.isBlank()) return;
+        // Later events (PAYOUT_FAILED) concern an existing payout; its status is read live
+        if (!"PAYOUT_REQUESTED".equals(event.eventType())) return;
+
+        // Only ever moves forward, so a redelivery or a late event changes nothing
+        String sql = """
+                INSERT INTO partner_stats (partner_id, latest_payout_id, latest_payout_at) VALUES (?, ?, ?)
+                ON DUPLICATE KEY UPDATE
+                  latest_payout_id = IF(latest_payout_at IS NULL OR VALUES(latest_payout_at) >= latest_payout_at,
+                                        VALUES(latest_payout_id), latest_payout_id),
+                  latest_payout_at = GREATEST(COALESCE(latest_payout_at, VALUES(latest_payout_at)), VALUES(latest_payout_at))
+                """;
+        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, partnerId);
+            ps.setString(2, txId);
+            ps.setTimestamp(3, new Timestamp(event.createdAtMillis()));
+            ps.executeUpdate();
+        }
+    }
+
+    // ===== Counters =====
+
+    /** Index 0 is total_bookings; the rest follow BookingStateMachine.Status. */
+    private static final String[] STATUS_COLUMNS = {"total_bookings", "pending", "confirmed", "cancelled", "completed", "failed"};
+
+    private static int column(String status) {
+        String name = status == null ? "pending" : status.toLowerCase(Locale.ROOT);
+        for (int i = 1; i < STATUS_COLUMNS.length; i++) {
+            if (STATUS_COLUMNS[i].equals(name)) return i;
+        }
+        return 1; // unknown statuses count as pending, as in BookingStateMachine
+    }
+
+    private static void addCounts(Connection conn, String partnerId, int[] delta) throws SQLException {
+        String sql = """
+                INSERT INTO partner_stats (partner_id, total_bookings, pending, confirmed, cancelled, completed, failed)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                ON DUPLICATE KEY UPDATE
+                  total_bookings = total_bookings + VALUES(total_bookings),
+                  pending = pending + VALUES(pending),
+                  confirmed = confirmed + VALUES(confirmed),
+                  cancelled = cancelled + VALUES(cancelled),
+                  completed = completed + VALUES(completed),
+                  failed = failed + VALUES(failed)
+                """;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, partnerId);
+            for (int i = 0; i < delta.length; i++) ps.setInt(i + 2, delta[i]);
+            ps.executeUpdate();
+        }
+    }
+
+    // ===== Seeding =====
+
+    private synchronized void seedIfNeeded() throws SQLException {
+        if (seeded) return;
+
+        try (Connection partnerConn = dbConfig.getPartnerDataSource().getConnection()) {
+            partnerConn.setAutoCommit(false);
+            try {
+                // Serializes seeding across servers; the loser sees seeded = 1
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("INSERT IGNORE INTO partner_stats_meta (id, seeded) VALUES (1, 0)");
+                    try (ResultSet rs = st.executeQuery("SELECT seeded FROM partner_stats_meta WHERE id = 1 FOR UPDATE")) {
+                        if (rs.next() && rs.getInt(1) == 1) {
+                            partnerConn.commit();
+                            seeded = true;
+                            return;
+                        }
+                    }
+                }
+
+                Map<String, int[]> counts = new HashMap<>();
+                List<Long> included = new ArrayList<>();
+                readBookings(counts, included);
+
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("DELETE FROM partner_stats");
+                }
+                for (Map.Entry<String, int[]> e : counts.entrySet()) {
+                    addCounts(partnerConn, e.getKey(), e.getValue());
+                }
+                seedLatestPayouts(partnerConn);
+                for (long id : included) Outbox.markApplied(partnerConn, CONSUMER, id);
+
+                try (Statement st = partnerConn.createStatement()) {
+                    st.executeUpdate("UPDATE partner_stats_meta SET seeded = 1 WHERE id = 1");
+                }
+                partnerConn.commit();
+                seeded = true;
+                System.out.println("PartnerStatsStore: seeded " + counts.size() + " partners");
+            } catch (SQLException e) {
+                partnerConn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /** Counts by partner and the undelivered booking events they include, from one snapshot. */
+    private void readBookings(Map<String, int[]> counts, List<Long> included) throws SQLException {
+        String aggregate = """
+                SELECT Partner_ID,
+                       COUNT(*) AS total_bookings,
+                       SUM(s = 'PENDING') AS pending,
+                       SUM(s = 'CONFIRMED') AS confirmed,
+                       SUM(s = 'CANCELLED') AS cancelled,
+                       SUM(s = 'COMPLETED') AS completed,
+                       SUM(s = 'FAILED') AS failed
+                FROM (SELECT Partner_ID, UPPER(COALESCE(Booking_Status, 'PENDING')) AS s
+                      FROM bookings_info WHERE Partner_ID IS NOT NULL AND Partner_ID <> '') b
+                GROUP BY Partner_ID
+                """;
+        try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try {
+                // The first read fixes the snapshot the other two see
+                long delivered = OutboxRelay.deliveredThrough(conn, bookingRelay);
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(aggregate)) {
+                    while (rs.next()) {
+                        int[] c = new int[STATUS_COLUMNS.length];
+                        for (int i = 0; i < c.length; i++) c[i] = rs.getInt(STATUS_COLUMNS[i]);
+                        counts.put(rs.getString("Partner_ID"), c);
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id FROM outbox_events WHERE aggregate_type = ? AND id > ?")) {
+                    ps.setString(1, Outbox.BOOKING);
+                    ps.setLong(2, delivered);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) included.add(rs.getLong(1));
+                    }
+                }
+            } finally {
+                conn.rollback(); // read only
+            }
+        }
+    }
+
+    private static void seedLatestPayouts(Connection conn) throws SQLException {
+        String sql = """
+                SELECT Partner_ID, Transaction_ID, Transaction_Date
+                FROM Partner_Transactions
+                WHERE Transaction_Type = 'PAYOUT'
+                ORDER BY Partner_ID, Transaction_Date DESC
+                """;
+        String upsert = """
+                INSERT INTO partner_stats (partner_id, latest_payout_id, latest_payout_at) VALUES (?, ?, ?)
+                ON DUPLICATE KEY UPDATE latest_payout_id = VALUES(latest_payout_id), latest_payout_at = VALUES(latest_payout_at)
+                """;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql);
+             PreparedStatement ps = conn.prepareStatement(upsert)) {
+            String last = null;
+            while (rs.next()) {
+                String partnerId = rs.getString("Partner_ID");
+                if (partnerId == null || partnerId.equals(last)) continue;
+                last = partnerId;
+                ps.setString(1, partnerId);
+                ps.setString(2, rs.getString("Transaction_ID"));
+                ps.setTimestamp(3, rs.getTimestamp("Transaction_Date"));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < TimeUnit.HOURS.toMillis(1)) return;
+        lastPurge = now;
+        try {
+            Outbox.purgeApplied(dbConfig.getPartnerDataSource(), CONSUMER, now - TimeUnit.DAYS.toMillis(APPLIED_RETENTION_DAYS));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
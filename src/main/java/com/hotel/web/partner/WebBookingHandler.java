@@ -3,21 +3,27 @@ package com.hotel.web.partner;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.booking.BookingStateMachine;
+import com.hotel.booking.ReservationEngine;
 import com.hotel.utilities.DbConfig;
 
 import java.io.*;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
-import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 public class WebBookingHandler implements HttpHandler {
 
     private final DbConfig dbConfig;
+    private final BookingStateMachine bookingStates;
+    private final ReservationEngine reservations;
 
-    public WebBookingHandler(DbConfig dbConfig) {
+    public WebBookingHandler(DbConfig dbConfig, BookingStateMachine bookingStates, ReservationEngine reservations) {
         this.dbConfig = dbConfig;
+        this.bookingStates = bookingStates;
+        this.reservations = reservations;
     }
 
     @Override
@@ -159,16 +165,28 @@ public class WebBookingHandler implements HttpHandler {
         boolean success = false;
 
         if (!bookingId.isEmpty()) {
-            String sql = "UPDATE bookings_info SET Booking_Status = 'CANCELLED' WHERE Booking_ID = ?";
-
-            try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, bookingId);
-                success = stmt.executeUpdate() > 0;
+            Lock hotelLock = null;
+            try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+
+                hotelLock = lockHotelOf(bookingId);
+                conn.setAutoCommit(false);
+                BookingStateMachine.Transition cancelled;
+                try {
+                    reservations.releaseBooking(conn, bookingId);
+                    cancelled = bookingStates.apply(conn, bookingId, BookingStateMachine.Event.CANCELLED, "partner");
+                    if (cancelled.applied()) conn.commit();
+                    else conn.rollback();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+                bookingStates.publish(cancelled);
+                success = cancelled.applied();
 
             } catch (SQLException e) {
                 e.printStackTrace();
+            } finally {
+                if (hotelLock != null) hotelLock.unlock();
             }
         }
 
@@ -203,60 +221,44 @@ public class WebBookingHandler implements HttpHandler {
         boolean success = false;
         String message = "";
 
-        if (!bookingId.isEmpty() && !newStatus.isEmpty()) {
-
-            String fetchSql = "SELECT Booking_Status, Check_Out_Date FROM bookings_info WHERE Booking_ID = ?";
-            String updateSql = "UPDATE bookings_info SET Booking_Status = ? WHERE Booking_ID = ?";
-
-            try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-                 PreparedStatement fetchStmt = conn.prepareStatement(fetchSql)) {
-
-                fetchStmt.setString(1, bookingId);
-
-                String currentStatus = "";
-                LocalDate checkOutDate = null;
-
-                try (ResultSet rs = fetchStmt.executeQuery()) {
-                    if (rs.next()) {
-                        currentStatus = rs.getString("Booking_Status").toUpperCase();
-                        String checkOut = rs.getString("Check_Out_Date");
-                        if (checkOut != null && !checkOut.isEmpty()) {
-                            checkOutDate = LocalDate.parse(checkOut);
-                        }
-                    }
-                }
-
-                boolean allowed = false;
-                LocalDate today = LocalDate.now();
-
-                switch (newStatus) {
-                    case "CONFIRMED":
-                        allowed = "PENDING".equals(currentStatus);
-                        break;
-                    case "CANCELLED":
-                        allowed = "PENDING".equals(currentStatus) || "CONFIRMED".equals(currentStatus);
-                        break;
-                    case "COMPLETED":
-                        allowed = "CONFIRMED".equals(currentStatus)
-                                && checkOutDate != null
-                                && !checkOutDate.isAfter(today);
-                        break;
-                }
-
-                if (allowed) {
-                    try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-                        updateStmt.setString(1, newStatus); // ✅ ALWAYS UPPERCASE IN DB
-                        updateStmt.setString(2, bookingId);
-                        success = updateStmt.executeUpdate() > 0;
-                        message = success ? "Status updated successfully" : "Update failed";
-                    }
-                } else {
-                    message = "Action not allowed";
+        BookingStateMachine.Event event = switch (newStatus) {
+            case "CONFIRMED" -> BookingStateMachine.Event.PARTNER_CONFIRMED;
+            case "CANCELLED" -> BookingStateMachine.Event.CANCELLED;
+            case "COMPLETED" -> BookingStateMachine.Event.COMPLETED;
+            default -> null;
+        };
+
+        if (!bookingId.isEmpty() && event == null) {
+            message = "Action not allowed";
+        } else if (!bookingId.isEmpty()) {
+
+            Lock hotelLock = null;
+            try (Connection conn = dbConfig.getCustomerDataSource().getConnection()) {
+
+                if (event == BookingStateMachine.Event.CANCELLED) hotelLock = lockHotelOf(bookingId);
+                conn.setAutoCommit(false);
+
+                // The allowed from-statuses (and COMPLETED's check-out date) are checked by the update itself
+                BookingStateMachine.Transition transition;
+                try {
+                    // Cancelling hands the booking's nights back in the same transaction
+                    if (event == BookingStateMachine.Event.CANCELLED) reservations.releaseBooking(conn, bookingId);
+                    transition = bookingStates.apply(conn, bookingId, event, "partner");
+                    if (transition.applied()) conn.commit();
+                    else conn.rollback();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
                 }
+                bookingStates.publish(transition);
+                success = transition.applied();
+                message = success ? "Status updated successfully" : "Action not allowed";
 
             } catch (SQLException e) {
                 e.printStackTrace();
                 message = "Database error";
+            } finally {
+                if (hotelLock != null) hotelLock.unlock();
             }
         }
 
@@ -270,4 +272,13 @@ public class WebBookingHandler implements HttpHandler {
             os.write(response.getBytes(StandardCharsets.UTF_8));
         }
     }
+
+    /** Takes the booking's hotel lock (see ReservationEngine), or returns null for an unknown booking. */
+    private Lock lockHotelOf(String bookingId) throws SQLException {
+        String hotelId = reservations.hotelOf(bookingId);
+        if (hotelId == null) return null;
+        Lock lock = reservations.lockFor(hotelId);
+        lock.lock();
+        return lock;
+    }
 }
@@ -1,20 +1,22 @@
 package com.hotel.web.partner;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.hotel.utilities.DbConfig;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import java.io.IOException;
-import java.sql.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Date;
 
 public class WebDashBoardHandler implements HttpHandler {
 
-	private final DbConfig dbConfig;
+	private final PartnerStatsStore stats;
+	private final PartnerEventHub events;
 
-    public WebDashBoardHandler(DbConfig dbConfig) {
-        this.dbConfig = dbConfig;
+    public WebDashBoardHandler(PartnerStatsStore stats, PartnerEventHub events) {
+        this.stats = stats;
+        this.events = events;
     }
 
     @Override
@@ -42,6 +44,14 @@ public class WebDashBoardHandler implements HttpHandler {
             return;
         }
 
+        // /api/partner/{id}/events → Server-Sent Events instead of polling
+        if (parts.length >= 5 && parts[4].equals("events")) {
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            if (lastEventId == null) lastEventId = queryParam(exchange, "lastEventId");
+            events.open(exchange, partnerId, lastEventId);
+            return;
+        }
+
         try {
             Map<String, Object> json = buildDashboardData(partnerId);
             sendJson(exchange, json);
@@ -56,24 +66,24 @@ public class WebDashBoardHandler implements HttpHandler {
     private Map<String, Object> buildDashboardData(String partnerId) throws Exception {
         Map<String, Object> map = new LinkedHashMap<>();
 
-        BookingData b = getBookingStats(partnerId);
-        FinanceData f = getFinanceStats(partnerId);
-        String payoutStatus = getLatestPayoutStatus(partnerId);
+        // One row kept current from booking / payout events
+        PartnerStatsStore.Stats s = stats.get(partnerId);
+        String payoutStatus = s.payoutStatus();
 
-        map.put("totalBookings", b.total);
-        map.put("pending", b.pending);
-        map.put("confirmed", b.confirmed);
-        map.put("cancelled", b.cancelled);
-        map.put("completed", b.completed);
+        map.put("totalBookings", s.total());
+        map.put("pending", s.pending());
+        map.put("confirmed", s.confirmed());
+        map.put("cancelled", s.cancelled());
+        map.put("completed", s.completed());
 
-        map.put("totalRevenue", f.totalRevenue);
-        map.put("netRevenue", f.netRevenue);
-        map.put("pendingPayout", f.pendingPayout);
-        map.put("paidPayout", f.paidPayout);
+        map.put("totalRevenue", s.totalRevenue());
+        map.put("netRevenue", s.netRevenue());
+        map.put("pendingPayout", s.pendingPayout());
+        map.put("paidPayout", s.paidPayout());
         map.put("payoutStatus", payoutStatus);
 
         // Booking Notification
-        map.put("pendingNotifications", b.pending > 0 ? 1 : 0);
+        map.put("pendingNotifications", s.pending() > 0 ? 1 : 0);
 
         // Finance Notification → ONLY for Success or Failed
         boolean showFinanceNotification =
@@ -88,111 +98,18 @@ public class WebDashBoardHandler implements HttpHandler {
         return map;
     }
 
-    // ======================= BOOKING STATS =======================
-
-    private BookingData getBookingStats(String partnerId) throws Exception {
-
-        String sql =
-                """
-                SELECT
-                    COUNT(*) AS total,
-                    SUM(CASE WHEN Booking_Status='PENDING'    THEN 1 ELSE 0 END) AS pending,
-                    SUM(CASE WHEN Booking_Status='CONFIRMED'  THEN 1 ELSE 0 END) AS confirmed,
-                    SUM(CASE WHEN Booking_Status='COMPLETED'  THEN 1 ELSE 0 END) AS completed,
-                    SUM(CASE WHEN Booking_Status='CANCELLED'  THEN 1 ELSE 0 END) AS cancelled
-                FROM bookings_info
-                WHERE Partner_ID = ?
-                """;
-
-        try (Connection conn = dbConfig.getCustomerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, partnerId);
-            ResultSet rs = stmt.executeQuery();
-
-            BookingData d = new BookingData();
-            if (rs.next()) {
-                d.total     = rs.getInt("total");
-                d.pending   = rs.getInt("pending");
-                d.confirmed = rs.getInt("confirmed");
-                d.completed = rs.getInt("completed");
-                d.cancelled = rs.getInt("cancelled");
-            }
-            return d;
-        }
-    }
+    // ======================= REQUEST HELPERS =======================
 
-    // ======================= FINANCE STATS =======================
-
-    private FinanceData getFinanceStats(String partnerId) throws Exception {
-        String sql =
-                """
-                SELECT Total_Revenue, Net_Revenue, Pending_Payout, Paid_Payout
-                FROM Partner_Finance
-                WHERE Partner_ID = ?
-                """;
-
-        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, partnerId);
-            ResultSet rs = stmt.executeQuery();
-
-            FinanceData f = new FinanceData();
-            if (rs.next()) {
-                f.totalRevenue  = rs.getDouble("Total_Revenue");
-                f.netRevenue    = rs.getDouble("Net_Revenue");
-                f.pendingPayout = rs.getDouble("Pending_Payout");
-                f.paidPayout    = rs.getDouble("Paid_Payout");
-            }
-            return f;
-        }
-    }
-    
-    // ======================= GET LATEST PAYOUT STATUS =======================
-
-    private String getLatestPayoutStatus(String partnerId) throws Exception {
-
-        String sql =
-                """
-                SELECT Status
-                FROM Partner_Transactions
-                WHERE Partner_ID = ?
-                AND Transaction_Type = 'PAYOUT'
-                ORDER BY Transaction_Date DESC
-                LIMIT 1
-                """;
-
-        try (Connection conn = dbConfig.getPartnerDataSource().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, partnerId);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getString("Status");  // Pending, Requested, Success, Failed
-            }
+    private String queryParam(HttpExchange ex, String name) {
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            String[] kv = pair.split("=", 2);
+            if (kv.length == 2 && kv[0].equals(name)) return URLDecoder.decode(kv[1], StandardCharsets.UTF_8);
         }
         return null;
     }
 
-    // ======================= DATA MODELS =======================
-
-    static class BookingData {
-        int total;
-        int pending;
-        int confirmed;
-        int cancelled;
-        int completed;
-    }
-
-    static class FinanceData {
-        double totalRevenue;
-        double netRevenue;
-        double pendingPayout;
-        double paidPayout;
-    }
-
     // ======================= RESPONSE HELPERS =======================
 
     private void sendJson(HttpExchange ex, Object obj) throws IOException {
@@ -215,6 +132,6 @@ public class WebDashBoardHandler implements HttpHandler {
     private void setCORS(HttpExchange ex) {
         ex.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         ex.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, OPTIONS");
-        ex.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        ex.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization, Last-Event-ID");
     }
 }
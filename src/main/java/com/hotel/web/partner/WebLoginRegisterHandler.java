@@ -2,6 +2,7 @@ package com.hotel.web.partner;
 
 import com.hotel.security.PasswordUtil;
 import com.hotel.utilities.DbConfig;
+import com.hotel.utilities.IdGenerator;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
@@ -14,9 +15,11 @@ import java.util.*;
 public class WebLoginRegisterHandler implements HttpHandler {
 
     private final DbConfig dbConfig;
+    private final IdGenerator ids;
 
-    public WebLoginRegisterHandler(DbConfig dbConfig) {
+    public WebLoginRegisterHandler(DbConfig dbConfig, IdGenerator ids) {
         this.dbConfig = dbConfig;
+        this.ids = ids;
     }
 
     //Updated the Status to user_status
@@ -235,7 +238,7 @@ public class WebLoginRegisterHandler implements HttpHandler {
                 }
             }
 
-            String uniqueID = "PR" + (new Random().nextInt(90000) + 10000);
+            String uniqueID = ids.next(IdGenerator.PARTNER);
             Timestamp registrationDate = new Timestamp(System.currentTimeMillis());
 
             String insertQuery =
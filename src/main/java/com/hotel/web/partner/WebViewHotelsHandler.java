@@ -1,5 +1,6 @@
 package com.hotel.web.partner;
 
+import com.hotel.search.CatalogStore;
 import com.hotel.utilities.DbConfig;
 import com.sun.net.httpserver.*;
 import java.io.*;
@@ -10,9 +11,11 @@ import java.util.*;
 public class WebViewHotelsHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final CatalogStore catalog;
 
-    public WebViewHotelsHandler(DbConfig dbConfig) {
+    public WebViewHotelsHandler(DbConfig dbConfig, CatalogStore catalog) {
         this.dbConfig = dbConfig;
+        this.catalog = catalog;
     }
 
     @Override
@@ -41,6 +44,7 @@ public class WebViewHotelsHandler implements HttpHandler {
                 String idsStr = params.get("hotel_ids");
                 List<String> hotelIds = Arrays.asList(idsStr.split(","));
                 deleteHotelsFromDB(hotelIds);
+                catalog.invalidate();
                 sendResponse(exchange, 200, "status=success&message=Hotels deleted successfully");
             } else if (params.containsKey("partner_id")) {
                 // Fetch hotels
@@ -1,5 +1,6 @@
 package com.hotel.web.partner;
 
+import com.hotel.search.CatalogStore;
 import com.hotel.utilities.DbConfig;
 import com.sun.net.httpserver.*;
 import java.io.*;
@@ -10,9 +11,11 @@ import java.util.*;
 public class WebViewPGsHandler implements HttpHandler {
 
 	private final DbConfig dbConfig;
+	private final CatalogStore catalog;
 
-    public WebViewPGsHandler(DbConfig dbConfig) {
+    public WebViewPGsHandler(DbConfig dbConfig, CatalogStore catalog) {
         this.dbConfig = dbConfig;
+        this.catalog = catalog;
     }
 
     @Override
@@ -42,6 +45,7 @@ public class WebViewPGsHandler implements HttpHandler {
                 String idsStr = params.get("pg_ids");
                 List<String> pgIds = Arrays.asList(idsStr.split(","));
                 deletePGsFromDB(pgIds);
+                catalog.invalidate();
                 sendResponse(exchange, 200, "status=success&data=deleted");
                 return;
             }